@@ -0,0 +1,91 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение фильмов из DbFilmStorage. Пары *Sql/*Index сравнивают запрос к БД с индексами в памяти.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class FilmStorageBenchmark {
+
+    // размер выдачи поиска по умолчанию
+    private static final int SEARCH_LIMIT = 100;
+
+    @Benchmark
+    public List<Film> popularFilms(FilmorateDataset dataset) {
+        return dataset.filmStorage.getPopularFilms(10);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public List<Film> getAll(FilmorateDataset dataset) {
+        return dataset.filmStorage.getAll();
+    }
+
+    @Benchmark
+    public List<Film> searchByTitleSql(FilmorateDataset dataset) {
+        return dataset.sqlFilmStorage.searchBy(randomWord(), "title", SEARCH_LIMIT);
+    }
+
+    @Benchmark
+    public List<Film> searchByTitleIndex(FilmorateDataset dataset) {
+        return dataset.filmStorage.searchBy(randomWord(), "title", SEARCH_LIMIT);
+    }
+
+    @Benchmark
+    public List<Film> searchByTitleAndDirectorSql(FilmorateDataset dataset) {
+        return dataset.sqlFilmStorage.searchBy(randomWord(), "title,director", SEARCH_LIMIT);
+    }
+
+    @Benchmark
+    public List<Film> searchByTitleAndDirectorIndex(FilmorateDataset dataset) {
+        return dataset.filmStorage.searchBy(randomWord(), "title,director", SEARCH_LIMIT);
+    }
+
+    @Benchmark
+    public List<Film> recommendationsSql(FilmorateDataset dataset) {
+        return dataset.filmStorage.getRecommendations(dataset.randomUserId());
+    }
+
+    @Benchmark
+    public List<Film> recommendationsEngine(FilmorateDataset dataset) {
+        return dataset.filmStorage.getByIds(dataset.recommendationEngine.getRecommendations(dataset.randomUserId()));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void recommendationsRebuild(FilmorateDataset dataset) {
+        dataset.recommendationEngine.rebuild();
+    }
+
+    @Benchmark
+    public List<Film> commonFilmsSql(FilmorateDataset dataset) {
+        return dataset.sqlFilmStorage.getCommonFilms(dataset.randomUserId(), dataset.randomUserId());
+    }
+
+    @Benchmark
+    public List<Film> commonFilmsIndex(FilmorateDataset dataset) {
+        return dataset.filmStorage.getCommonFilms(dataset.randomUserId(), dataset.randomUserId());
+    }
+
+    private static String randomWord() {
+        String[] words = FilmorateDataset.TITLE_WORDS;
+        return words[ThreadLocalRandom.current().nextInt(words.length)];
+    }
+}
@@ -0,0 +1,208 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import com.zaxxer.hikari.HikariDataSource;
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.Flyway;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.RecommendationEngine;
+import ru.yandex.practicum.filmorate.storage.DbFilmStorage;
+import ru.yandex.practicum.filmorate.storage.DbFriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.FilmSearchIndex;
+import ru.yandex.practicum.filmorate.storage.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.mapper.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mapper.FilmGenreRowMapper;
+import ru.yandex.practicum.filmorate.storage.mapper.FilmRowMapper;
+import ru.yandex.practicum.filmorate.storage.mapper.FriendshipRowMapper;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * In-memory H2 со схемой из миграций приложения, заполненная синтетическими данными.
+ * Размер задается числом лайков: фильмов в 20 раз меньше, пользователей в 10 раз меньше,
+ * у каждого пользователя 10 лайков и 5 друзей. Популярность фильмов неравномерна: чем меньше id, тем больше лайков.
+ * Данные генерируются с фиксированным seed, поэтому одинаковы между запусками.
+ */
+@Slf4j
+@State(Scope.Benchmark)
+public class FilmorateDataset {
+
+    static final String[] TITLE_WORDS = {"ночь", "город", "море", "война", "любовь", "время", "дорога", "звезда"};
+
+    private static final String[] MPA = {"G", "PG", "PG-13", "R", "NC-17"};
+    private static final String[] GENRES = {"Комедия", "Драма", "Мультфильм", "Триллер", "Документальный", "Боевик"};
+
+    private static final int LIKES_PER_USER = 10;
+    private static final int FRIENDS_PER_USER = 5;
+    private static final int FILMS_PER_DIRECTOR = 10;
+    private static final int BATCH_SIZE = 10_000;
+    private static final long SEED = 42;
+
+    @Param({"10000", "100000", "1000000"})
+    public int likes;
+
+    int usersCount;
+    int filmsCount;
+
+    // индексы лайков и поиска загружены: общие фильмы и поиск считаются по битовым множествам
+    DbFilmStorage filmStorage;
+    // индексы не загружены: те же методы идут в БД
+    DbFilmStorage sqlFilmStorage;
+    DbFriendshipStorage friendshipStorage;
+    LikeIndex likeIndex;
+    RecommendationEngine recommendationEngine;
+
+    private HikariDataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        usersCount = Math.max(likes / LIKES_PER_USER, 2 * LIKES_PER_USER);
+        filmsCount = Math.max(likes / 20, 2 * LIKES_PER_USER);
+
+        dataSource = new HikariDataSource();
+        dataSource.setJdbcUrl("jdbc:h2:mem:filmorate-" + likes + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+
+        Flyway.configure().dataSource(dataSource).encoding("UTF-8").load().migrate();
+
+        long start = System.nanoTime();
+        seed(new JdbcTemplate(dataSource));
+        log.info("dataset seeded: {} users, {} films, {} likes in {} ms", usersCount, filmsCount, likes,
+                (System.nanoTime() - start) / 1_000_000);
+
+        NamedParameterJdbcTemplate namedTemplate = new NamedParameterJdbcTemplate(dataSource);
+
+        likeIndex = new LikeIndex();
+        likeIndex.load(index -> namedTemplate.getJdbcTemplate().query("SELECT user_id, film_id FROM film_likes",
+                (RowCallbackHandler) rs -> index.add(rs.getLong("user_id"), rs.getLong("film_id"))));
+
+        filmStorage = new DbFilmStorage(namedTemplate, new FilmRowMapper(), new DirectorRowMapper(),
+                new FilmGenreRowMapper(), likeIndex, new FilmSearchIndex());
+        filmStorage.loadSearchIndex();
+        sqlFilmStorage = new DbFilmStorage(namedTemplate, new FilmRowMapper(), new DirectorRowMapper(),
+                new FilmGenreRowMapper(), new LikeIndex(), new FilmSearchIndex());
+        friendshipStorage = new DbFriendshipStorage(namedTemplate, new FriendshipRowMapper());
+
+        recommendationEngine = new RecommendationEngine(likeIndex, 10, 100, 0, Duration.ofSeconds(1));
+        recommendationEngine.rebuild();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        recommendationEngine.shutdown();
+        dataSource.close();
+    }
+
+    long randomUserId() {
+        return ThreadLocalRandom.current().nextLong(1, usersCount + 1);
+    }
+
+    User randomUser() {
+        return User.builder().id(randomUserId()).build();
+    }
+
+    private void seed(JdbcTemplate jdbc) {
+        Random random = new Random(SEED);
+
+        for (String mpa : MPA) {
+            jdbc.update("INSERT INTO film_mpa (mpa_name) VALUES (?)", mpa);
+        }
+        for (String genre : GENRES) {
+            jdbc.update("INSERT INTO film_genres (genre_name) VALUES (?)", genre);
+        }
+
+        int directorsCount = Math.max(filmsCount / FILMS_PER_DIRECTOR, 1);
+        batch(jdbc, "INSERT INTO directors (name) VALUES (?)", directorsCount,
+                i -> new Object[]{"Режиссер " + TITLE_WORDS[i % TITLE_WORDS.length] + " " + i});
+
+        batch(jdbc, "INSERT INTO users (user_name, email, login, birthday) VALUES (?, ?, ?, ?)", usersCount,
+                i -> new Object[]{"Пользователь " + i, "user" + i + "@filmorate.ru", "user" + i,
+                        Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(20_000)))});
+
+        batch(jdbc, """
+                INSERT INTO films (film_name, description, release_date, duration, mpa_id)
+                VALUES (?, ?, ?, ?, ?)""", filmsCount,
+                i -> new Object[]{
+                        TITLE_WORDS[random.nextInt(TITLE_WORDS.length)] + " " + TITLE_WORDS[i % TITLE_WORDS.length] + " " + i,
+                        "Описание фильма " + i,
+                        Date.valueOf(LocalDate.of(1950, 1, 1).plusDays(random.nextInt(27_000))),
+                        60 + random.nextInt(120),
+                        1 + random.nextInt(MPA.length)});
+
+        batch(jdbc, "INSERT INTO films_genres_relation (film_id, genre_id) VALUES (?, ?)", filmsCount,
+                i -> new Object[]{i + 1, 1 + random.nextInt(GENRES.length)});
+
+        batch(jdbc, "INSERT INTO films_directors (film_id, director_id) VALUES (?, ?)", filmsCount,
+                i -> new Object[]{i + 1, 1 + random.nextInt(directorsCount)});
+
+        List<Object[]> likeRows = new ArrayList<>(usersCount * LIKES_PER_USER);
+        for (long userId = 1; userId <= usersCount; userId++) {
+            Set<Long> filmIds = new HashSet<>();
+            while (filmIds.size() < LIKES_PER_USER) {
+                // куб равномерной величины смещает лайки к первым фильмам
+                filmIds.add(1 + (long) (filmsCount * Math.pow(random.nextDouble(), 3)));
+            }
+            for (Long filmId : filmIds) {
+                likeRows.add(new Object[]{filmId, userId});
+            }
+        }
+        batch(jdbc, "INSERT INTO film_likes (film_id, user_id) VALUES (?, ?)", likeRows);
+
+        jdbc.update("""
+                UPDATE films f
+                SET likes_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id)""");
+
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        Set<Long> pairs = new HashSet<>();
+        List<Object[]> friendshipRows = new ArrayList<>(usersCount * FRIENDS_PER_USER);
+        for (long userId = 1; userId <= usersCount; userId++) {
+            int added = 0;
+            while (added < FRIENDS_PER_USER) {
+                long friendId = 1 + random.nextInt(usersCount);
+                long pair = Math.min(userId, friendId) * (usersCount + 1) + Math.max(userId, friendId);
+                if (friendId != userId && pairs.add(pair)) {
+                    friendshipRows.add(new Object[]{userId, friendId, "accepted", now, now});
+                    added++;
+                }
+            }
+        }
+        batch(jdbc, """
+                INSERT INTO friendship (user_id, friend_id, status, requested_at, accepted_at)
+                VALUES (?, ?, ?, ?, ?)""", friendshipRows);
+    }
+
+    private void batch(JdbcTemplate jdbc, String sql, int count, RowFactory rowFactory) {
+        List<Object[]> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(rowFactory.row(i));
+        }
+        batch(jdbc, sql, rows);
+    }
+
+    private void batch(JdbcTemplate jdbc, String sql, List<Object[]> rows) {
+        for (int from = 0; from < rows.size(); from += BATCH_SIZE) {
+            jdbc.batchUpdate(sql, rows.subList(from, Math.min(from + BATCH_SIZE, rows.size())));
+        }
+    }
+
+    private interface RowFactory {
+        Object[] row(int index);
+    }
+}
@@ -0,0 +1,101 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import ru.yandex.practicum.filmorate.exceptions.BadRequestException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Чтение тела запроса массового импорта - JSON-массива или NDJSON (по объекту в строке). Записи разбираются
+ * по мере чтения, все тело в памяти не собирается. Нечитаемая запись превращается в BadRequestException из next(),
+ * после чего чтение продолжается; если не удается прочитать сам поток, BadRequestException бросает hasNext().
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class BulkImportReader {
+
+    public static <T> Iterator<T> read(ObjectMapper objectMapper, InputStream body, Class<T> type, boolean ndjson)
+            throws IOException {
+
+        ObjectReader reader = objectMapper.readerFor(type);
+        return ndjson ? readLines(reader, body) : readArray(reader, body);
+    }
+
+    private static <T> Iterator<T> readLines(ObjectReader reader, InputStream body) {
+        BufferedReader lines = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+
+        return new Iterator<>() {
+            private String line;
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    while (line == null || line.isBlank()) {
+                        line = lines.readLine();
+                        if (line == null) {
+                            return false;
+                        }
+                    }
+                    return true;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String current = line;
+                line = null;
+                try {
+                    return reader.readValue(current);
+                } catch (JsonProcessingException e) {
+                    throw new BadRequestException("некорректная строка", e.getOriginalMessage());
+                }
+            }
+        };
+    }
+
+    private static <T> Iterator<T> readArray(ObjectReader reader, InputStream body) throws IOException {
+        MappingIterator<T> values = reader.readValues(body);
+
+        return new Iterator<>() {
+            private boolean broken;
+
+            @Override
+            public boolean hasNext() {
+                if (broken) {
+                    return false;
+                }
+                try {
+                    return values.hasNextValue();
+                } catch (IOException e) {
+                    broken = true;
+                    throw new BadRequestException("некорректный JSON", e.getMessage());
+                }
+            }
+
+            @Override
+            public T next() {
+                try {
+                    return values.nextValue();
+                } catch (IOException e) {
+                    throw new BadRequestException("некорректная запись", e.getMessage());
+                }
+            }
+        };
+    }
+}
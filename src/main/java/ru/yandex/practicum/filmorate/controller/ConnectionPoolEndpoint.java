@@ -0,0 +1,96 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Состояние пула соединений Hikari: занятые, свободные и ожидающие соединения, а также время получения соединения
+ * из метрики hikaricp.connections.acquire (перцентили и корзины задаются в management.metrics.distribution).
+ * Если источник данных не Hikari (например, встроенная БД в тестах), эндпоинт отвечает 404.
+ */
+@Component
+@Endpoint(id = "connectionpool")
+@RequiredArgsConstructor
+public class ConnectionPoolEndpoint {
+
+    private static final String ACQUIRE_METRIC = "hikaricp.connections.acquire";
+
+    private final DataSource dataSource;
+    private final MeterRegistry registry;
+
+    @ReadOperation
+    public ConnectionPoolReport getConnectionPoolReport() {
+        HikariDataSource hikari = hikari();
+        if (hikari == null) {
+            return null;
+        }
+
+        // пул создается при первом запросе соединения
+        HikariPoolMXBean pool = hikari.getHikariPoolMXBean();
+        return new ConnectionPoolReport(
+                hikari.getPoolName(),
+                hikari.getMaximumPoolSize(),
+                hikari.getMinimumIdle(),
+                hikari.getConnectionTimeout(),
+                pool == null ? 0 : pool.getActiveConnections(),
+                pool == null ? 0 : pool.getIdleConnections(),
+                pool == null ? 0 : pool.getThreadsAwaitingConnection(),
+                pool == null ? 0 : pool.getTotalConnections(),
+                acquireLatency(hikari.getPoolName()));
+    }
+
+    private HikariDataSource hikari() {
+        try {
+            return dataSource.isWrapperFor(HikariDataSource.class) ? dataSource.unwrap(HikariDataSource.class) : null;
+        } catch (SQLException e) {
+            return null;
+        }
+    }
+
+    private AcquireLatency acquireLatency(String poolName) {
+        Timer timer = registry.find(ACQUIRE_METRIC).tag("pool", poolName).timer();
+        if (timer == null) {
+            return null;
+        }
+
+        HistogramSnapshot snapshot = timer.takeSnapshot();
+        List<Percentile> percentiles = Arrays.stream(snapshot.percentileValues())
+                .map(value -> new Percentile(value.percentile(), value.value(TimeUnit.MILLISECONDS)))
+                .toList();
+        List<Bucket> buckets = Arrays.stream(snapshot.histogramCounts())
+                .map(bucket -> new Bucket(bucket.bucket(TimeUnit.MILLISECONDS), (long) bucket.count()))
+                .toList();
+        return new AcquireLatency(snapshot.count(), snapshot.mean(TimeUnit.MILLISECONDS),
+                snapshot.max(TimeUnit.MILLISECONDS), percentiles, buckets);
+    }
+
+    public record ConnectionPoolReport(String pool, int maximumPoolSize, int minimumIdle, long connectionTimeoutMs,
+                                       int active, int idle, int pending, int total, AcquireLatency acquire) {
+    }
+
+    /**
+     * Время получения соединения в миллисекундах; buckets - накопленное число получений не дольше upperBoundMs.
+     */
+    public record AcquireLatency(long count, double meanMs, double maxMs, List<Percentile> percentiles,
+                                 List<Bucket> buckets) {
+    }
+
+    public record Percentile(double percentile, double valueMs) {
+    }
+
+    public record Bucket(double upperBoundMs, long count) {
+    }
+}
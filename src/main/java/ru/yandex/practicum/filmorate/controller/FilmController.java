@@ -1,17 +1,28 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportReportDto;
+import ru.yandex.practicum.filmorate.dto.FilmSuggestionDto;
 import ru.yandex.practicum.filmorate.dto.NewFilmRequest;
 import ru.yandex.practicum.filmorate.dto.UpdateFilmRequest;
 import ru.yandex.practicum.filmorate.exceptions.BadRequestException;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.FilmSuggestTrie;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
 import java.util.List;
 
 @Slf4j
@@ -21,13 +32,50 @@ import java.util.List;
 public class FilmController {
 
     private final FilmService filmService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping(value = {"", "/"})
-    public List<FilmDto> getAllFilms() {
+    public ResponseEntity<List<FilmDto>> getAllFilms(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
 
-        return filmService.getAllFilms().stream()
+        // все фильмы целиком отдает /films/export
+        if (limit == null) {
+            limit = PageCursor.DEFAULT_LIMIT;
+        }
+        PageCursor.checkLimit(limit);
+        long afterId = cursor == null ? 0 : PageCursor.decode(cursor, 1)[0];
+
+        List<FilmDto> films = filmService.getFilmsPage(afterId, limit).stream()
                 .map(FilmMapper::mapToDto)
                 .toList();
+
+        String nextCursor = films.isEmpty() ? null : PageCursor.encode(films.getLast().getId());
+        return PageCursor.page(films, limit, nextCursor);
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonExport.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportFilms() {
+        return NdjsonExport.stream(objectMapper, filmService::exportFilms, FilmMapper::mapToDto);
+    }
+
+    // при Accept: application/x-ndjson после каждой сохраненной порции клиенту уходит строка с ходом импорта
+    @PostMapping(value = "/bulk", consumes = {MediaType.APPLICATION_JSON_VALUE, NdjsonExport.MEDIA_TYPE})
+    public ResponseEntity<StreamingResponseBody> importFilms(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) MediaType contentType,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+            InputStream body) throws IOException {
+
+        boolean ndjson = contentType.isCompatibleWith(MediaType.parseMediaType(NdjsonExport.MEDIA_TYPE));
+        Iterator<NewFilmRequest> requests = BulkImportReader.read(objectMapper, body, NewFilmRequest.class, ndjson);
+        if (NdjsonExport.isAccepted(accept)) {
+            return NdjsonExport.progress(objectMapper, progress -> filmService.importFilms(requests, progress));
+        }
+
+        FilmImportReportDto report = filmService.importFilms(requests, progress -> { });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(out -> out.write(objectMapper.writeValueAsBytes(report)));
     }
 
     @GetMapping("/{id}")
@@ -38,15 +86,34 @@ public class FilmController {
 
     @GetMapping("/search")
     public List<FilmDto> searchFilms(@RequestParam(required = false) String query,
-                                     @RequestParam(required = false) String by) {
+                                     @RequestParam(required = false) String by,
+                                     @RequestParam(required = false) Integer limit) {
 
-        List<Film> films = filmService.searchFilms(query, by);
+        if (limit == null) {
+            limit = PageCursor.DEFAULT_LIMIT;
+        }
+        PageCursor.checkLimit(limit);
+        List<Film> films = filmService.searchFilms(query, by, limit);
 
         return films.stream()
                 .map(FilmMapper::mapToDto)
                 .toList();
     }
 
+    @GetMapping("/suggest")
+    public List<FilmSuggestionDto> suggestFilms(@RequestParam String prefix,
+                                                @RequestParam(required = false, defaultValue = "10") int limit) {
+
+        if (limit <= 0 || limit > FilmSuggestTrie.MAX_SUGGESTIONS) {
+            throw new BadRequestException("некорректное число подсказок",
+                    "limit должен быть от 1 до " + FilmSuggestTrie.MAX_SUGGESTIONS);
+        }
+
+        return filmService.suggestFilms(prefix, limit).stream()
+                .map(suggestion -> new FilmSuggestionDto(suggestion.filmId(), suggestion.name()))
+                .toList();
+    }
+
     @GetMapping(value = "/common")
     public List<FilmDto> getCommonFilms(@RequestParam Long userId,
                                         @RequestParam Long friendId) {
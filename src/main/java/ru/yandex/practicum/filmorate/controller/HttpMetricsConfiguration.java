@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.common.KeyValues;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.config.MeterFilter;
+import io.micrometer.core.instrument.distribution.DistributionStatisticConfig;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.server.observation.DefaultServerRequestObservationConvention;
+import org.springframework.http.server.observation.ServerRequestObservationContext;
+import org.springframework.http.server.observation.ServerRequestObservationConvention;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Метрика http.server.requests: тег controller с именем класса контроллера и границы SLO по маршрутам
+ * из filmorate.http.slo. Перцентили и гистограмма задаются в management.metrics.distribution.
+ */
+@Configuration
+@EnableConfigurationProperties(HttpSloProperties.class)
+public class HttpMetricsConfiguration {
+
+    private static final String HTTP_SERVER_REQUESTS = "http.server.requests";
+
+    @Bean
+    public ServerRequestObservationConvention controllerObservationConvention() {
+        return new DefaultServerRequestObservationConvention() {
+            @Override
+            public KeyValues getLowCardinalityKeyValues(ServerRequestObservationContext context) {
+                Object handler = context.getCarrier().getAttribute(HandlerMapping.BEST_MATCHING_HANDLER_ATTRIBUTE);
+                String controller = handler instanceof HandlerMethod method
+                        ? method.getBeanType().getSimpleName()
+                        : "none";
+                return super.getLowCardinalityKeyValues(context).and(KeyValue.of("controller", controller));
+            }
+        };
+    }
+
+    @Bean
+    public MeterFilter httpSloMeterFilter(HttpSloProperties slo) {
+        return new MeterFilter() {
+            @Override
+            public DistributionStatisticConfig configure(Meter.Id id, DistributionStatisticConfig config) {
+                if (!HTTP_SERVER_REQUESTS.equals(id.getName())) {
+                    return config;
+                }
+
+                List<Duration> objectives = slo.forRoute(id.getTag("uri"));
+                if (objectives.isEmpty()) {
+                    return config;
+                }
+                return DistributionStatisticConfig.builder()
+                        .serviceLevelObjectives(objectives.stream().mapToDouble(Duration::toNanos).toArray())
+                        .build()
+                        .merge(config);
+            }
+        };
+    }
+}
@@ -0,0 +1,24 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Границы SLO для времени ответа: defaults - для всех маршрутов, routes - для отдельных шаблонов uri
+ * (как в теге uri метрики http.server.requests, например /films/popular).
+ */
+@ConfigurationProperties("filmorate.http.slo")
+public record HttpSloProperties(List<Duration> defaults, Map<String, List<Duration>> routes) {
+
+    public HttpSloProperties {
+        defaults = defaults == null ? List.of() : defaults;
+        routes = routes == null ? Map.of() : routes;
+    }
+
+    public List<Duration> forRoute(String uri) {
+        return routes.getOrDefault(uri, defaults);
+    }
+}
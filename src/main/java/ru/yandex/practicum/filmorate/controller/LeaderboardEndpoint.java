@@ -0,0 +1,27 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.service.PopularFilmsLeaderboard;
+
+@Component
+@Endpoint(id = "leaderboard")
+@RequiredArgsConstructor
+public class LeaderboardEndpoint {
+
+    private final PopularFilmsLeaderboard leaderboard;
+
+    @ReadOperation
+    public PopularFilmsLeaderboard.ConsistencyReport checkConsistency() {
+        return leaderboard.checkConsistency();
+    }
+
+    @WriteOperation
+    public PopularFilmsLeaderboard.ConsistencyReport rebuild() {
+        leaderboard.warmUp();
+        return leaderboard.checkConsistency();
+    }
+}
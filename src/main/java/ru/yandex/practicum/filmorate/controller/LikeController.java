@@ -1,12 +1,15 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import ru.yandex.practicum.filmorate.dto.FilmDto;
+import ru.yandex.practicum.filmorate.dto.LikeOperationRequest;
+import ru.yandex.practicum.filmorate.dto.LikeOperationResultDto;
 import ru.yandex.practicum.filmorate.dto.ResponseDto;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
-import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.service.LikeService;
+import ru.yandex.practicum.filmorate.service.PopularFilmsLeaderboard.FilmRank;
 
 import java.util.List;
 
@@ -18,21 +21,28 @@ public class LikeController {
     private final LikeService likeService;
 
     @GetMapping("/popular")
-    public List<FilmDto> getPopularFilms(@RequestParam(required = false, defaultValue = "10") int count,
-                                         @RequestParam(required = false) Integer genreId,
-                                         @RequestParam(required = false) Integer year) {
-
-        List<Film> films;
-        if (genreId == null && year == null) {
-            films = likeService.getPopularFilms(count);
-        } else if (genreId == null) {
-            films = likeService.getPopularFilmsByYear(count, year);
-        } else if (year == null) {
-            films = likeService.getPopularFilmsByGenre(count, genreId);
-        } else {
-            films = likeService.getPopularFilmsByYearAndGenre(count, year, genreId);
+    public ResponseEntity<List<FilmDto>> getPopularFilms(
+            @RequestParam(required = false, defaultValue = "10") int count,
+            @RequestParam(required = false) Integer genreId,
+            @RequestParam(required = false) Integer year,
+            @RequestParam(required = false) String cursor) {
+
+        FilmRank after = null;
+        if (cursor != null) {
+            PageCursor.checkLimit(count);
+            long[] rank = PageCursor.decode(cursor, 2);
+            after = new FilmRank((int) rank[0], rank[1]);
         }
-        return FilmMapper.mapToDto(films);
+
+        LikeService.PopularFilmsPage page = likeService.getPopularFilmsPage(count, year, genreId, after);
+        String nextCursor = page.next() == null ? null
+                : PageCursor.encode(page.next().likes(), page.next().filmId());
+        return PageCursor.page(FilmMapper.mapToDto(page.films()), nextCursor);
+    }
+
+    @PostMapping("/likes/bulk")
+    public List<LikeOperationResultDto> applyLikes(@RequestBody List<LikeOperationRequest> operations) {
+        return likeService.applyLikes(operations);
     }
 
     @PutMapping("/{filmId}/like/{userId}")
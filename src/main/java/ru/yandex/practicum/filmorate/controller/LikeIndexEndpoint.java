@@ -0,0 +1,20 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.LikeIndex;
+
+@Component
+@Endpoint(id = "likeindex")
+@RequiredArgsConstructor
+public class LikeIndexEndpoint {
+
+    private final LikeIndex likeIndex;
+
+    @ReadOperation
+    public LikeIndex.MemoryReport getMemoryReport() {
+        return likeIndex.getMemoryReport();
+    }
+}
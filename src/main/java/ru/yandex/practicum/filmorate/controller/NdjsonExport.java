@@ -0,0 +1,69 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Выгрузка в формате NDJSON: каждая запись пишется в ответ отдельной строкой сразу после чтения из БД.
+ * Так же отдается ход долгих операций - строкой на каждый промежуточный отчет.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class NdjsonExport {
+
+    public static final String MEDIA_TYPE = "application/x-ndjson";
+
+    public static <T> ResponseEntity<StreamingResponseBody> stream(ObjectMapper objectMapper,
+                                                                   Consumer<Consumer<T>> source,
+                                                                   Function<T, ?> toDto) {
+        StreamingResponseBody body = out -> source.accept(item -> {
+            try {
+                out.write(objectMapper.writeValueAsBytes(toDto.apply(item)));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MEDIA_TYPE))
+                .body(body);
+    }
+
+    /**
+     * Выполняет operation при отправке ответа: промежуточные отчеты, которые она передает в consumer,
+     * сразу уходят клиенту, а последней строкой пишется возвращенный ею итоговый отчет.
+     */
+    public static <T> ResponseEntity<StreamingResponseBody> progress(ObjectMapper objectMapper,
+                                                                     Function<Consumer<T>, T> operation) {
+        StreamingResponseBody body = out -> {
+            Consumer<T> writeLine = report -> {
+                try {
+                    out.write(objectMapper.writeValueAsBytes(report));
+                    out.write('\n');
+                    out.flush();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            };
+            writeLine.accept(operation.apply(writeLine));
+        };
+
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(MEDIA_TYPE))
+                .body(body);
+    }
+
+    public static boolean isAccepted(String accept) {
+        return accept != null && MediaType.parseMediaTypes(accept).stream()
+                .anyMatch(type -> type.equalsTypeAndSubtype(MediaType.parseMediaType(MEDIA_TYPE)));
+    }
+}
@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import ru.yandex.practicum.filmorate.exceptions.BadRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Непрозрачный курсор для постраничной выдачи: ключ последней записи страницы в base64.
+ * Следующая страница отдается клиенту в заголовке X-Next-Cursor.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class PageCursor {
+
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
+    public static final int DEFAULT_LIMIT = 100;
+
+    public static final int MAX_LIMIT = 1000;
+
+    public static String encode(long... keys) {
+        String raw = Arrays.stream(keys).mapToObj(Long::toString).collect(Collectors.joining(":"));
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static long[] decode(String cursor, int keysCount) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            long[] keys = Arrays.stream(raw.split(":")).mapToLong(Long::parseLong).toArray();
+            if (keys.length != keysCount) {
+                throw new IllegalArgumentException("unexpected keys count " + keys.length);
+            }
+            return keys;
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("некорректный курсор", "не удалось разобрать курсор " + cursor);
+        }
+    }
+
+    public static void checkLimit(int limit) {
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new BadRequestException("некорректный размер страницы",
+                    "limit должен быть от 1 до " + MAX_LIMIT);
+        }
+    }
+
+    public static <T> ResponseEntity<List<T>> page(List<T> items, String nextCursor) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.body(items);
+    }
+
+    public static <T> ResponseEntity<List<T>> page(List<T> items, int limit, String nextCursor) {
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (items.size() == limit && nextCursor != null) {
+            response.header(NEXT_CURSOR_HEADER, nextCursor);
+        }
+        return response.body(items);
+    }
+}
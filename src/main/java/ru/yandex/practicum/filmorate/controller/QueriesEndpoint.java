@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.QueryMetrics;
+
+import java.util.List;
+
+@Component
+@Endpoint(id = "queries")
+@RequiredArgsConstructor
+public class QueriesEndpoint {
+
+    private final QueryMetrics queryMetrics;
+
+    @ReadOperation
+    public List<QueryMetrics.QueryStats> getQueryStats() {
+        return queryMetrics.getStats();
+    }
+}
@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.QueryPlanDiagnostics;
+
+import java.util.List;
+
+@Component
+@Endpoint(id = "queryplans")
+@RequiredArgsConstructor
+public class QueryPlansEndpoint {
+
+    private final QueryPlanDiagnostics diagnostics;
+
+    @ReadOperation
+    public List<QueryPlanDiagnostics.QueryPlan> getQueryPlans() {
+        return diagnostics.explainAll();
+    }
+}
@@ -1,13 +1,17 @@
 package ru.yandex.practicum.filmorate.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.yandex.practicum.filmorate.dto.*;
 import ru.yandex.practicum.filmorate.mapper.EventMapper;
 import ru.yandex.practicum.filmorate.mapper.FilmMapper;
 import ru.yandex.practicum.filmorate.mapper.UserMapper;
+import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.EventService;
 import ru.yandex.practicum.filmorate.service.UserService;
@@ -22,12 +26,31 @@ public class UserController {
 
     private final UserService userService;
     private final EventService eventService;
+    private final ObjectMapper objectMapper;
 
     @GetMapping(value = {"", "/"})
-    public List<UserDto> getAllUsers() {
-        return userService.getAllUsers().stream()
+    public ResponseEntity<List<UserDto>> getAllUsers(
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) String cursor) {
+
+        // всех пользователей целиком отдает /users/export
+        if (limit == null) {
+            limit = PageCursor.DEFAULT_LIMIT;
+        }
+        PageCursor.checkLimit(limit);
+        long afterId = cursor == null ? 0 : PageCursor.decode(cursor, 1)[0];
+
+        List<UserDto> users = userService.getUsersPage(afterId, limit).stream()
                 .map(UserMapper::mapToDto)
                 .toList();
+
+        String nextCursor = users.isEmpty() ? null : PageCursor.encode(users.getLast().getId());
+        return PageCursor.page(users, limit, nextCursor);
+    }
+
+    @GetMapping(value = "/export", produces = NdjsonExport.MEDIA_TYPE)
+    public ResponseEntity<StreamingResponseBody> exportUsers() {
+        return NdjsonExport.stream(objectMapper, userService::exportUsers, UserMapper::mapToDto);
     }
 
     @GetMapping("/{id}")
@@ -68,10 +91,34 @@ public class UserController {
     }
 
     @GetMapping("/{id}/feed")
-    public List<EventDto> getFeed(@PathVariable  Long id) {
+    public ResponseEntity<List<EventDto>> getFeed(
+            @PathVariable Long id,
+            @RequestParam(required = false, defaultValue = "" + PageCursor.DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) String before) {
+
+        PageCursor.checkLimit(limit);
+        Long beforeId = before == null ? null : PageCursor.decode(before, 1)[0];
+
         User user = userService.getUserById(id);
-        return eventService.findEventsByUser(user).stream()
-                .map(EventMapper::mapToDto)
-                .toList();
+        List<Event> events = eventService.findEventsByUser(user, beforeId, limit);
+
+        String nextCursor = events.isEmpty() ? null : PageCursor.encode(events.getFirst().getId());
+        return PageCursor.page(events.stream().map(EventMapper::mapToDto).toList(), limit, nextCursor);
+    }
+
+    @GetMapping("/{id}/feed/friends")
+    public ResponseEntity<List<EventDto>> getFriendsFeed(
+            @PathVariable Long id,
+            @RequestParam(required = false, defaultValue = "" + PageCursor.DEFAULT_LIMIT) int limit,
+            @RequestParam(required = false) String before) {
+
+        PageCursor.checkLimit(limit);
+        Long beforeId = before == null ? null : PageCursor.decode(before, 1)[0];
+
+        User user = userService.getUserById(id);
+        List<Event> events = eventService.findFriendsEvents(user, beforeId, limit);
+
+        String nextCursor = events.isEmpty() ? null : PageCursor.encode(events.getFirst().getId());
+        return PageCursor.page(events.stream().map(EventMapper::mapToDto).toList(), limit, nextCursor);
     }
 }
@@ -0,0 +1,23 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.*;
+
+import java.util.List;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@ToString
+public class FilmImportReportDto {
+    private int total;
+    private int imported;
+    private int failed;
+    // false в промежуточных отчетах о ходе импорта, true в итоговом
+    private boolean done;
+    // только в итоговом отчете: не больше FilmService.MAX_REPORTED_IMPORT_ERRORS ошибок,
+    // остальные учтены только в failed
+    private List<RowError> errors;
+
+    public record RowError(int row, String error) {
+    }
+}
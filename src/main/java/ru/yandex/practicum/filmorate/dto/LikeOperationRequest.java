@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.*;
+import ru.yandex.practicum.filmorate.model.Operation;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@ToString
+public class LikeOperationRequest {
+    private Long filmId;
+    private Long userId;
+    private Operation operation;
+}
@@ -0,0 +1,19 @@
+package ru.yandex.practicum.filmorate.dto;
+
+import lombok.*;
+import ru.yandex.practicum.filmorate.model.Operation;
+
+@Getter
+@Setter
+@AllArgsConstructor
+@ToString
+public class LikeOperationResultDto {
+    private Long filmId;
+    private Long userId;
+    private Operation operation;
+    private Result result;
+
+    public enum Result {
+        LIKED, DISLIKED, UNCHANGED, FILM_NOT_FOUND, USER_NOT_FOUND, INVALID
+    }
+}
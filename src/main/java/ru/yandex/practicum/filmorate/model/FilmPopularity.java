@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.*;
+
+import java.util.Set;
+
+@Getter
+@Setter
+@Builder
+@ToString
+@AllArgsConstructor
+public class FilmPopularity {
+    private Long filmId;
+    private Integer year;
+    private Set<Integer> genreIds;
+    private int likes;
+}
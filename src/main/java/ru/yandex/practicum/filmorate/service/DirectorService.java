@@ -9,6 +9,7 @@ import ru.yandex.practicum.filmorate.exceptions.BadRequestException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.DirectorStorage;
+import ru.yandex.practicum.filmorate.storage.MultiGetResult;
 
 import java.util.List;
 
@@ -18,6 +19,7 @@ import java.util.List;
 public class DirectorService {
 
     private final DirectorStorage directorStorage;
+    private final FilmSuggestTrie suggestTrie;
 
     public List<Director> getAll() {
         return directorStorage.getAllDirectors();
@@ -40,25 +42,31 @@ public class DirectorService {
         log.info("Обновление режиссера {}", updateDirectorRequest);
         Director directorToUpdate = getById(updateDirectorRequest.getId());
         directorToUpdate.setName(updateDirectorRequest.getName());
-        return directorStorage.saveDirector(directorToUpdate);
+        Director savedDirector = directorStorage.saveDirector(directorToUpdate);
+        suggestTrie.putDirector(savedDirector);
+        return savedDirector;
     }
 
     public void deleteDirectorId(int id) {
         Director director = this.getById(id);
         directorStorage.deleteDirector(director);
+        suggestTrie.removeDirector(id);
     }
 
-    public List<Director> getById(List<Integer> directorIds) {
-        return directorStorage.getById(directorIds);
-    }
-
-    public void validateDirectorsCreateAndUpdate(List<Director> directors, int requestDirectorsCount) {
-        if (directors.size() != requestDirectorsCount) {
-            throw new BadRequestException("неуспешный запрос", "В запросе режиссер, которого нет в списке БД");
+    /**
+     * Возвращает режиссеров фильма в порядке запроса; если хотя бы одного нет в БД, запрос отклоняется.
+     */
+    public List<Director> validateDirectorsCreateAndUpdate(List<Integer> directorIds) {
+        MultiGetResult<Integer, Director> directors = directorStorage.getByIds(directorIds);
+        if (directors.hasMissing()) {
+            throw new BadRequestException("неуспешный запрос",
+                    "В запросе режиссеры, которых нет в БД: " + directors.missingIds());
         }
+        return directors.found();
     }
 
     public void deleteAll() {
         directorStorage.deleteAllDirectors();
+        suggestTrie.removeAllDirectors();
     }
 }
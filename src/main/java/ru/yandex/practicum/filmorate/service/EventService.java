@@ -5,44 +5,93 @@ import org.springframework.stereotype.Service;
 import ru.yandex.practicum.filmorate.mapper.EventMapper;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.FilmLike;
 import ru.yandex.practicum.filmorate.model.Operation;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.EventStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
+/**
+ * События ленты пишутся в фоне через {@link EventWriter}, поэтому лайки, дружба и отзывы не ждут их сохранения.
+ * Перед чтением ленты дописываются принятые события ее авторов.
+ */
 @Service
 @RequiredArgsConstructor
 public class EventService {
     private final EventStorage eventStorage;
+    private final EventWriter eventWriter;
+    private final FriendshipStorage friendshipStorage;
+    private final FriendTimeline friendTimeline;
 
-    public List<Event> findEventsByUser(User user) {
-        return eventStorage.findEventsByUserID(user.getId());
+    public List<Event> findEventsByUser(User user, Long beforeId, int limit) {
+        flush(user.getId());
+        return eventStorage.findEventsByUserID(user.getId(), beforeId == null ? Long.MAX_VALUE : beforeId, limit);
     }
 
-    private Event createEvent(Long userID, EventType eventType, Operation operation, Long entityId) {
-        Event event = EventMapper.mapToEvent(userID, eventType, operation, entityId, Instant.now());
-        return eventStorage.createEvent(event);
+    /**
+     * Возвращает последние limit событий друзей пользователя, случившихся до события beforeId,
+     * в хронологическом порядке. Если beforeId не задан, возвращаются самые последние события.
+     */
+    public List<Event> findFriendsEvents(User user, Long beforeId, int limit) {
+        Set<Long> friendIds = new HashSet<>(friendshipStorage.getFriends(user));
+        eventWriter.flush(friendIds);
+        return friendTimeline.getEvents(user.getId(), friendIds, beforeId == null ? Long.MAX_VALUE : beforeId, limit);
     }
 
-    public Event createAddLikeEvent(Long userID, Long filmId) {
-        return createEvent(userID, EventType.LIKE, Operation.ADD, filmId);
+    /**
+     * Дописывает в БД все принятые события.
+     */
+    public void flush() {
+        eventWriter.flush();
     }
 
-    public Event createRemoveLikeEvent(Long userID, Long filmId) {
-        return createEvent(userID, EventType.LIKE, Operation.REMOVE, filmId);
+    /**
+     * Дописывает в БД принятые события пользователя.
+     */
+    public void flush(long userId) {
+        eventWriter.flush(List.of(userId));
     }
 
-    public Event createReviewEvent(Long userID, Operation operation, Long reviewId) {
-        return createEvent(userID, EventType.REVIEW, operation, reviewId);
+    private void createEvent(Long userID, EventType eventType, Operation operation, Long entityId) {
+        eventWriter.write(EventMapper.mapToEvent(userID, eventType, operation, entityId, Instant.now()));
     }
 
-    public Event createAddFriendEvent(Long userID, Long friendId) {
-        return createEvent(userID, EventType.FRIEND, Operation.ADD, friendId);
+    public void createAddLikeEvent(Long userID, Long filmId) {
+        createEvent(userID, EventType.LIKE, Operation.ADD, filmId);
     }
 
-    public Event createRemoveFriendEvent(Long userID, Long friendId) {
-        return createEvent(userID, EventType.FRIEND, Operation.REMOVE, friendId);
+    public void createRemoveLikeEvent(Long userID, Long filmId) {
+        createEvent(userID, EventType.LIKE, Operation.REMOVE, filmId);
+    }
+
+    /**
+     * Сохраняет события лайков пакетами, по одному на каждую операцию.
+     */
+    public void createLikeEvents(List<FilmLike> likes, List<Operation> operations) {
+        Instant now = Instant.now();
+        List<Event> events = new ArrayList<>(likes.size());
+        for (int i = 0; i < likes.size(); i++) {
+            FilmLike like = likes.get(i);
+            events.add(EventMapper.mapToEvent(like.userId(), EventType.LIKE, operations.get(i), like.filmId(), now));
+        }
+        eventWriter.writeAll(events);
+    }
+
+    public void createReviewEvent(Long userID, Operation operation, Long reviewId) {
+        createEvent(userID, EventType.REVIEW, operation, reviewId);
+    }
+
+    public void createAddFriendEvent(Long userID, Long friendId) {
+        createEvent(userID, EventType.FRIEND, Operation.ADD, friendId);
+    }
+
+    public void createRemoveFriendEvent(Long userID, Long friendId) {
+        createEvent(userID, EventType.FRIEND, Operation.REMOVE, friendId);
     }
 }
\ No newline at end of file
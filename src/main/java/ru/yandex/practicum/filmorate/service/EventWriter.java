@@ -0,0 +1,311 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Запись событий ленты в фоне. События складываются в ограниченную очередь, а отдельный поток раз в flush-interval
+ * (или раньше, как только набралось batch-size событий) сохраняет их пакетами.
+ * Если очередь заполнена дольше enqueue-timeout, событие сохраняется сразу в потоке запроса - так очередь
+ * притормаживает запись вместо того, чтобы терять события.
+ * Сохраненные события рассылаются по лентам друзей в {@link FriendTimeline} тем же фоновым потоком, пакетами
+ * в порядке сохранения, в том числе события, сохраненные в потоке запроса.
+ * {@link #flush(Collection)} дожидается сохранения и рассылки принятых событий указанных авторов без общей
+ * блокировки записи и вызывается перед чтением ленты; {@link #flush()} сохраняет и рассылает все принятые события
+ * и вызывается при остановке.
+ */
+@Slf4j
+@Component
+public class EventWriter implements MeterBinder {
+
+    private final EventStorage eventStorage;
+    private final FriendTimeline friendTimeline;
+    private final BlockingQueue<Event> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long enqueueTimeoutNanos;
+
+    // пакет, забранный из очереди, но еще не сохраненный, виден только под этой блокировкой
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong writtenInline = new AtomicLong();
+    // сохраненные, но еще не разосланные события в порядке сохранения; рассылает их тот, кто держит fanOutLock
+    private final Queue<Event> savedEvents = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock fanOutLock = new ReentrantLock();
+    // число принятых, но еще не сохраненных и не разосланных событий по авторам;
+    // писатель уведомляет о рассылке через него
+    private final Map<Long, Integer> pendingByUser = new ConcurrentHashMap<>();
+    private final Thread writer;
+
+    private volatile boolean running = true;
+
+    public EventWriter(@Qualifier("db") EventStorage eventStorage,
+                       FriendTimeline friendTimeline,
+                       @Value("${filmorate.events.queue-capacity:10000}") int queueCapacity,
+                       @Value("${filmorate.events.batch-size:100}") int batchSize,
+                       @Value("${filmorate.events.flush-interval:100ms}") Duration flushInterval,
+                       @Value("${filmorate.events.enqueue-timeout:50ms}") Duration enqueueTimeout) {
+        this.eventStorage = eventStorage;
+        this.friendTimeline = friendTimeline;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = flushInterval.toNanos();
+        this.enqueueTimeoutNanos = enqueueTimeout.toNanos();
+        this.writer = new Thread(this::run, "event-writer");
+        this.writer.setDaemon(true);
+    }
+
+    @PostConstruct
+    public void start() {
+        writer.start();
+    }
+
+    public void write(Event event) {
+        // счетчик растет до постановки в очередь, чтобы писатель не успел уменьшить его раньше
+        addPending(event.getUserId(), 1);
+        boolean accepted;
+        try {
+            accepted = queue.offer(event, enqueueTimeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            accepted = false;
+        }
+
+        if (accepted && !running) {
+            // writer уже остановлен, и принятое событие некому дописать
+            flush();
+            return;
+        }
+
+        if (!accepted) {
+            // очередь переполнена: событие не должно потеряться,
+            // а чтобы не нарушить порядок, сначала сохраняется все, что было в очереди до него
+            writtenInline.incrementAndGet();
+            writeLock.lock();
+            try {
+                drainQueue();
+                writeBatch(List.of(event));
+            } finally {
+                writeLock.unlock();
+            }
+            LockSupport.unpark(writer);
+            return;
+        }
+
+        if (queue.size() >= batchSize) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Сохраняет события пакетами в потоке вызова, не занимая очередь: так массовые операции не вытесняют
+     * события обычных запросов. Блокировка записи берется на каждый пакет отдельно, и перед пакетом сохраняется
+     * все, что уже было в очереди: так порядок не нарушается, а писатель и другие запросы не ждут всю операцию.
+     */
+    public void writeAll(List<Event> events) {
+        events.forEach(event -> addPending(event.getUserId(), 1));
+        for (int from = 0; from < events.size(); from += batchSize) {
+            List<Event> batch = new ArrayList<>(events.subList(from, Math.min(from + batchSize, events.size())));
+            writeLock.lock();
+            try {
+                drainQueue();
+                writeBatch(batch);
+            } finally {
+                writeLock.unlock();
+            }
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Сохраняет и рассылает все события, которые были в очереди на момент вызова, включая пакет,
+     * который пишется сейчас.
+     */
+    public void flush() {
+        writeLock.lock();
+        try {
+            drainQueue();
+        } finally {
+            writeLock.unlock();
+        }
+        fanOutSaved();
+    }
+
+    /**
+     * Дожидается сохранения и рассылки принятых событий указанных пользователей. Общую блокировку записи
+     * не занимает: если необработанных событий этих пользователей нет, возвращается сразу, иначе будит писателя
+     * и ждет его.
+     */
+    public void flush(Collection<Long> userIds) {
+        if (userIds.stream().noneMatch(pendingByUser::containsKey)) {
+            return;
+        }
+
+        LockSupport.unpark(writer);
+        synchronized (pendingByUser) {
+            while (writer.isAlive() && userIds.stream().anyMatch(pendingByUser::containsKey)) {
+                try {
+                    pendingByUser.wait(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+        }
+
+        if (userIds.stream().anyMatch(pendingByUser::containsKey)) {
+            // писатель не запущен или уже остановлен
+            flush();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        log.info("event writer stopped: {} events written, {} failed", written.get(), failed.get());
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("filmorate.events.queue.size", queue, BlockingQueue::size)
+                .description("Events waiting to be written")
+                .register(registry);
+        Gauge.builder("filmorate.events.queue.remaining", queue, BlockingQueue::remainingCapacity)
+                .description("Free places in the event queue")
+                .register(registry);
+        FunctionCounter.builder("filmorate.events.written", written, AtomicLong::get)
+                .description("Events written to the database")
+                .register(registry);
+        FunctionCounter.builder("filmorate.events.failed", failed, AtomicLong::get)
+                .description("Events that could not be written")
+                .register(registry);
+        FunctionCounter.builder("filmorate.events.inline", writtenInline, AtomicLong::get)
+                .description("Events written in the request thread because the queue was full")
+                .register(registry);
+    }
+
+    private void run() {
+        while (running) {
+            LockSupport.parkNanos(this, flushIntervalNanos);
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("event writer failed", e);
+            }
+        }
+    }
+
+    private void drainQueue() {
+        List<Event> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            writeBatch(batch);
+            batch.clear();
+        }
+    }
+
+    // вызывается под writeLock, поэтому события попадают в savedEvents в порядке сохранения
+    private void writeBatch(List<Event> batch) {
+        savedEvents.addAll(save(batch));
+    }
+
+    private void fanOutSaved() {
+        fanOutLock.lock();
+        try {
+            List<Event> batch = new ArrayList<>(batchSize);
+            for (Event event = savedEvents.poll(); event != null; event = savedEvents.poll()) {
+                batch.add(event);
+                if (batch.size() == batchSize) {
+                    fanOut(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if (!batch.isEmpty()) {
+                fanOut(batch);
+            }
+        } finally {
+            fanOutLock.unlock();
+        }
+    }
+
+    private void fanOut(List<Event> batch) {
+        try {
+            friendTimeline.fanOut(batch);
+        } catch (RuntimeException e) {
+            // событие уже в ленте автора, без рассылки его просто не увидят друзья
+            log.warn("failed to fan out {} events: {}", batch.size(), e.getMessage());
+        } finally {
+            done(batch);
+        }
+    }
+
+    private void done(List<Event> events) {
+        events.forEach(event -> addPending(event.getUserId(), -1));
+        synchronized (pendingByUser) {
+            pendingByUser.notifyAll();
+        }
+    }
+
+    private void addPending(long userId, int delta) {
+        pendingByUser.compute(userId, (id, pending) -> {
+            int count = (pending == null ? 0 : pending) + delta;
+            return count == 0 ? null : count;
+        });
+    }
+
+    private List<Event> save(List<Event> batch) {
+        try {
+            eventStorage.createEvents(batch);
+            written.addAndGet(batch.size());
+            return batch;
+        } catch (RuntimeException e) {
+            // пакет откатился целиком; сохраняем по одному, чтобы потерять только проблемные события
+            // (например, событие пользователя, которого уже удалили)
+            log.warn("failed to write {} events in batch, writing one by one: {}", batch.size(), e.getMessage());
+            List<Event> saved = new ArrayList<>(batch.size());
+            for (Event event : batch) {
+                try {
+                    saved.add(eventStorage.createEvent(event));
+                    written.incrementAndGet();
+                } catch (RuntimeException eventError) {
+                    failed.incrementAndGet();
+                    done(List.of(event));
+                    log.warn("failed to write event {}: {}", event, eventError.getMessage());
+                }
+            }
+            return saved;
+        }
+    }
+}
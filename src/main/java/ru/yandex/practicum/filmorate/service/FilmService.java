@@ -1,12 +1,18 @@
 package ru.yandex.practicum.filmorate.service;
 
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
 import ru.yandex.practicum.filmorate.dto.DirectorDto;
 import ru.yandex.practicum.filmorate.dto.FilmGenreDto;
+import ru.yandex.practicum.filmorate.dto.FilmImportReportDto;
 import ru.yandex.practicum.filmorate.dto.NewFilmRequest;
 import ru.yandex.practicum.filmorate.dto.UpdateFilmRequest;
 import ru.yandex.practicum.filmorate.exceptions.BadRequestException;
@@ -16,41 +22,165 @@ import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
 import ru.yandex.practicum.filmorate.model.FilmMpa;
+import ru.yandex.practicum.filmorate.storage.AfterCommit;
 import ru.yandex.practicum.filmorate.storage.FilmGenreStorage;
 import ru.yandex.practicum.filmorate.storage.FilmMpaStorage;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.QueryMetrics;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Service
 @Validated
 public class FilmService {
 
+    public static final int MAX_REPORTED_IMPORT_ERRORS = 1000;
+
     private final FilmStorage filmStorage;
     private final FilmMpaStorage filmMpaStorage;
     private final FilmGenreStorage filmGenreStorage;
     private final UserService userService;
     private final DirectorService directorService;
+    private final PopularFilmsLeaderboard leaderboard;
+    private final RecommendationEngine recommendationEngine;
+    private final FilmSuggestTrie suggestTrie;
+    private final Validator validator;
+    private final QueryMetrics queryMetrics;
+    private final int importChunkSize;
 
     public FilmService(
             @Qualifier("db") FilmStorage filmStorage,
             @Qualifier("db") FilmMpaStorage filmMpaStorage,
             @Qualifier("db") FilmGenreStorage filmGenreStorage,
-            UserService userService, DirectorService directorService) {
+            UserService userService, DirectorService directorService,
+            PopularFilmsLeaderboard leaderboard,
+            RecommendationEngine recommendationEngine,
+            FilmSuggestTrie suggestTrie,
+            Validator validator,
+            QueryMetrics queryMetrics,
+            @Value("${filmorate.import.chunk-size:1000}") int importChunkSize) {
 
         this.filmStorage = filmStorage;
         this.filmMpaStorage = filmMpaStorage;
         this.filmGenreStorage = filmGenreStorage;
         this.userService = userService;
         this.directorService = directorService;
+        this.leaderboard = leaderboard;
+        this.recommendationEngine = recommendationEngine;
+        this.suggestTrie = suggestTrie;
+        this.validator = validator;
+        this.queryMetrics = queryMetrics;
+        this.importChunkSize = importChunkSize;
     }
 
     public Film createFilm(@Valid NewFilmRequest newFilmRequest) {
 
         log.info("creating film {}", newFilmRequest);
 
+        Film film = mapToNewFilm(newFilmRequest);
+
+        log.info("saving film {}", film);
+        Film savedFilm = filmStorage.save(film);
+        leaderboard.putFilm(savedFilm);
+        suggestTrie.putFilm(savedFilm);
+        return savedFilm;
+    }
+
+    /**
+     * Импортирует фильмы по мере чтения из requests: строки проверяются так же, как в {@link #createFilm},
+     * и сохраняются порциями по filmorate.import.chunk-size фильмов, каждая порция - в своей транзакции.
+     * Ошибка в строке не останавливает импорт, а попадает в отчет. Если requests.next() бросает
+     * BadRequestException, строка считается нечитаемой; если бросает hasNext(), чтение прекращается.
+     * После каждой сохраненной порции в progress передается промежуточный отчет без ошибок строк.
+     */
+    public FilmImportReportDto importFilms(Iterator<NewFilmRequest> requests,
+                                           Consumer<FilmImportReportDto> progress) {
+        log.info("importing films");
+
+        FilmImport filmImport = new FilmImport();
+        List<Film> chunk = new ArrayList<>(importChunkSize);
+        List<Integer> chunkRows = new ArrayList<>(importChunkSize);
+
+        while (true) {
+            try {
+                if (!requests.hasNext()) {
+                    break;
+                }
+            } catch (BadRequestException e) {
+                filmImport.fail(++filmImport.total, e.getDescription());
+                break;
+            }
+
+            int row = ++filmImport.total;
+            try {
+                NewFilmRequest request = requests.next();
+                if (request == null) {
+                    filmImport.fail(row, "пустая запись");
+                    continue;
+                }
+                Set<ConstraintViolation<NewFilmRequest>> violations = validator.validate(request);
+                if (!violations.isEmpty()) {
+                    filmImport.fail(row, violations.stream()
+                            .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                            .sorted()
+                            .collect(Collectors.joining("; ")));
+                    continue;
+                }
+                chunk.add(mapToNewFilm(request));
+                chunkRows.add(row);
+            } catch (BadRequestException | NotFoundException e) {
+                filmImport.fail(row, e.getDescription());
+                continue;
+            }
+
+            if (chunk.size() == importChunkSize) {
+                saveImportChunk(filmImport, chunk, chunkRows, progress);
+            }
+        }
+        saveImportChunk(filmImport, chunk, chunkRows, progress);
+
+        log.info("importing films done: {} rows, {} imported, {} failed",
+                filmImport.total, filmImport.imported, filmImport.failed);
+        return new FilmImportReportDto(filmImport.total, filmImport.imported, filmImport.failed, true,
+                filmImport.errors);
+    }
+
+    private void saveImportChunk(FilmImport filmImport, List<Film> chunk, List<Integer> chunkRows,
+                                 Consumer<FilmImportReportDto> progress) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+
+        try {
+            filmStorage.saveAll(chunk).forEach(film -> {
+                leaderboard.putFilm(film);
+                suggestTrie.putFilm(film);
+            });
+            filmImport.imported += chunk.size();
+        } catch (DataAccessException e) {
+            // порция откатилась целиком
+            log.warn("importing films: chunk of rows {}-{} failed", chunkRows.getFirst(), chunkRows.getLast(), e);
+            chunkRows.forEach(row -> filmImport.fail(row, "не удалось сохранить фильм: " + e.getMostSpecificCause()
+                    .getMessage()));
+        }
+        chunk.clear();
+        chunkRows.clear();
+
+        log.info("importing films: {} rows read, {} imported, {} failed",
+                filmImport.total, filmImport.imported, filmImport.failed);
+        progress.accept(new FilmImportReportDto(filmImport.total, filmImport.imported, filmImport.failed, false,
+                List.of()));
+    }
+
+    // проверяет жанры, рейтинг и режиссеров нового фильма; справочники читаются из кэша
+    private Film mapToNewFilm(NewFilmRequest newFilmRequest) {
         Film film = FilmMapper.mapToFilm(newFilmRequest);
         film.setMpa(getFilmMpa(newFilmRequest));
 
@@ -65,7 +195,6 @@ public class FilmService {
         if (newFilmRequest.getDirectors() != null) {
             if (!newFilmRequest.getDirectors().isEmpty()) {
                 List<Director> directors = getFilmDirectors(newFilmRequest);
-                directorService.validateDirectorsCreateAndUpdate(directors, newFilmRequest.getDirectors().size());
                 film.setDirectors(directors);
             } else {
                 log.debug("В запросе пришёл пустой список режиссеров");
@@ -73,8 +202,7 @@ public class FilmService {
             }
         }
 
-        log.info("saving film {}", film);
-        return filmStorage.save(film);
+        return film;
     }
 
     private FilmMpa getFilmMpa(NewFilmRequest newFilmRequest) {
@@ -100,7 +228,7 @@ public class FilmService {
 
     private List<Director> getFilmDirectors(NewFilmRequest newFilmRequest) {
         List<Integer> directorIds = newFilmRequest.getDirectors().stream().map(DirectorDto::getId).toList();
-        return directorService.getById(directorIds);
+        return directorService.validateDirectorsCreateAndUpdate(directorIds);
     }
 
     private List<FilmGenre> getFilmGenres(UpdateFilmRequest updateFilmRequest) {
@@ -110,15 +238,38 @@ public class FilmService {
 
     private List<Director> getFilmDirectors(UpdateFilmRequest updateFilmRequest) {
         List<Integer> directorIds = updateFilmRequest.getDirectors().stream().map(DirectorDto::getId).toList();
-        return directorService.getById(directorIds);
+        return directorService.validateDirectorsCreateAndUpdate(directorIds);
+    }
+
+    public List<Film> getFilmsPage(long afterId, int limit) {
+        return filmStorage.getPage(afterId, limit);
+    }
+
+    public void exportFilms(Consumer<Film> consumer) {
+        filmStorage.streamAll(consumer);
+    }
+
+    public List<Film> getFilmsByIds(List<Long> filmIds) {
+        return filmStorage.getByIds(filmIds);
     }
 
-    public List<Film> getAllFilms() {
-        return filmStorage.getAll();
+    /**
+     * Топ фильмов прямо из БД - пока рейтинг в памяти не загружен.
+     */
+    public List<Film> getPopularFilmsFromStorage(int count, Integer year, Integer genreId) {
+        if (year == null && genreId == null) {
+            return filmStorage.getPopularFilms(count);
+        } else if (genreId == null) {
+            return filmStorage.getPopularFilmsByYear(count, year);
+        } else if (year == null) {
+            return filmStorage.getPopularFilmsByGenre(count, genreId);
+        }
+        return filmStorage.getPopularFilmsByYearGenre(count, year, genreId);
     }
 
-    public List<Film> getPopularFilms(int count) {
-        return filmStorage.getPopularFilms(count);
+    public List<Film> getPopularFilmsFromStorage(int count, Integer year, Integer genreId, int afterLikes,
+                                                 long afterFilmId) {
+        return filmStorage.getPopularFilmsAfter(count, year, genreId, afterLikes, afterFilmId);
     }
 
     public List<Film> getCommonFilms(Long userId, Long friendId) {
@@ -130,35 +281,61 @@ public class FilmService {
         return filmStorage.getCommonFilms(userId, friendId);
     }
 
-    public List<Film> getPopularFilmsByYear(int count, int year) {
-        return filmStorage.getPopularFilmsByYear(count, year);
+    public Film getFilmById(long id) {
+        return filmStorage.getById(id)
+                .orElseThrow(() -> new NotFoundException("не найден фильм", "не найден фильм с id = " + id));
     }
 
-    public List<Film> getPopularFilmsByGenre(int count, int genre) {
-        return filmStorage.getPopularFilmsByGenre(count, genre);
+    public Set<Long> getExistingFilmIds(Collection<Long> ids) {
+        return filmStorage.getExistingIds(ids);
     }
 
-    public List<Film> getPopularFilmsByYearAndGenre(int count, int year, int genreId) {
-        return filmStorage.getPopularFilmsByYearGenre(count, year, genreId);
+    /**
+     * Проверяет, что фильм есть, не загружая его жанры и режиссеров.
+     */
+    public void checkFilmExists(long id) {
+        if (!filmStorage.existsById(id)) {
+            throw new NotFoundException("не найден фильм", "не найден фильм с id = " + id);
+        }
     }
 
-    public Film getFilmById(long id) {
-        return filmStorage.getById(id)
-                .orElseThrow(() -> new NotFoundException("не найден фильм", "не найден фильм с id = " + id));
-    }
+    public List<Film> searchFilms(String queryString, String searchBy, int limit) {
 
-    public List<Film> searchFilms(String queryString, String searchBy) {
+        return filmStorage.searchBy(queryString, searchBy, limit);
+    }
 
-        return filmStorage.searchBy(queryString, searchBy);
+    public List<FilmSuggestTrie.Suggestion> suggestFilms(String prefix, int limit) {
+        return suggestTrie.suggest(prefix, limit);
     }
 
+    /**
+     * Обновляет фильм в одной транзакции: чтение фильма с жанрами и режиссерами (3 запроса), справочники из кэша
+     * и не больше 5 изменяющих запросов, итого не больше 8 запросов и одна фиксация. Фактические числа пишутся
+     * в метрики filmorate.operation.statements и filmorate.operation.commits с тегом operation=film.update.
+     */
+    @Transactional
     public Film updateFilm(@Valid UpdateFilmRequest updateFilmRequest) {
 
+        queryMetrics.trackOperation("film.update");
+
         Long filmId = updateFilmRequest.getId();
 
-        Film film = filmStorage.getById(filmId)
+        Film current = filmStorage.getById(filmId)
                 .orElseThrow(() -> new NotFoundException("не найден фильм", "не найден фильм с id = " + filmId));
 
+        // current остается нетронутым: по нему хранилище находит, что изменилось
+        Film film = Film.builder()
+                .id(current.getId())
+                .name(current.getName())
+                .description(current.getDescription())
+                .releaseDate(current.getReleaseDate())
+                .duration(current.getDuration())
+                .mpa(current.getMpa())
+                .genres(current.getGenres())
+                .directors(current.getDirectors())
+                .rate(current.getRate())
+                .build();
+
         if (updateFilmRequest.getName() != null) {
             film.setName(updateFilmRequest.getName());
         }
@@ -179,23 +356,22 @@ public class FilmService {
             film.setMpa(getFilmMpa(updateFilmRequest));
         }
 
+        // не переданные жанры и режиссеры не меняются
         if (updateFilmRequest.getGenres() != null) {
-            List<FilmGenre> genres = getFilmGenres(updateFilmRequest);
-            film.setGenres(genres);
-        } else {
-            film.setGenres(List.of());
+            film.setGenres(getFilmGenres(updateFilmRequest));
         }
 
         if (updateFilmRequest.getDirectors() != null) {
-            List<Director> directors = getFilmDirectors(updateFilmRequest);
-            directorService.validateDirectorsCreateAndUpdate(directors, updateFilmRequest.getDirectors().size());
-            film.setDirectors(directors);
-        } else {
-            film.setDirectors(List.of());
+            film.setDirectors(getFilmDirectors(updateFilmRequest));
         }
 
         log.debug("updating film {}", film);
-        return filmStorage.save(film);
+        Film savedFilm = filmStorage.update(current, film);
+        AfterCommit.run(() -> {
+            leaderboard.putFilm(savedFilm);
+            suggestTrie.putFilm(savedFilm);
+        });
+        return savedFilm;
     }
 
     public void deleteFilmById(long filmId) {
@@ -206,14 +382,34 @@ public class FilmService {
                 .orElseThrow(() -> new NotFoundException("не найден фильм", "не найден фильм по id = " + filmId));
 
         filmStorage.delete(film);
+        leaderboard.removeFilm(filmId);
+        suggestTrie.removeFilm(filmId);
     }
 
     public int deleteAllFilms() {
-        return filmStorage.deleteAll();
+        int deleted = filmStorage.deleteAll();
+        leaderboard.clear();
+        recommendationEngine.clear();
+        suggestTrie.clear();
+        return deleted;
     }
 
     public List<Film> getSortedFilmsByDirector(int directorId, String sortBy) {
         Director director = directorService.getById(directorId);
         return filmStorage.getSortedFilmsByDirector(director, sortBy);
     }
-}
+
+    private static class FilmImport {
+        private final List<FilmImportReportDto.RowError> errors = new ArrayList<>();
+        private int total;
+        private int imported;
+        private int failed;
+
+        private void fail(int row, String error) {
+            failed++;
+            if (errors.size() < MAX_REPORTED_IMPORT_ERRORS) {
+                errors.add(new FilmImportReportDto.RowError(row, error));
+            }
+        }
+    }
+}
\ No newline at end of file
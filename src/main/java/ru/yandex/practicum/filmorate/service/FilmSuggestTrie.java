@@ -0,0 +1,536 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Префиксное дерево для подсказок при вводе названия фильма или имени режиссера.
+ * Ключи фильма - названия и имена его режиссеров, начиная с каждого слова, так что "ночь" находит и "Ночь в городе",
+ * и "Тёмная ночь". Ключи обрезаются до MAX_KEY_LENGTH символов: более длинный префикс ищется в узле на этой глубине
+ * и проверяется по полному ключу. В каждом узле хранятся id MAX_SUGGESTIONS самых популярных фильмов поддерева,
+ * поэтому подсказка - это спуск по префиксу и чтение готового списка.
+ * При изменении фильма или его лайков пересчитываются только узлы на путях его ключей, снизу вверх.
+ * Дерево загружается без блокировки в новый индекс, который затем подменяет текущий; изменения, пришедшие
+ * во время загрузки, повторяются на новом индексе, а лайки изменившихся фильмов перечитываются из БД.
+ * Лайки записываются числом из БД, а не разницей, поэтому лайк, попавший и в загрузку, и в изменения,
+ * учитывается один раз.
+ */
+@Slf4j
+@Component
+public class FilmSuggestTrie {
+
+    public static final int MAX_SUGGESTIONS = 20;
+
+    // подсказка нужна по первым буквам слова, поэтому длинные ключи только тратят память
+    static final int MAX_KEY_LENGTH = 15;
+
+    private static final long[] NO_FILMS = new long[0];
+
+    private final FilmStorage filmStorage;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Index index = new Index();
+    // изменения, пришедшие во время загрузки; null, когда загрузка не идет
+    private List<Consumer<Index>> pendingChanges;
+    private Set<Long> likesChangedDuringLoad;
+
+    public FilmSuggestTrie(@Qualifier("db") FilmStorage filmStorage) {
+        this.filmStorage = filmStorage;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void warmUp() {
+        log.info("warming up film suggestions");
+
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+            likesChangedDuringLoad = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Index fresh = new Index();
+        try {
+            filmStorage.streamAll(fresh::load);
+            fresh.rebuild();
+        } catch (RuntimeException e) {
+            // изменения уже применены к текущему индексу
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+                likesChangedDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            replayed = pendingChanges.size() + likesChangedDuringLoad.size();
+            pendingChanges.forEach(change -> change.accept(fresh));
+            // загруженное число лайков могло уже включать изменение, поэтому лайки не досчитываются, а перечитываются
+            if (!likesChangedDuringLoad.isEmpty()) {
+                filmStorage.getByIds(List.copyOf(likesChangedDuringLoad))
+                        .forEach(film -> fresh.setLikes(film.getId(), film.getRate()));
+            }
+            index = fresh;
+            pendingChanges = null;
+            likesChangedDuringLoad = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("warming up film suggestions done: {} films, {} changes replayed", fresh.films.size(), replayed);
+    }
+
+    /**
+     * Самые популярные фильмы, название или имя режиссера которых содержит слово, начинающееся с prefix.
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        lock.readLock().lock();
+        try {
+            return index.suggest(normalize(prefix), limit);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет или обновляет фильм. Лайки уже известного фильма сохраняются,
+     * если у фильма не заданы режиссеры (null), то остаются прежние.
+     */
+    public void putFilm(Film film) {
+        apply(index -> index.putFilm(film));
+    }
+
+    public void removeFilm(long filmId) {
+        apply(index -> index.removeFilm(filmId));
+    }
+
+    /**
+     * Записывает число лайков фильма, прочитанное в транзакции, которая его изменила. Передается само число,
+     * а не разница, поэтому лайк, уже прочитанный загрузкой, не учитывается повторно.
+     */
+    public void setLikes(long filmId, int likes) {
+        lock.writeLock().lock();
+        try {
+            if (!index.films.containsKey(filmId) && likesChangedDuringLoad == null) {
+                log.warn("film {} is absent in suggestions", filmId);
+            }
+            index.setLikes(filmId, likes);
+            if (likesChangedDuringLoad != null) {
+                likesChangedDuringLoad.add(filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void resetLikes() {
+        apply(Index::resetLikes);
+    }
+
+    /**
+     * Переименование режиссера: ключи его фильмов строятся заново.
+     */
+    public void putDirector(Director director) {
+        apply(index -> index.putDirector(director));
+    }
+
+    public void removeDirector(int directorId) {
+        apply(index -> index.removeDirector(directorId));
+    }
+
+    public void removeAllDirectors() {
+        apply(Index::removeAllDirectors);
+    }
+
+    public void clear() {
+        apply(Index::clear);
+    }
+
+    int getNodeCount() {
+        lock.readLock().lock();
+        try {
+            return index.root.count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // изменение применяется к текущему индексу, а во время загрузки еще и запоминается для нового
+    private void apply(Consumer<Index> change) {
+        lock.writeLock().lock();
+        try {
+            change.accept(index);
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static String normalize(String text) {
+        return text.strip().toLowerCase(Locale.ROOT);
+    }
+
+    private static List<Integer> directorIdsOf(Film film) {
+        return film.getDirectors() == null ? List.of() : film.getDirectors().stream().map(Director::getId).toList();
+    }
+
+    private static void addWordPrefixes(Set<String> keys, String text, int maxLength) {
+        for (int i = 0; i < text.length(); i++) {
+            boolean wordStart = i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1));
+            if (wordStart && Character.isLetterOrDigit(text.charAt(i))) {
+                keys.add(text.substring(i, Math.min(text.length(), i + maxLength)));
+            }
+        }
+    }
+
+    /**
+     * Фильмы, режиссеры и само дерево. Не потокобезопасен: доступ к текущему индексу идет под блокировкой,
+     * а новый индекс до подмены виден только загрузке.
+     */
+    private static final class Index {
+
+        private final Map<Long, FilmEntry> films = new HashMap<>();
+        private final Map<Integer, String> directorNames = new HashMap<>();
+        private final Map<Integer, Set<Long>> filmsByDirector = new HashMap<>();
+        private final Comparator<Long> order = Comparator.comparingInt((Long filmId) -> films.get(filmId).likes())
+                .reversed()
+                .thenComparing(Comparator.naturalOrder());
+        private Node root = new Node(null, ' ');
+
+        private List<Suggestion> suggest(String key, int limit) {
+            Node node = root;
+            for (int i = 0; i < Math.min(key.length(), MAX_KEY_LENGTH) && node != null; i++) {
+                node = node.child(key.charAt(i));
+            }
+            if (node == null) {
+                return List.of();
+            }
+
+            if (key.length() <= MAX_KEY_LENGTH) {
+                return Arrays.stream(node.top)
+                        .limit(limit)
+                        .mapToObj(filmId -> new Suggestion(filmId, films.get(filmId).title()))
+                        .toList();
+            }
+
+            return node.terminal == null ? List.of() : node.terminal.stream()
+                    .filter(filmId -> keysOf(films.get(filmId), Integer.MAX_VALUE).stream()
+                            .anyMatch(filmKey -> filmKey.startsWith(key)))
+                    .sorted(order)
+                    .limit(limit)
+                    .map(filmId -> new Suggestion(filmId, films.get(filmId).title()))
+                    .toList();
+        }
+
+        // загрузка: дерево строится один раз в конце
+        private void load(Film film) {
+            rememberDirectors(film);
+            FilmEntry entry = new FilmEntry(film.getName(), film.getRate(), directorIdsOf(film));
+            films.put(film.getId(), entry);
+            linkDirectors(film.getId(), entry);
+        }
+
+        private void putFilm(Film film) {
+            FilmEntry previous = films.get(film.getId());
+            Set<Node> touched = new HashSet<>();
+            if (previous != null) {
+                unindex(film.getId(), previous, touched);
+                unlinkDirectors(film.getId(), previous);
+            }
+
+            rememberDirectors(film);
+            FilmEntry entry = new FilmEntry(film.getName(),
+                    previous == null ? film.getRate() : previous.likes(),
+                    film.getDirectors() == null && previous != null ? previous.directorIds() : directorIdsOf(film));
+            films.put(film.getId(), entry);
+            linkDirectors(film.getId(), entry);
+            index(film.getId(), entry, touched);
+
+            recompute(touched);
+        }
+
+        private void removeFilm(long filmId) {
+            FilmEntry previous = films.get(filmId);
+            if (previous == null) {
+                return;
+            }
+            Set<Node> touched = new HashSet<>();
+            unindex(filmId, previous, touched);
+            unlinkDirectors(filmId, previous);
+            films.remove(filmId);
+            recompute(touched);
+        }
+
+        private void setLikes(long filmId, int likes) {
+            FilmEntry previous = films.get(filmId);
+            if (previous == null || previous.likes() == likes) {
+                return;
+            }
+            FilmEntry entry = new FilmEntry(previous.title(), likes, previous.directorIds());
+            films.put(filmId, entry);
+
+            Set<Node> touched = new HashSet<>();
+            for (String key : keysOf(entry, MAX_KEY_LENGTH)) {
+                collectPath(key, touched);
+            }
+            recompute(touched);
+        }
+
+        private void resetLikes() {
+            films.replaceAll((filmId, entry) -> new FilmEntry(entry.title(), 0, entry.directorIds()));
+            rebuild();
+        }
+
+        private void putDirector(Director director) {
+            String previousName = directorNames.get(director.getId());
+            if (director.getName().equals(previousName)) {
+                return;
+            }
+
+            Set<Long> filmIds = filmsByDirector.getOrDefault(director.getId(), Set.of());
+            Set<Node> touched = new HashSet<>();
+            filmIds.forEach(filmId -> unindex(filmId, films.get(filmId), touched));
+            directorNames.put(director.getId(), director.getName());
+            filmIds.forEach(filmId -> index(filmId, films.get(filmId), touched));
+            recompute(touched);
+        }
+
+        private void removeDirector(int directorId) {
+            Set<Long> filmIds = filmsByDirector.remove(directorId);
+            Set<Node> touched = new HashSet<>();
+            if (filmIds != null) {
+                for (Long filmId : filmIds) {
+                    FilmEntry previous = films.get(filmId);
+                    unindex(filmId, previous, touched);
+                    FilmEntry entry = new FilmEntry(previous.title(), previous.likes(),
+                            previous.directorIds().stream().filter(id -> id != directorId).toList());
+                    films.put(filmId, entry);
+                    index(filmId, entry, touched);
+                }
+            }
+            directorNames.remove(directorId);
+            recompute(touched);
+        }
+
+        private void removeAllDirectors() {
+            films.replaceAll((filmId, entry) -> new FilmEntry(entry.title(), entry.likes(), List.of()));
+            directorNames.clear();
+            filmsByDirector.clear();
+            rebuild();
+        }
+
+        private void clear() {
+            films.clear();
+            directorNames.clear();
+            filmsByDirector.clear();
+            root = new Node(null, ' ');
+        }
+
+        private void rebuild() {
+            root = new Node(null, ' ');
+            films.forEach((filmId, entry) -> index(filmId, entry, null));
+            recomputeSubtree(root);
+        }
+
+        private void index(long filmId, FilmEntry entry, Set<Node> touched) {
+            for (String key : keysOf(entry, MAX_KEY_LENGTH)) {
+                Node node = root;
+                for (int i = 0; i < key.length(); i++) {
+                    node = node.childOrCreate(key.charAt(i));
+                }
+                node.terminal().add(filmId);
+                if (touched != null) {
+                    collectPath(key, touched);
+                }
+            }
+        }
+
+        private void unindex(long filmId, FilmEntry entry, Set<Node> touched) {
+            for (String key : keysOf(entry, MAX_KEY_LENGTH)) {
+                Node node = collectPath(key, touched);
+                if (node != null && node.terminal != null) {
+                    node.terminal.remove(filmId);
+                }
+            }
+        }
+
+        // собирает узлы на пути ключа и возвращает последний из них
+        private Node collectPath(String key, Set<Node> touched) {
+            Node node = root;
+            touched.add(node);
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.child(key.charAt(i));
+                if (node != null) {
+                    touched.add(node);
+                }
+            }
+            return node;
+        }
+
+        // потомки пересчитываются раньше предков, опустевшие узлы удаляются
+        private void recompute(Collection<Node> touched) {
+            List<Node> nodes = new ArrayList<>(touched);
+            nodes.sort(Comparator.comparingInt((Node node) -> node.depth).reversed());
+            for (Node node : nodes) {
+                node.top = topOf(node);
+                if (node.parent != null && node.isEmpty()) {
+                    node.parent.children.remove(node.symbol);
+                }
+            }
+        }
+
+        private void recomputeSubtree(Node node) {
+            if (node.children != null) {
+                node.children.values().forEach(this::recomputeSubtree);
+            }
+            node.top = topOf(node);
+        }
+
+        // у узла без своих фильмов и с одним потомком список тот же, поэтому цепочки узлов делят один массив
+        private long[] topOf(Node node) {
+            boolean noTerminal = node.terminal == null || node.terminal.isEmpty();
+            if (noTerminal && node.children != null && node.children.size() == 1) {
+                return node.children.values().iterator().next().top;
+            }
+
+            TreeSet<Long> best = new TreeSet<>(order);
+            if (!noTerminal) {
+                node.terminal.forEach(filmId -> offer(best, filmId));
+            }
+            if (node.children != null) {
+                for (Node child : node.children.values()) {
+                    for (long filmId : child.top) {
+                        offer(best, filmId);
+                    }
+                }
+            }
+            return best.isEmpty() ? NO_FILMS : best.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        private static void offer(TreeSet<Long> best, long filmId) {
+            best.add(filmId);
+            if (best.size() > MAX_SUGGESTIONS) {
+                best.pollLast();
+            }
+        }
+
+        private Set<String> keysOf(FilmEntry entry, int maxLength) {
+            Set<String> keys = new LinkedHashSet<>();
+            addWordPrefixes(keys, normalize(entry.title()), maxLength);
+            for (Integer directorId : entry.directorIds()) {
+                String name = directorNames.get(directorId);
+                if (name != null) {
+                    addWordPrefixes(keys, normalize(name), maxLength);
+                }
+            }
+            return keys;
+        }
+
+        private void rememberDirectors(Film film) {
+            if (film.getDirectors() != null) {
+                film.getDirectors().forEach(director ->
+                        directorNames.putIfAbsent(director.getId(), director.getName()));
+            }
+        }
+
+        private void linkDirectors(long filmId, FilmEntry entry) {
+            entry.directorIds().forEach(directorId ->
+                    filmsByDirector.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId));
+        }
+
+        private void unlinkDirectors(long filmId, FilmEntry entry) {
+            for (Integer directorId : entry.directorIds()) {
+                Set<Long> filmIds = filmsByDirector.get(directorId);
+                if (filmIds != null) {
+                    filmIds.remove(filmId);
+                    if (filmIds.isEmpty()) {
+                        filmsByDirector.remove(directorId);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class Node {
+        private final Node parent;
+        private final char symbol;
+        private final int depth;
+        private Map<Character, Node> children;
+        private Set<Long> terminal;
+        private long[] top = NO_FILMS;
+
+        private Node(Node parent, char symbol) {
+            this.parent = parent;
+            this.symbol = symbol;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+        }
+
+        private Node child(char symbol) {
+            return children == null ? null : children.get(symbol);
+        }
+
+        private Node childOrCreate(char symbol) {
+            if (children == null) {
+                children = new HashMap<>();
+            }
+            return children.computeIfAbsent(symbol, s -> new Node(this, s));
+        }
+
+        private Set<Long> terminal() {
+            if (terminal == null) {
+                terminal = new HashSet<>();
+            }
+            return terminal;
+        }
+
+        private boolean isEmpty() {
+            return (children == null || children.isEmpty()) && (terminal == null || terminal.isEmpty());
+        }
+
+        private int count() {
+            int count = 1;
+            if (children != null) {
+                for (Node child : children.values()) {
+                    count += child.count();
+                }
+            }
+            return count;
+        }
+    }
+
+    private record FilmEntry(String title, int likes, List<Integer> directorIds) {
+    }
+
+    public record Suggestion(long filmId, String name) {
+    }
+}
@@ -0,0 +1,217 @@
+package ru.yandex.practicum.filmorate.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Лента активности друзей с рассылкой при записи. Сохраненное событие добавляется в ленты всех пользователей,
+ * у которых автор есть в списке друзей: в БД - в таблицу friend_timeline, в памяти - только в ленты, которые
+ * уже загружены. В памяти лента пользователя - это кольцевой буфер последних capacity id событий; лента
+ * загружается из БД при обращении, а кэш лент ограничен cache-size пользователями и забывает ленты,
+ * к которым не обращались дольше cache-expire-after-access.
+ * События знаменитостей (автор в друзьях у более чем celebrity-followers пользователей) не рассылаются,
+ * а дочитываются из events при запросе ленты. Пользователь остается знаменитостью до перезапуска, чтобы его
+ * события не пропадали из лент, если число подписчиков колеблется около порога.
+ */
+@Slf4j
+@Component
+public class FriendTimeline {
+
+    private final TimelineStorage timelineStorage;
+    private final FriendshipStorage friendshipStorage;
+    private final EventStorage eventStorage;
+    private final int capacity;
+    private final int celebrityFollowers;
+
+    private final Cache<Long, EventRing> timelines;
+    private final Set<Long> celebrities = ConcurrentHashMap.newKeySet();
+
+    public FriendTimeline(@Qualifier("db") TimelineStorage timelineStorage,
+                          @Qualifier("db") FriendshipStorage friendshipStorage,
+                          @Qualifier("db") EventStorage eventStorage,
+                          @Value("${filmorate.timeline.capacity:1000}") int capacity,
+                          @Value("${filmorate.timeline.celebrity-followers:1000}") int celebrityFollowers,
+                          @Value("${filmorate.timeline.cache-size:10000}") long cacheSize,
+                          @Value("${filmorate.timeline.cache-expire-after-access:30m}") Duration expireAfterAccess) {
+        this.timelineStorage = timelineStorage;
+        this.friendshipStorage = friendshipStorage;
+        this.eventStorage = eventStorage;
+        this.capacity = capacity;
+        this.celebrityFollowers = celebrityFollowers;
+        this.timelines = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(expireAfterAccess)
+                .build();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadCelebrities() {
+        celebrities.addAll(friendshipStorage.getUsersWithMoreFollowersThan(celebrityFollowers));
+        log.info("friend timeline: {} celebrities", celebrities.size());
+    }
+
+    /**
+     * Рассылает пакет сохраненных событий по лентам. События должны идти в порядке возрастания id.
+     * Подписчики всех авторов пакета читаются одним запросом, строки лент пишутся одним пакетом.
+     */
+    public void fanOut(List<Event> events) {
+        Map<Long, List<Event>> eventsByAuthor = new LinkedHashMap<>();
+        for (Event event : events) {
+            if (!celebrities.contains(event.getUserId())) {
+                eventsByAuthor.computeIfAbsent(event.getUserId(), id -> new ArrayList<>()).add(event);
+            }
+        }
+        if (eventsByAuthor.isEmpty()) {
+            return;
+        }
+
+        Map<Long, List<Long>> followersByAuthor = friendshipStorage.getFollowers(eventsByAuthor.keySet());
+        Map<Long, List<Long>> followersByEvent = new TreeMap<>();
+        eventsByAuthor.forEach((authorId, authorEvents) -> {
+            List<Long> followers = followersByAuthor.getOrDefault(authorId, List.of());
+            if (followers.size() > celebrityFollowers) {
+                log.info("user {} has {} followers, timeline switched to pull", authorId, followers.size());
+                celebrities.add(authorId);
+                return;
+            }
+            authorEvents.forEach(event -> followersByEvent.put(event.getId(), followers));
+        });
+
+        timelineStorage.add(followersByEvent);
+
+        // незагруженные ленты не трогаем: при загрузке они прочитают новые строки из friend_timeline.
+        // computeIfPresent дожидается загрузки, которая идет в этот момент, а буфер пропускает id,
+        // которые загрузка уже успела прочитать
+        Map<Long, Long> trimmed = new HashMap<>();
+        followersByEvent.forEach((eventId, followers) -> {
+            for (Long followerId : followers) {
+                timelines.asMap().computeIfPresent(followerId, (id, timeline) -> {
+                    long oldest = timeline.add(eventId);
+                    if (oldest != EventRing.NOT_TRIMMED) {
+                        trimmed.put(followerId, oldest);
+                    }
+                    return timeline;
+                });
+            }
+        });
+
+        timelineStorage.trim(trimmed);
+    }
+
+    /**
+     * Возвращает последние limit событий друзей пользователя с id меньше beforeId в хронологическом порядке.
+     * События тех, кого уже нет в друзьях, пропускаются.
+     */
+    public List<Event> getEvents(long userId, Set<Long> friendIds, long beforeId, int limit) {
+        TreeMap<Long, Event> found = new TreeMap<>(Comparator.reverseOrder());
+
+        Iterator<Long> pushed = pushedBefore(userId, beforeId).iterator();
+        while (found.size() < limit && pushed.hasNext()) {
+            List<Long> chunk = new ArrayList<>(limit);
+            while (chunk.size() < limit && pushed.hasNext()) {
+                chunk.add(pushed.next());
+            }
+            eventStorage.getByIds(chunk).stream()
+                    .filter(event -> friendIds.contains(event.getUserId()))
+                    .forEach(event -> found.put(event.getId(), event));
+        }
+
+        Set<Long> celebrityFriends = new HashSet<>(friendIds);
+        celebrityFriends.retainAll(celebrities);
+        eventStorage.findLastEventsByUserIds(celebrityFriends, beforeId, limit)
+                .forEach(event -> found.put(event.getId(), event));
+
+        return found.values().stream().limit(limit).toList().reversed();
+    }
+
+    public void removeUser(long userId) {
+        timelines.invalidate(userId);
+        celebrities.remove(userId);
+    }
+
+    public void clear() {
+        timelines.invalidateAll();
+        celebrities.clear();
+    }
+
+    // id событий ленты с id меньше beforeId, от новых к старым
+    private List<Long> pushedBefore(long userId, long beforeId) {
+        return timelines.get(userId, this::load).before(beforeId);
+    }
+
+    // строки, которые не поместились в буфер, пока лента не была загружена, удаляются из БД при загрузке
+    private EventRing load(long userId) {
+        List<Long> eventIds = timelineStorage.getEventIds(userId, capacity);
+        if (eventIds.size() == capacity) {
+            timelineStorage.trim(Map.of(userId, eventIds.getFirst()));
+        }
+        return new EventRing(capacity, eventIds);
+    }
+
+    /**
+     * Последние capacity id событий ленты по возрастанию в кольцевом буфере.
+     */
+    private static final class EventRing {
+        private static final long NOT_TRIMMED = -1;
+
+        private final long[] ids;
+        private int head;
+        private int size;
+
+        private EventRing(int capacity, List<Long> eventIds) {
+            ids = new long[capacity];
+            eventIds.forEach(this::add);
+        }
+
+        /**
+         * Добавляет id, если он больше последнего. Возвращает самый старый оставшийся id, если буфер
+         * переполнился и старейший id вытеснен, иначе NOT_TRIMMED.
+         */
+        private synchronized long add(long eventId) {
+            if (size > 0 && ids[(head + size - 1) % ids.length] >= eventId) {
+                return NOT_TRIMMED;
+            }
+            if (size < ids.length) {
+                ids[(head + size++) % ids.length] = eventId;
+                return NOT_TRIMMED;
+            }
+            ids[head] = eventId;
+            head = (head + 1) % ids.length;
+            return ids[head];
+        }
+
+        private synchronized List<Long> before(long beforeId) {
+            List<Long> found = new ArrayList<>();
+            for (int i = size - 1; i >= 0; i--) {
+                long eventId = ids[(head + i) % ids.length];
+                if (eventId < beforeId) {
+                    found.add(eventId);
+                }
+            }
+            return found;
+        }
+    }
+}
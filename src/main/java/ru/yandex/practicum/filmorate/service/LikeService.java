@@ -1,44 +1,89 @@
 package ru.yandex.practicum.filmorate.service;
 
 import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.yandex.practicum.filmorate.dto.LikeOperationRequest;
+import ru.yandex.practicum.filmorate.dto.LikeOperationResultDto;
+import ru.yandex.practicum.filmorate.exceptions.BadRequestException;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.service.PopularFilmsLeaderboard.FilmRank;
 import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class LikeService {
 
+    public static final int MAX_BULK_OPERATIONS = 50_000;
+
+    // столько раз пачка проверяется и пишется заново, если фильм или пользователь удален между проверкой и записью
+    private static final int BULK_ATTEMPTS = 3;
+
     private final FilmService filmService;
     private final UserService userService;
 
     private final FilmLikeStorage filmLikeStorage;
     private final EventService eventService;
+    private final PopularFilmsLeaderboard leaderboard;
+    private final RecommendationEngine recommendationEngine;
+    private final FilmSuggestTrie suggestTrie;
+    private final TransactionTemplate transactionTemplate;
 
     public LikeService(FilmService filmService, UserService userService,
                        @Qualifier("db") FilmLikeStorage filmLikeStorage,
-                       EventService eventService) {
+                       EventService eventService,
+                       PopularFilmsLeaderboard leaderboard,
+                       RecommendationEngine recommendationEngine,
+                       FilmSuggestTrie suggestTrie,
+                       PlatformTransactionManager transactionManager) {
 
         this.filmService = filmService;
         this.userService = userService;
         this.filmLikeStorage = filmLikeStorage;
         this.eventService = eventService;
-
+        this.leaderboard = leaderboard;
+        this.recommendationEngine = recommendationEngine;
+        this.suggestTrie = suggestTrie;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
     }
 
     public boolean like(long filmId, long userId) {
         checkFilmId(filmId);
         checkUserId(userId);
 
-        Film film = filmService.getFilmById(filmId);
-        User user = userService.getUserById(userId);
+        OptionalInt likes;
+        try {
+            likes = filmLikeStorage.like(filmId, userId);
+        } catch (DataIntegrityViolationException e) {
+            // лайк нарушил внешний ключ - выясняем, кого из двоих нет
+            checkExists(filmId, userId);
+            throw e;
+        }
 
         eventService.createAddLikeEvent(userId, filmId);
 
-        return filmLikeStorage.like(film, user);
+        likes.ifPresent(count -> {
+            leaderboard.setLikes(filmId, count);
+            suggestTrie.setLikes(filmId, count);
+            recommendationEngine.onLikesChanged(userId);
+        });
+        return likes.isPresent();
     }
 
     public boolean dislike(long filmId, long userId) {
@@ -46,28 +91,155 @@ public class LikeService {
         checkFilmId(filmId);
         checkUserId(userId);
 
-        Film film = filmService.getFilmById(filmId);
-        User user = userService.getUserById(userId);
+        OptionalInt likes = filmLikeStorage.dislike(filmId, userId);
+        if (likes.isEmpty()) {
+            // лайка не было, но и фильма или пользователя могло не быть
+            checkExists(filmId, userId);
+        }
 
         eventService.createRemoveLikeEvent(userId, filmId);
 
-        return filmLikeStorage.dislike(film, user);
+        likes.ifPresent(count -> {
+            leaderboard.setLikes(filmId, count);
+            suggestTrie.setLikes(filmId, count);
+            recommendationEngine.onLikesChanged(userId);
+        });
+        return likes.isPresent();
+    }
+
+    /**
+     * Применяет операции с лайками по порядку, как если бы они пришли отдельными запросами, и возвращает
+     * результат каждой. Фильмы и пользователи проверяются, текущие лайки читаются и итоговая разница пишется
+     * пакетами в одной транзакции. Если фильм или пользователь удален между проверкой и записью, транзакция
+     * повторяется, и операции с ним получают FILM_NOT_FOUND или USER_NOT_FOUND. В рейтинг и подсказки
+     * записывается число лайков, прочитанное в этой транзакции, поэтому параллельные лайки тех же пар
+     * не учитываются дважды.
+     */
+    public List<LikeOperationResultDto> applyLikes(List<LikeOperationRequest> operations) {
+        if (operations.size() > MAX_BULK_OPERATIONS) {
+            throw new BadRequestException("слишком много операций",
+                    "за один запрос можно передать не более " + MAX_BULK_OPERATIONS + " операций");
+        }
+
+        BulkLikes applied = null;
+        for (int attempt = 1; applied == null; attempt++) {
+            try {
+                applied = transactionTemplate.execute(status -> planAndApplyLikes(operations));
+            } catch (DataIntegrityViolationException e) {
+                if (attempt == BULK_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+
+        applied.likes().forEach((filmId, likes) -> {
+            leaderboard.setLikes(filmId, likes);
+            suggestTrie.setLikes(filmId, likes);
+        });
+        applied.changedUserIds().forEach(recommendationEngine::onLikesChanged);
+        eventService.createLikeEvents(applied.eventLikes(), applied.eventOperations());
+
+        return applied.results();
     }
 
-    public List<Film> getPopularFilms(int count) {
-        return filmService.getPopularFilms(count);
+    private BulkLikes planAndApplyLikes(List<LikeOperationRequest> operations) {
+        Set<Long> filmIds = filmService.getExistingFilmIds(operations.stream()
+                .map(LikeOperationRequest::getFilmId).filter(Objects::nonNull).collect(Collectors.toSet()));
+        Set<Long> userIds = userService.getExistingUserIds(operations.stream()
+                .map(LikeOperationRequest::getUserId).filter(Objects::nonNull).collect(Collectors.toSet()));
+        Map<Long, Set<Long>> likedFilmIds = new HashMap<>(filmLikeStorage.getLikedFilmIds(userIds));
+
+        // состояние каждой затронутой пары до запроса
+        Map<FilmLike, Boolean> likedBefore = new LinkedHashMap<>();
+        List<FilmLike> eventLikes = new ArrayList<>();
+        List<Operation> eventOperations = new ArrayList<>();
+        List<LikeOperationResultDto> results = new ArrayList<>(operations.size());
+
+        for (LikeOperationRequest operation : operations) {
+            Long filmId = operation.getFilmId();
+            Long userId = operation.getUserId();
+            Operation type = operation.getOperation();
+
+            LikeOperationResultDto.Result result;
+            if (filmId == null || userId == null || (type != Operation.ADD && type != Operation.REMOVE)) {
+                result = LikeOperationResultDto.Result.INVALID;
+            } else if (!filmIds.contains(filmId)) {
+                result = LikeOperationResultDto.Result.FILM_NOT_FOUND;
+            } else if (!userIds.contains(userId)) {
+                result = LikeOperationResultDto.Result.USER_NOT_FOUND;
+            } else {
+                Set<Long> userLikes = likedFilmIds.computeIfAbsent(userId, id -> new HashSet<>());
+                boolean changed = type == Operation.ADD ? userLikes.add(filmId) : userLikes.remove(filmId);
+                if (changed) {
+                    likedBefore.putIfAbsent(new FilmLike(filmId, userId), type == Operation.REMOVE);
+                    result = type == Operation.ADD
+                            ? LikeOperationResultDto.Result.LIKED
+                            : LikeOperationResultDto.Result.DISLIKED;
+                } else {
+                    result = LikeOperationResultDto.Result.UNCHANGED;
+                }
+                eventLikes.add(new FilmLike(filmId, userId));
+                eventOperations.add(type);
+            }
+            results.add(new LikeOperationResultDto(filmId, userId, type, result));
+        }
+
+        List<FilmLike> toAdd = new ArrayList<>();
+        List<FilmLike> toRemove = new ArrayList<>();
+        likedBefore.forEach((like, wasLiked) -> {
+            boolean liked = likedFilmIds.get(like.userId()).contains(like.filmId());
+            if (liked && !wasLiked) {
+                toAdd.add(like);
+            } else if (!liked && wasLiked) {
+                toRemove.add(like);
+            }
+        });
+
+        Map<Long, Integer> likes = filmLikeStorage.applyLikes(toAdd, toRemove);
+        List<Long> changedUserIds = Stream.concat(toAdd.stream(), toRemove.stream())
+                .map(FilmLike::userId)
+                .distinct()
+                .toList();
+        return new BulkLikes(results, eventLikes, eventOperations, likes, changedUserIds);
+    }
+
+    /**
+     * Страница топа после позиции after (с начала, если after не задан). Позиция следующей страницы берется
+     * из того же порядка (лайки, id), по которому идет выдача, и равна null, если страниц больше нет.
+     */
+    public PopularFilmsPage getPopularFilmsPage(int count, Integer year, Integer genreId, FilmRank after) {
+        if (count <= 0) {
+            return new PopularFilmsPage(List.of(), null);
+        }
+
+        if (!leaderboard.isReady()) {
+            // читаем на одну запись больше, чтобы узнать, есть ли следующая страница
+            List<Film> films = after == null
+                    ? filmService.getPopularFilmsFromStorage(count + 1, year, genreId)
+                    : filmService.getPopularFilmsFromStorage(count + 1, year, genreId, after.likes(), after.filmId());
+            if (films.size() <= count) {
+                return new PopularFilmsPage(films, null);
+            }
+            List<Film> page = films.subList(0, count);
+            return new PopularFilmsPage(page, new FilmRank(page.getLast().getRate(), page.getLast().getId()));
+        }
+
+        PopularFilmsLeaderboard.TopPage top = leaderboard.getTopPage(count, year, genreId, after);
+        List<Film> films = filmService.getFilmsByIds(top.films().stream().map(FilmRank::filmId).toList());
+        return new PopularFilmsPage(films, top.hasMore() ? top.films().getLast() : null);
     }
 
-    public List<Film> getPopularFilmsByYear(int count, int year) {
-        return filmService.getPopularFilmsByYear(count, year);
+    // результат пачки лайков, зафиксированной в БД
+    private record BulkLikes(List<LikeOperationResultDto> results, List<FilmLike> eventLikes,
+                             List<Operation> eventOperations, Map<Long, Integer> likes, List<Long> changedUserIds) {
     }
 
-    public List<Film> getPopularFilmsByGenre(int count, int genreId) {
-        return filmService.getPopularFilmsByGenre(count, genreId);
+    public record PopularFilmsPage(List<Film> films, FilmRank next) {
     }
 
-    public List<Film> getPopularFilmsByYearAndGenre(int count, int year, int genreId) {
-        return filmService.getPopularFilmsByYearAndGenre(count, year, genreId);
+    private void checkExists(long filmId, long userId) {
+        filmService.checkFilmExists(filmId);
+        userService.checkUserExists(userId);
     }
 
     private void checkFilmId(Long filmId) {
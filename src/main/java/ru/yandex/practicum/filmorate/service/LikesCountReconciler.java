@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+
+/**
+ * Периодически сверяет films.likes_count с таблицей film_likes и исправляет расхождения.
+ */
+@Slf4j
+@Component
+public class LikesCountReconciler {
+
+    private final FilmLikeStorage filmLikeStorage;
+
+    public LikesCountReconciler(@Qualifier("db") FilmLikeStorage filmLikeStorage) {
+        this.filmLikeStorage = filmLikeStorage;
+    }
+
+    @Scheduled(initialDelayString = "${filmorate.likes.reconcile-interval:PT1H}",
+            fixedDelayString = "${filmorate.likes.reconcile-interval:PT1H}")
+    public void reconcile() {
+        log.debug("reconciling films likes count");
+        int repaired = filmLikeStorage.reconcileLikesCount();
+        log.debug("reconciling films likes count done, repaired {}", repaired);
+    }
+}
@@ -0,0 +1,321 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.FilmGenre;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+/**
+ * Рейтинг популярных фильмов в памяти.
+ * Для каждого среза (все фильмы, год, жанр, год и жанр) фильмы хранятся в отсортированном дереве,
+ * упорядоченном так же, как в БД: по убыванию лайков, затем по id фильма.
+ * Изменение лайка стоит O(log n) на срез, чтение топа - O(count). Лайки фильма записываются числом из БД,
+ * прочитанным в транзакции изменения, поэтому повтор или гонка с загрузкой не учитывает лайк дважды.
+ * Рейтинг загружается из БД без блокировки; изменения, пришедшие во время загрузки, копятся и применяются
+ * после нее, а лайки изменившихся фильмов перечитываются из БД. Пока рейтинг не загружен, {@link #isReady()}
+ * возвращает false и топ читается из БД.
+ */
+@Slf4j
+@Component
+public class PopularFilmsLeaderboard {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingInt(Entry::likes).reversed()
+            .thenComparingLong(Entry::filmId);
+
+    private static final int MAX_REPORTED_MISMATCHES = 100;
+
+    private final FilmLikeStorage filmLikeStorage;
+
+    private final Map<Long, FilmPopularity> films = new HashMap<>();
+    private final Map<Partition, NavigableSet<Entry>> partitions = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // изменения, пришедшие во время загрузки из БД; null, когда загрузка не идет
+    private List<Runnable> pendingChanges;
+    private Set<Long> likesChangedDuringLoad;
+    private volatile boolean ready;
+
+    public PopularFilmsLeaderboard(@Qualifier("db") FilmLikeStorage filmLikeStorage) {
+        this.filmLikeStorage = filmLikeStorage;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void warmUp() {
+        log.info("warming up popular films leaderboard");
+
+        lock.writeLock().lock();
+        try {
+            pendingChanges = new ArrayList<>();
+            likesChangedDuringLoad = new HashSet<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        List<FilmPopularity> popularity;
+        try {
+            popularity = filmLikeStorage.getFilmsPopularity();
+        } catch (RuntimeException e) {
+            // изменения уже применены к текущему рейтингу, копить их больше незачем
+            lock.writeLock().lock();
+            try {
+                pendingChanges = null;
+                likesChangedDuringLoad = null;
+            } finally {
+                lock.writeLock().unlock();
+            }
+            throw e;
+        }
+
+        int replayed;
+        lock.writeLock().lock();
+        try {
+            rebuild(popularity);
+            replayed = pendingChanges.size() + likesChangedDuringLoad.size();
+            pendingChanges.forEach(Runnable::run);
+            // прочитанное число лайков могло уже включать изменение, поэтому лайки не досчитываются, а перечитываются
+            if (!likesChangedDuringLoad.isEmpty()) {
+                filmLikeStorage.getLikesCounts(likesChangedDuringLoad).forEach(this::replaceLikes);
+            }
+            pendingChanges = null;
+            likesChangedDuringLoad = null;
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        log.info("warming up popular films leaderboard done: {} films, {} changes replayed",
+                popularity.size(), replayed);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Возвращает следующие count фильмов после позиции (likes, filmId) в порядке рейтинга вместе с их позициями.
+     * Если after не задан, то топ читается с начала. Признак следующей страницы берется из самого рейтинга.
+     */
+    public TopPage getTopPage(int count, Integer year, Integer genreId, FilmRank after) {
+        lock.readLock().lock();
+        try {
+            NavigableSet<Entry> ranking = partitions.get(new Partition(year, genreId));
+            if (ranking == null) {
+                return new TopPage(List.of(), false);
+            }
+
+            if (after != null) {
+                ranking = ranking.tailSet(new Entry(after.filmId(), after.likes()), false);
+            }
+
+            List<FilmRank> films = new ArrayList<>(Math.min(count, ranking.size()));
+            Iterator<Entry> iterator = ranking.iterator();
+            while (iterator.hasNext() && films.size() < count) {
+                Entry entry = iterator.next();
+                films.add(new FilmRank(entry.likes(), entry.filmId()));
+            }
+            return new TopPage(films, iterator.hasNext());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void putFilm(Film film) {
+        Set<Integer> genreIds = film.getGenres() == null ? Set.of() : film.getGenres().stream()
+                .map(FilmGenre::getId)
+                .collect(Collectors.toSet());
+
+        apply(() -> {
+            FilmPopularity previous = films.get(film.getId());
+            int likes = previous == null ? film.getRate() : previous.getLikes();
+            removeEntries(previous);
+            addEntries(new FilmPopularity(film.getId(), film.getReleaseDate().getYear(), genreIds, likes));
+        });
+    }
+
+    public void removeFilm(long filmId) {
+        apply(() -> removeEntries(films.get(filmId)));
+    }
+
+    /**
+     * Записывает число лайков фильма, прочитанное в транзакции, которая его изменила. Передается само число,
+     * а не разница, поэтому изменение, уже попавшее в снимок при загрузке, не учитывается повторно.
+     */
+    public void setLikes(long filmId, int likes) {
+        lock.writeLock().lock();
+        try {
+            if (films.containsKey(filmId)) {
+                replaceLikes(filmId, likes);
+            } else if (ready) {
+                log.warn("film {} is absent in leaderboard", filmId);
+            }
+            if (likesChangedDuringLoad != null) {
+                likesChangedDuringLoad.add(filmId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void resetLikes() {
+        apply(() -> {
+            List<FilmPopularity> current = new ArrayList<>(films.values());
+            current.forEach(film -> film.setLikes(0));
+            rebuild(current);
+        });
+    }
+
+    public void clear() {
+        apply(() -> {
+            films.clear();
+            partitions.clear();
+        });
+    }
+
+    public void load(List<FilmPopularity> popularity) {
+        lock.writeLock().lock();
+        try {
+            rebuild(popularity);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Сверяет рейтинг с лайками в БД.
+     */
+    public ConsistencyReport checkConsistency() {
+        Map<Long, FilmPopularity> actual = filmLikeStorage.getFilmsPopularity().stream()
+                .collect(Collectors.toMap(FilmPopularity::getFilmId, film -> film));
+
+        lock.readLock().lock();
+        try {
+            Set<Long> filmIds = new HashSet<>(actual.keySet());
+            filmIds.addAll(films.keySet());
+
+            List<Long> mismatched = filmIds.stream()
+                    .filter(filmId -> !isSame(films.get(filmId), actual.get(filmId)))
+                    .sorted()
+                    .toList();
+
+            if (!mismatched.isEmpty()) {
+                log.warn("leaderboard differs from database for {} films", mismatched.size());
+            }
+
+            return new ConsistencyReport(actual.size(), films.size(), mismatched.size(),
+                    mismatched.stream().limit(MAX_REPORTED_MISMATCHES).toList());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // изменение применяется сразу, а во время загрузки еще и запоминается, чтобы повторить его на загруженном рейтинге;
+    // так повторяются только изменения, которые дают одинаковый результат при повторе
+    private void apply(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+            if (pendingChanges != null) {
+                pendingChanges.add(change);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void replaceLikes(long filmId, int likes) {
+        FilmPopularity previous = films.get(filmId);
+        if (previous == null || previous.getLikes() == likes) {
+            return;
+        }
+        removeEntries(previous);
+        addEntries(new FilmPopularity(filmId, previous.getYear(), previous.getGenreIds(), likes));
+    }
+
+    private boolean isSame(FilmPopularity cached, FilmPopularity actual) {
+        if (cached == null || actual == null) {
+            return cached == actual;
+        }
+        return cached.getLikes() == actual.getLikes()
+                && cached.getYear().equals(actual.getYear())
+                && cached.getGenreIds().equals(actual.getGenreIds());
+    }
+
+    private void rebuild(List<FilmPopularity> popularity) {
+        films.clear();
+        partitions.clear();
+        popularity.forEach(this::addEntries);
+    }
+
+    private void addEntries(FilmPopularity film) {
+        films.put(film.getFilmId(), film);
+        Entry entry = new Entry(film.getFilmId(), film.getLikes());
+        for (Partition partition : partitionsOf(film)) {
+            partitions.computeIfAbsent(partition, p -> new TreeSet<>(ORDER)).add(entry);
+        }
+    }
+
+    private void removeEntries(FilmPopularity film) {
+        if (film == null) {
+            return;
+        }
+
+        films.remove(film.getFilmId());
+        Entry entry = new Entry(film.getFilmId(), film.getLikes());
+        for (Partition partition : partitionsOf(film)) {
+            NavigableSet<Entry> ranking = partitions.get(partition);
+            if (ranking != null) {
+                ranking.remove(entry);
+                if (ranking.isEmpty()) {
+                    partitions.remove(partition);
+                }
+            }
+        }
+    }
+
+    private List<Partition> partitionsOf(FilmPopularity film) {
+        List<Partition> result = new ArrayList<>(2 + 2 * film.getGenreIds().size());
+        result.add(new Partition(null, null));
+        result.add(new Partition(film.getYear(), null));
+        for (Integer genreId : film.getGenreIds()) {
+            result.add(new Partition(null, genreId));
+            result.add(new Partition(film.getYear(), genreId));
+        }
+        return result;
+    }
+
+    private record Partition(Integer year, Integer genreId) {
+    }
+
+    private record Entry(long filmId, int likes) {
+    }
+
+    public record FilmRank(int likes, long filmId) {
+    }
+
+    public record TopPage(List<FilmRank> films, boolean hasMore) {
+    }
+
+    public record ConsistencyReport(int databaseFilms, int leaderboardFilms, int mismatchedCount,
+                                    List<Long> mismatchedFilmIds) {
+    }
+}
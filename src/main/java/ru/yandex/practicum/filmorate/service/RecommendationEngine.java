@@ -0,0 +1,263 @@
+package ru.yandex.practicum.filmorate.service;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.storage.LikeIndex;
+import ru.yandex.practicum.filmorate.storage.LikeIndex.Similarity;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Рекомендации фильмов по схожести лайков (user-based collaborative filtering).
+ * Для каждого пользователя заранее считаются K ближайших соседей по мере Жаккара и список рекомендаций,
+ * поэтому запрос рекомендаций - это чтение из словаря.
+ * Схожесть считается по индексу лайков в памяти: размер пересечения - мощность AND битовых множеств.
+ * Все рекомендации периодически пересчитываются целиком. Лайк только отмечает автора измененным, а отмеченные
+ * пользователи пересчитываются в пуле движка не раньше чем через refresh-delay, накопленные вместе: автор лайка,
+ * его соседи и те, у кого автор был среди соседей - для последних схожесть изменилась или пропала совсем.
+ * Пересчеты отмеченных выполняются по одному, так что словари соседей меняет один поток. Если рекомендации
+ * запрашивают, пока изменения ждут пересчета, отмеченные пересчитываются сразу: лайк виден в следующем же чтении.
+ * Пользователи, у которых лайки изменились во время полного пересчета, пересчитываются еще раз после замены
+ * словаря, иначе их изменения остались бы только в старом словаре до следующего пересчета.
+ * До первого полного пересчета {@link #isReady()} возвращает false.
+ */
+@Slf4j
+@Component
+public class RecommendationEngine {
+
+    private static final Comparator<Similarity> BY_SIMILARITY = Comparator.comparingDouble(Similarity::jaccard)
+            .reversed()
+            .thenComparingLong(Similarity::userId);
+
+    private final LikeIndex likeIndex;
+    private final int neighboursCount;
+    private final int recommendationsLimit;
+    private final ForkJoinPool pool;
+    private final Executor delayedPool;
+
+    // отмеченные пользователи и номер отметки: пересчет снимает только ту отметку, которую успел учесть
+    private final Map<Long, Long> dirty = new ConcurrentHashMap<>();
+    private final AtomicLong dirtySequence = new AtomicLong();
+    private final AtomicBoolean refreshScheduled = new AtomicBoolean();
+    private final ReentrantLock refreshLock = new ReentrantLock();
+
+    private volatile Model model = new Model();
+    private volatile boolean ready;
+    // пользователи, измененные во время полного пересчета; null, когда пересчет не идет
+    private volatile Set<Long> changedDuringRebuild;
+
+    public RecommendationEngine(LikeIndex likeIndex,
+                                @Value("${filmorate.recommendations.neighbours:10}") int neighboursCount,
+                                @Value("${filmorate.recommendations.limit:100}") int recommendationsLimit,
+                                @Value("${filmorate.recommendations.parallelism:0}") int parallelism,
+                                @Value("${filmorate.recommendations.refresh-delay:1s}") Duration refreshDelay) {
+        this.likeIndex = likeIndex;
+        this.neighboursCount = neighboursCount;
+        this.recommendationsLimit = recommendationsLimit;
+        this.pool = new ForkJoinPool(parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors());
+        this.delayedPool = CompletableFuture.delayedExecutor(refreshDelay.toNanos(), TimeUnit.NANOSECONDS, pool);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(initialDelayString = "${filmorate.recommendations.rebuild-interval:PT10M}",
+            fixedDelayString = "${filmorate.recommendations.rebuild-interval:PT10M}")
+    public synchronized void rebuild() {
+        log.info("rebuilding recommendations");
+        long start = System.nanoTime();
+
+        changedDuringRebuild = ConcurrentHashMap.newKeySet();
+        List<Long> userIds = likeIndex.getUserIds();
+        Model fresh = new Model();
+        try {
+            pool.submit(() -> userIds.parallelStream().forEach(userId -> refreshUser(fresh, userId))).join();
+            model = fresh;
+            ready = true;
+        } finally {
+            Set<Long> changed = changedDuringRebuild;
+            changedDuringRebuild = null;
+            // изменение, записанное в старый словарь, есть в индексе лайков, его достаточно пересчитать
+            changed.forEach(this::markDirty);
+            refreshDirty();
+            log.info("rebuilding recommendations done: {} users in {} ms, {} changed during rebuild", userIds.size(),
+                    (System.nanoTime() - start) / 1_000_000, changed.size());
+        }
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public List<Long> getRecommendations(long userId) {
+        if (!dirty.isEmpty()) {
+            refreshDirty();
+        }
+        long[] filmIds = model.recommendations().get(userId);
+        if (filmIds == null) {
+            return List.of();
+        }
+        return Arrays.stream(filmIds).boxed().toList();
+    }
+
+    // Отмечает пользователя: он и все, для кого поменялась схожесть с ним, будут пересчитаны в фоне
+    public void onLikesChanged(long userId) {
+        markChanged(userId);
+        markDirty(userId);
+        scheduleRefresh();
+    }
+
+    // лайки пользователя уже удалены из индекса, поэтому пересчет убирает его из рекомендаций и соседей других
+    public void removeUser(long userId) {
+        onLikesChanged(userId);
+    }
+
+    public void clear() {
+        model = new Model();
+    }
+
+    // отметка ставится до чтения словаря: тогда изменение либо попадает в новый словарь, либо будет пересчитано
+    private void markChanged(long userId) {
+        Set<Long> changed = changedDuringRebuild;
+        if (changed != null) {
+            changed.add(userId);
+        }
+    }
+
+    private void markDirty(long userId) {
+        dirty.put(userId, dirtySequence.incrementAndGet());
+    }
+
+    private void scheduleRefresh() {
+        if (refreshScheduled.compareAndSet(false, true)) {
+            CompletableFuture.runAsync(() -> {
+                refreshScheduled.set(false);
+                refreshDirty();
+            }, delayedPool).exceptionally(e -> {
+                log.error("refreshing recommendations failed", e);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * Пересчитывает отмеченных пользователей, их новых соседей и тех, у кого они были соседями до изменения,
+     * каждого по одному разу. Пользователи, для которых отмеченный только что стал ближе их K-го соседа,
+     * но не входит в их соседи, получат его при следующем полном пересчете.
+     */
+    private void refreshDirty() {
+        refreshLock.lock();
+        try {
+            Map<Long, Long> users = Map.copyOf(dirty);
+            if (users.isEmpty()) {
+                return;
+            }
+
+            Model target = model;
+            Set<Long> affected = new LinkedHashSet<>();
+            for (long userId : users.keySet()) {
+                affected.addAll(target.neighbourOf().getOrDefault(userId, Set.of()));
+                for (Similarity neighbour : refreshUser(target, userId)) {
+                    affected.add(neighbour.userId());
+                }
+            }
+            affected.removeAll(users.keySet());
+            affected.forEach(otherId -> refreshUser(target, otherId));
+
+            users.forEach(dirty::remove);
+            log.debug("refreshing recommendations done: {} changed users, {} affected", users.size(),
+                    affected.size());
+        } finally {
+            refreshLock.unlock();
+        }
+    }
+
+    private List<Similarity> refreshUser(Model target, long userId) {
+        List<Similarity> neighbours = likeIndex.getSimilarUsers(userId).stream()
+                .sorted(BY_SIMILARITY)
+                .limit(neighboursCount)
+                .toList();
+
+        long[] filmIds = recommend(userId, neighbours);
+        if (filmIds.length == 0) {
+            target.recommendations().remove(userId);
+        } else {
+            target.recommendations().put(userId, filmIds);
+        }
+
+        long[] neighbourIds = neighbours.stream().mapToLong(Similarity::userId).toArray();
+        long[] previous = neighbourIds.length == 0
+                ? target.neighbours().remove(userId)
+                : target.neighbours().put(userId, neighbourIds);
+        if (previous != null) {
+            for (long neighbourId : previous) {
+                target.neighbourOf().computeIfPresent(neighbourId, (id, users) -> {
+                    users.remove(userId);
+                    return users.isEmpty() ? null : users;
+                });
+            }
+        }
+        for (long neighbourId : neighbourIds) {
+            target.neighbourOf().computeIfAbsent(neighbourId, id -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+        return neighbours;
+    }
+
+    /**
+     * Оценка фильма - сумма схожести соседей, которым он понравился.
+     * При равной оценке выше фильм с большим числом лайков, затем с меньшим id.
+     */
+    private long[] recommend(long userId, List<Similarity> neighbours) {
+        Map<Long, Double> scores = new HashMap<>();
+        for (Similarity neighbour : neighbours) {
+            for (Long filmId : likeIndex.getFilmIdsLikedOnlyBy(neighbour.userId(), userId)) {
+                scores.merge(filmId, neighbour.jaccard(), Double::sum);
+            }
+        }
+
+        Map<Long, Integer> likes = new HashMap<>();
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<Long, Double>comparingByValue().reversed()
+                        .thenComparing(entry -> likes.computeIfAbsent(entry.getKey(), likeIndex::getLikesCount),
+                                Comparator.reverseOrder())
+                        .thenComparing(Map.Entry::getKey))
+                .limit(recommendationsLimit)
+                .mapToLong(Map.Entry::getKey)
+                .toArray();
+    }
+
+    /**
+     * Рекомендации и соседи каждого пользователя, а также обратный индекс: у кого пользователь в соседях.
+     * Полный пересчет строит новую модель и заменяет ее целиком.
+     */
+    private record Model(Map<Long, long[]> recommendations, Map<Long, long[]> neighbours,
+                         Map<Long, Set<Long>> neighbourOf) {
+
+        Model() {
+            this(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), new ConcurrentHashMap<>());
+        }
+    }
+}
@@ -11,11 +11,15 @@ import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.mapper.UserMapper;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.storage.FilmLikeStorage;
 import ru.yandex.practicum.filmorate.storage.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
 import ru.yandex.practicum.filmorate.storage.UserStorage;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Service
@@ -26,17 +30,32 @@ public class UserService {
     private final FriendshipStorage friendshipStorage;
     private final EventService eventService;
     private final FilmStorage filmStorage;
+    private final FilmLikeStorage filmLikeStorage;
+    private final PopularFilmsLeaderboard leaderboard;
+    private final RecommendationEngine recommendationEngine;
+    private final FilmSuggestTrie suggestTrie;
+    private final FriendTimeline friendTimeline;
 
     public UserService(
             @Qualifier("db") UserStorage userStorage,
             @Qualifier("db") FriendshipStorage friendshipStorage,
             @Qualifier("db") FilmStorage filmStorage,
-            EventService eventService) {
+            @Qualifier("db") FilmLikeStorage filmLikeStorage,
+            EventService eventService,
+            PopularFilmsLeaderboard leaderboard,
+            RecommendationEngine recommendationEngine,
+            FilmSuggestTrie suggestTrie,
+            FriendTimeline friendTimeline) {
 
         this.userStorage = userStorage;
         this.friendshipStorage = friendshipStorage;
         this.eventService = eventService;
         this.filmStorage = filmStorage;
+        this.filmLikeStorage = filmLikeStorage;
+        this.leaderboard = leaderboard;
+        this.recommendationEngine = recommendationEngine;
+        this.suggestTrie = suggestTrie;
+        this.friendTimeline = friendTimeline;
     }
 
     public User createUser(@Valid NewUserRequest newUserRequest) {
@@ -47,8 +66,12 @@ public class UserService {
         return userStorage.save(UserMapper.mapToUser(newUserRequest));
     }
 
-    public List<User> getAllUsers() {
-        return userStorage.getAll();
+    public List<User> getUsersPage(long afterId, int limit) {
+        return userStorage.getPage(afterId, limit);
+    }
+
+    public void exportUsers(Consumer<User> consumer) {
+        userStorage.streamAll(consumer);
     }
 
     public User getUserById(long id) {
@@ -57,6 +80,16 @@ public class UserService {
                         new NotFoundException("не найден пользователь", "не найден пользователь с id = " + id));
     }
 
+    public Set<Long> getExistingUserIds(Collection<Long> ids) {
+        return userStorage.getExistingIds(ids);
+    }
+
+    public void checkUserExists(long id) {
+        if (!userStorage.existsById(id)) {
+            throw new NotFoundException("не найден пользователь", "не найден пользователь с id = " + id);
+        }
+    }
+
     public User updateUser(@Valid UpdateUserRequest updateUserRequest) {
 
         Long userId = updateUserRequest.getId();
@@ -86,7 +119,13 @@ public class UserService {
     }
 
     public int deleteAllUsers() {
-        return userStorage.deleteAll();
+        eventService.flush();
+        int deleted = userStorage.deleteAll();
+        leaderboard.resetLikes();
+        suggestTrie.resetLikes();
+        recommendationEngine.clear();
+        friendTimeline.clear();
+        return deleted;
     }
 
     public void deleteUserById(long userId) {
@@ -94,7 +133,17 @@ public class UserService {
                 .orElseThrow(() ->
                         new NotFoundException("не найден пользователь", "не найден пользователь с id = " + userId));
 
+        // лайки пользователя удаляются вместе с ним, поэтому убираем их и из рейтинга
+        List<Long> likedFilmIds = filmLikeStorage.getLikedFilmIds(userId);
+        // события удаляемого пользователя дописываются сейчас и удалятся вместе с ним
+        eventService.flush(userId);
         userStorage.delete(user);
+        filmLikeStorage.getLikesCounts(likedFilmIds).forEach((filmId, likes) -> {
+            leaderboard.setLikes(filmId, likes);
+            suggestTrie.setLikes(filmId, likes);
+        });
+        recommendationEngine.removeUser(userId);
+        friendTimeline.removeUser(userId);
     }
 
     public List<User> getFriends(long userId) {
@@ -112,7 +161,11 @@ public class UserService {
     }
 
     public List<Film> getRecommendations(long userId) {
-        return filmStorage.getRecommendations(userId);
+        // пока рекомендации не посчитаны в первый раз, они читаются из БД, как поиск и топ
+        if (!recommendationEngine.isReady()) {
+            return filmStorage.getRecommendations(userId);
+        }
+        return filmStorage.getByIds(recommendationEngine.getRecommendations(userId));
     }
 
     public boolean addFriend(long userId, long friendId) {
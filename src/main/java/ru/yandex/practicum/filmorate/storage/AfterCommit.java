@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Обновления структур в памяти (индексов, кэшей, рейтингов), которые должны произойти только вместе с записью в БД.
+ * Внутри транзакции действие выполняется после ее фиксации, а при откате не выполняется совсем;
+ * вне транзакции - сразу.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class AfterCommit {
+
+    public static void run(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+}
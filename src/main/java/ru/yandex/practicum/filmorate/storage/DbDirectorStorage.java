@@ -1,5 +1,7 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.RowMapper;
@@ -9,9 +11,13 @@ import org.springframework.stereotype.Repository;
 import ru.yandex.practicum.filmorate.exceptions.FailedToCreateEntity;
 import ru.yandex.practicum.filmorate.model.Director;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @Slf4j
 @Repository
@@ -32,6 +38,12 @@ public class DbDirectorStorage extends NamedRepository<Director> implements Dire
             FROM DIRECTORS
             WHERE DIRECTOR_ID =:directorId""";
 
+    private static final String FIND_BY_IDS = """
+            SELECT  director_id,
+            		name
+            FROM DIRECTORS
+            WHERE DIRECTOR_ID IN (:directorIds)""";
+
     private static final String INSERT_QUERY = """
             INSERT INTO DIRECTORS (NAME)
             VALUES (:name)""";
@@ -45,8 +57,21 @@ public class DbDirectorStorage extends NamedRepository<Director> implements Dire
             DELETE FROM DIRECTORS
             WHERE director_id = :directorId""";
 
-    public DbDirectorStorage(NamedParameterJdbcTemplate namedTemplate, RowMapper<Director> mapper) {
+    private static final int CACHE_MAX_SIZE = 10_000;
+
+    // режиссеров слишком много, чтобы держать в памяти всю таблицу, поэтому кэшируются отдельные записи;
+    // Director изменяемый, поэтому в кэше лежат копии и наружу тоже отдаются копии
+    private final Cache<Integer, Director> cache = Caffeine.newBuilder()
+            .maximumSize(CACHE_MAX_SIZE)
+            .recordStats()
+            .build();
+
+    private final FilmSearchIndex searchIndex;
+
+    public DbDirectorStorage(NamedParameterJdbcTemplate namedTemplate, RowMapper<Director> mapper,
+                             FilmSearchIndex searchIndex) {
         super(namedTemplate, mapper);
+        this.searchIndex = searchIndex;
     }
 
     @Override
@@ -56,7 +81,8 @@ public class DbDirectorStorage extends NamedRepository<Director> implements Dire
 
     @Override
     public Optional<Director> getDirectorById(int directorId) {
-        return findOne(FIND_ONE_BY_ID, Map.of("directorId", directorId));
+        return Optional.ofNullable(cache.get(directorId, id -> loadById(id).orElse(null)))
+                .map(DbDirectorStorage::copyOf);
     }
 
     @Override
@@ -75,25 +101,70 @@ public class DbDirectorStorage extends NamedRepository<Director> implements Dire
                 log.info("Режиссер {} сохранен с id = {}", director.getName(), id);
             }
         } else {
-            update(UPDATE_QUERY, Map.of("name", director.getName(), "directorId", director.getId()));
+            try {
+                update(UPDATE_QUERY, Map.of("name", director.getName(), "directorId", director.getId()));
+            } finally {
+                cache.invalidate(director.getId());
+            }
         }
+        searchIndex.putDirector(director.getId(), director.getName());
         return director;
     }
 
     @Override
     public void deleteDirector(Director director) {
         delete(DELETE_BY_ID, Map.of("directorId", director.getId()));
+        cache.invalidate(director.getId());
+        searchIndex.removeDirector(director.getId());
     }
 
     @Override
     public void deleteAllDirectors() {
         delete(DELETE_ALL);
+        cache.invalidateAll();
+        searchIndex.clearDirectors();
     }
 
     @Override
-    public List<Director> getById(List<Integer> directorIds) {
-        return this.getAllDirectors().stream()
-                .filter(director -> directorIds.contains(director.getId()))
+    public MultiGetResult<Integer, Director> getByIds(List<Integer> directorIds) {
+        List<Integer> ids = directorIds.stream()
+                .filter(Objects::nonNull)
+                .distinct()
                 .toList();
+
+        Map<Integer, Director> directors = cache.getAll(ids, this::loadByIds);
+
+        List<Director> found = new ArrayList<>(directors.size());
+        List<Integer> missingIds = new ArrayList<>();
+        for (Integer id : ids) {
+            Director director = directors.get(id);
+            if (director == null) {
+                missingIds.add(id);
+            } else {
+                found.add(copyOf(director));
+            }
+        }
+        return new MultiGetResult<>(found, missingIds);
+    }
+
+    Cache<?, ?> getCache() {
+        return cache;
+    }
+
+    private static Director copyOf(Director director) {
+        return new Director(director.getId(), director.getName());
+    }
+
+    private Optional<Director> loadById(int directorId) {
+        return findOne(FIND_ONE_BY_ID, Map.of("directorId", directorId));
+    }
+
+    private Map<Integer, Director> loadByIds(Set<? extends Integer> directorIds) {
+        Map<Integer, Director> directors = new HashMap<>();
+        forEachRow(FIND_BY_IDS, Map.of("directorIds", directorIds), rs -> {
+            Director director = mapper.mapRow(rs, rs.getRow());
+            directors.put(director.getId(), director);
+        });
+        return directors;
     }
 }
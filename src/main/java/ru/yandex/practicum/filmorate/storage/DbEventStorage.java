@@ -5,11 +5,13 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.FailedToCreateEntity;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.storage.mapper.EventRowMapper;
 
 import java.sql.Timestamp;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
@@ -21,7 +23,25 @@ public class DbEventStorage extends NamedRepository<Event> implements EventStora
         INSERT INTO events (event_timestamp, user_id, event, operation, entity_id)
         VALUES (:event_timestamp, :user_id, :event, :operation, :entity_id)""";
 
-    private static final String FIND_EVENTS_BY_USER_ID_QUERY = "SELECT * FROM EVENTS WHERE USER_ID = :userId";
+    // id событий растут в порядке записи, поэтому страница выбирается с конца индекса (user_id, event_id)
+    private static final String FIND_EVENTS_BY_USER_ID_BEFORE_QUERY = """
+        SELECT * FROM (
+            SELECT * FROM events
+            WHERE user_id = :userId AND event_id < :beforeId
+            ORDER BY event_id DESC
+            LIMIT :limit) e
+        ORDER BY event_id""";
+
+    private static final String FIND_BY_IDS_QUERY = """
+        SELECT * FROM events
+        WHERE event_id IN (:eventIds)
+        ORDER BY event_id""";
+
+    private static final String FIND_LAST_EVENTS_BY_USER_IDS_QUERY = """
+        SELECT * FROM events
+        WHERE user_id IN (:userIds) AND event_id < :beforeId
+        ORDER BY event_id DESC
+        LIMIT :limit""";
 
     public DbEventStorage(NamedParameterJdbcTemplate namedTemplate, EventRowMapper mapper) {
         super(namedTemplate, mapper);
@@ -30,16 +50,7 @@ public class DbEventStorage extends NamedRepository<Event> implements EventStora
     @Override
     public Event createEvent(Event event) {
         if (event.getId() == null) {
-            KeyHolder keyHolder = insert(
-                    INSERT_QUERY,
-                    Map.of(
-                            "event_timestamp", Timestamp.from(event.getTimestamp()),
-                            "user_id", event.getUserId(),
-                            "event", event.getEventType().getTitle(),
-                            "operation",event.getOperation().getTitle(),
-                            "entity_id", event.getEntityId()),
-                    new String[]{"event_id"}
-            );
+            KeyHolder keyHolder = insert(INSERT_QUERY, toParams(event), new String[]{"event_id"});
             Long id = keyHolder.getKeyAs(Long.class);
             if (id == null) {
                 throw new FailedToCreateEntity("не удалось создать событие " + event);
@@ -53,7 +64,50 @@ public class DbEventStorage extends NamedRepository<Event> implements EventStora
     }
 
     @Override
-    public List<Event> findEventsByUserID(Long id) {
-        return findMany(FIND_EVENTS_BY_USER_ID_QUERY, Map.of("userId", id));
+    @Transactional
+    public void createEvents(List<Event> events) {
+        KeyHolder keyHolder = batchInsert(INSERT_QUERY, events.stream().map(DbEventStorage::toParams).toList(),
+                new String[]{"event_id"});
+
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != events.size()) {
+            throw new FailedToCreateEntity("не удалось получить id " + events.size() + " событий");
+        }
+        for (int i = 0; i < events.size(); i++) {
+            events.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+        log.debug("Сохранено событий: {}", events.size());
+    }
+
+    @Override
+    public List<Event> getByIds(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        return findMany(FIND_BY_IDS_QUERY, Map.of("eventIds", ids));
+    }
+
+    @Override
+    public List<Event> findLastEventsByUserIds(Collection<Long> userIds, long beforeId, int limit) {
+        if (userIds.isEmpty()) {
+            return List.of();
+        }
+        return findMany(FIND_LAST_EVENTS_BY_USER_IDS_QUERY,
+                Map.of("userIds", userIds, "beforeId", beforeId, "limit", limit));
+    }
+
+    @Override
+    public List<Event> findEventsByUserID(Long id, long beforeId, int limit) {
+        return findMany(FIND_EVENTS_BY_USER_ID_BEFORE_QUERY,
+                Map.of("userId", id, "beforeId", beforeId, "limit", limit));
+    }
+
+    private static Map<String, Object> toParams(Event event) {
+        return Map.of(
+                "event_timestamp", Timestamp.from(event.getTimestamp()),
+                "user_id", event.getUserId(),
+                "event", event.getEventType().getTitle(),
+                "operation", event.getOperation().getTitle(),
+                "entity_id", event.getEntityId());
     }
 }
\ No newline at end of file
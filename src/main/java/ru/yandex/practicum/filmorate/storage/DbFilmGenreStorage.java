@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage;
 
+import com.github.benmanes.caffeine.cache.Cache;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.KeyHolder;
@@ -25,12 +26,6 @@ public class DbFilmGenreStorage extends NamedRepository<FilmGenre> implements Fi
         FROM film_genres
         ORDER BY genre_id""";
 
-    private static final String FIND_BY_ID_QUERY = """
-        SELECT genre_id as "genre_id",
-               genre_name as "genre_name"
-        FROM film_genres
-        WHERE genre_id = :id""";
-
     private static final String INSERT_QUERY = """
         INSERT INTO film_genres (genre_name)
         VALUES (:name)""";
@@ -47,27 +42,27 @@ public class DbFilmGenreStorage extends NamedRepository<FilmGenre> implements Fi
     private static final String DELETE_ALL_QUERY = """
         DELETE FROM film_genres""";
 
+    private final ReferenceTableCache<FilmGenre> cache;
+
     public DbFilmGenreStorage(NamedParameterJdbcTemplate namedTemplate, FilmGenreRowMapper mapper) {
         super(namedTemplate, mapper);
+        this.cache = new ReferenceTableCache<>(this::loadAll, FilmGenre::getId,
+                genre -> new FilmGenre(genre.getId(), genre.getName()));
     }
 
     @Override
     public List<FilmGenre> getAll() {
-        List<FilmGenre> genres = super.getAll(FIND_ALL_QUERY);
-        log.info("genres = {}", genres);
-        return genres;
+        return cache.getAll();
     }
 
     @Override
     public Optional<FilmGenre> getById(Integer genreId) {
-        return findOne(FIND_BY_ID_QUERY, Map.of("id", genreId));
+        return cache.getById(genreId);
     }
 
     @Override
     public List<FilmGenre> getById(List<Integer> ids) {
-        return getAll().stream()
-                .filter(genre -> ids.contains(genre.getId()))
-                .toList();
+        return cache.getByIds(ids);
     }
 
     @Override
@@ -95,17 +90,31 @@ public class DbFilmGenreStorage extends NamedRepository<FilmGenre> implements Fi
             );
         }
 
+        cache.invalidate();
         return genre;
     }
 
     @Override
     public void delete(FilmGenre genre) {
         delete(DELETE_QUERY, Map.of("id", genre.getId()));
+        cache.invalidate();
     }
 
     @Override
     public int deleteAll() {
-        return delete(DELETE_ALL_QUERY);
+        int deleted = delete(DELETE_ALL_QUERY);
+        cache.invalidate();
+        return deleted;
+    }
+
+    Cache<?, ?> getCache() {
+        return cache.getCache();
+    }
+
+    private List<FilmGenre> loadAll() {
+        List<FilmGenre> genres = super.getAll(FIND_ALL_QUERY);
+        log.debug("genres = {}", genres);
+        return genres;
     }
 
 }
@@ -1,97 +1,291 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Repository;
-import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.User;
+import org.springframework.transaction.annotation.Transactional;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.BiConsumer;
 
 @Slf4j
 @Repository
 @Qualifier("db")
-@RequiredArgsConstructor
-public class DbFilmLikeStorage implements FilmLikeStorage {
+public class DbFilmLikeStorage extends NamedRepository<Void> implements FilmLikeStorage {
 
-    private static final String COUNT_QUERY = """
-        SELECT COUNT(*) as "cnt"
-        FROM film_likes
-        WHERE film_id = :filmId AND user_id = :userId""";
+    // вставляет строку, только если лайка еще нет; число измененных строк говорит, был ли лайк
+    private static final String MERGE_QUERY = """
+        MERGE INTO film_likes fl
+        USING (VALUES (CAST(:filmId AS BIGINT), CAST(:userId AS BIGINT))) v (film_id, user_id)
+        ON fl.film_id = v.film_id AND fl.user_id = v.user_id
+        WHEN NOT MATCHED THEN INSERT (film_id, user_id) VALUES (v.film_id, v.user_id)""";
 
-    private static final String INSERT_QUERY = """
-        INSERT INTO film_likes (film_id, user_id)
+    // ставит лайк, если его еще нет, без предварительной проверки: параллельная вставка того же лайка
+    // не приводит к ошибке
+    private static final String UPSERT_QUERY = """
+        MERGE INTO film_likes (film_id, user_id) KEY (film_id, user_id)
         VALUES (:filmId, :userId)""";
 
     private static final String DELETE_QUERY = """
         DELETE FROM film_likes
         WHERE film_id = :filmId AND user_id = :userId""";
 
+    private static final String RECOUNT_LIKES_COUNT_QUERY = """
+        UPDATE films f
+        SET likes_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id)
+        WHERE film_id IN (:filmIds)""";
+
+    private static final String FIND_LIKED_FILM_IDS_BY_USERS_QUERY = """
+        SELECT user_id as "user_id",
+               film_id as "film_id"
+        FROM film_likes
+        WHERE user_id IN (:userIds)""";
+
     private static final String DELETE_ALL_QUERY = """
         DELETE FROM film_likes""";
 
-    protected final NamedParameterJdbcTemplate namedTemplate;
+    private static final String INCREMENT_LIKES_COUNT_QUERY = """
+        UPDATE films
+        SET likes_count = likes_count + 1
+        WHERE film_id = :filmId""";
+
+    private static final String DECREMENT_LIKES_COUNT_QUERY = """
+        UPDATE films
+        SET likes_count = likes_count - 1
+        WHERE film_id = :filmId""";
+
+    private static final String RESET_LIKES_COUNT_QUERY = """
+        UPDATE films
+        SET likes_count = 0
+        WHERE likes_count <> 0""";
+
+    private static final String RECONCILE_LIKES_COUNT_QUERY = """
+        UPDATE films f
+        SET likes_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id)
+        WHERE likes_count <> (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id)""";
+
+    private static final String FIND_FILMS_POPULARITY_QUERY = """
+        SELECT f.film_id as "film_id",
+               EXTRACT(YEAR FROM f.release_date) as "release_year",
+               COUNT(fl.user_id) as "likes"
+        FROM films f
+        LEFT JOIN film_likes fl ON fl.film_id = f.film_id
+        GROUP BY f.film_id, f.release_date""";
+
+    private static final String FIND_FILMS_GENRE_IDS_QUERY = """
+        SELECT film_id as "film_id",
+               genre_id as "genre_id"
+        FROM films_genres_relation""";
+
+    private static final String FIND_LIKES_COUNTS_QUERY = """
+        SELECT film_id as "film_id",
+               likes_count as "likes_count"
+        FROM films
+        WHERE film_id IN (:filmIds)""";
+
+    private static final String FIND_LIKES_COUNT_QUERY = """
+        SELECT likes_count
+        FROM films
+        WHERE film_id = :filmId""";
+
+    private static final String FIND_LIKED_FILM_IDS_QUERY = """
+        SELECT film_id
+        FROM film_likes
+        WHERE user_id = :userId""";
+
+    private static final String FIND_ALL_LIKES_QUERY = """
+        SELECT user_id as "user_id",
+               film_id as "film_id"
+        FROM film_likes
+        ORDER BY user_id, film_id""";
+
+    // размер пакета JDBC и списка IN при массовой обработке лайков
+    private static final int BATCH_SIZE = 1000;
+
+    private final LikeIndex likeIndex;
+
+    public DbFilmLikeStorage(NamedParameterJdbcTemplate namedTemplate, LikeIndex likeIndex) {
+        super(namedTemplate);
+        this.likeIndex = likeIndex;
+    }
+
+    // индекс загружается раньше компонентов, которые его читают при старте
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadLikeIndex() {
+        log.info("loading like index");
+        likeIndex.load(index -> forEachLike(index::add));
+        log.info("loading like index done: {}", likeIndex.getMemoryReport());
+    }
 
     @Override
-    public boolean like(Film film, User user) {
+    @Transactional
+    public OptionalInt like(long filmId, long userId) {
+
+        int inserted;
+        try {
+            inserted = update(MERGE_QUERY, Map.of("filmId", filmId, "userId", userId));
+        } catch (DuplicateKeyException e) {
+            // параллельный запрос успел поставить тот же лайк между проверкой и вставкой в MERGE
+            inserted = 0;
+        }
 
-        if (count(film, user) == 0) {
-            log.info("liking film {} by {}", film.getName(), user.getLogin());
+        if (inserted == 0) {
+            log.info("film {} was already liked by {}", filmId, userId);
+            return OptionalInt.empty();
+        }
 
-            namedTemplate.update(INSERT_QUERY,
-                    Map.of("filmId", film.getId(), "userId", user.getId()));
+        update(INCREMENT_LIKES_COUNT_QUERY, Map.of("filmId", filmId));
+        AfterCommit.run(() -> likeIndex.add(userId, filmId));
 
-            log.info("liking film {} by {} done", film.getName(), user.getLogin());
+        log.info("liking film {} by {} done", filmId, userId);
+        return OptionalInt.of(getLikesCount(filmId));
+    }
 
-            return true;
+    @Override
+    @Transactional
+    public OptionalInt dislike(long filmId, long userId) {
 
-        } else {
+        if (delete(DELETE_QUERY, Map.of("filmId", filmId, "userId", userId)) == 0) {
+            log.info("film {} was not liked by {}, skipping", filmId, userId);
+            return OptionalInt.empty();
+        }
+
+        update(DECREMENT_LIKES_COUNT_QUERY, Map.of("filmId", filmId));
+        AfterCommit.run(() -> likeIndex.remove(userId, filmId));
+
+        log.info("disliking film {} by {} done", filmId, userId);
+        return OptionalInt.of(getLikesCount(filmId));
+    }
 
-            log.info("film {} was already liked by {}", film.getName(), user.getLogin());
-            return false;
+    @Override
+    @Transactional
+    public Map<Long, Integer> applyLikes(List<FilmLike> toAdd, List<FilmLike> toRemove) {
+        applyInBatches(DELETE_QUERY, toRemove);
+        applyInBatches(UPSERT_QUERY, toAdd);
+
+        // сколько строк на самом деле изменилось, MERGE не сообщает, поэтому число лайков считается заново
+        // и читается в той же транзакции; строки фильмов блокируются по порядку id
+        Set<Long> filmIds = new TreeSet<>();
+        toAdd.forEach(like -> filmIds.add(like.filmId()));
+        toRemove.forEach(like -> filmIds.add(like.filmId()));
+        List<Long> ids = List.copyOf(filmIds);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            update(RECOUNT_LIKES_COUNT_QUERY, Map.of("filmIds", chunk));
         }
+        Map<Long, Integer> likes = getLikesCounts(ids);
 
+        // изменения индекса идемпотентны, поэтому применяются ко всем лайкам, даже если лайк уже был
+        AfterCommit.run(() -> {
+            toRemove.forEach(like -> likeIndex.remove(like.userId(), like.filmId()));
+            toAdd.forEach(like -> likeIndex.add(like.userId(), like.filmId()));
+        });
+        log.info("applying likes done: {} added, {} removed, {} films recounted",
+                toAdd.size(), toRemove.size(), filmIds.size());
+        return likes;
     }
 
     @Override
-    public boolean dislike(Film film, User user) {
+    @Transactional
+    public int deleteAll() {
+        int deleted = delete(DELETE_ALL_QUERY);
+        update(RESET_LIKES_COUNT_QUERY, Map.of());
+        AfterCommit.run(likeIndex::clear);
+        return deleted;
+    }
 
-        if (count(film, user) > 0) {
+    @Override
+    public int reconcileLikesCount() {
+        int repaired = update(RECONCILE_LIKES_COUNT_QUERY, Map.of());
+        if (repaired > 0) {
+            log.warn("likes count repaired for {} films", repaired);
+        }
+        return repaired;
+    }
 
-            log.info("disliking film {} by {}", film.getName(), user.getLogin());
+    @Override
+    public List<FilmPopularity> getFilmsPopularity() {
+        Map<Long, FilmPopularity> films = new LinkedHashMap<>();
 
-            namedTemplate.update(DELETE_QUERY,
-                    Map.of("filmId", film.getId(), "userId", user.getId()));
+        forEachRow(FIND_FILMS_POPULARITY_QUERY, Map.of(), rs -> {
+            long filmId = rs.getLong("film_id");
+            films.put(filmId, new FilmPopularity(filmId, rs.getInt("release_year"), new HashSet<>(),
+                    rs.getInt("likes")));
+        });
 
-            log.info("disliking film {} by {} done", film.getName(), user.getLogin());
+        forEachRow(FIND_FILMS_GENRE_IDS_QUERY, Map.of(), rs -> {
+            FilmPopularity film = films.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.getGenreIds().add(rs.getInt("genre_id"));
+            }
+        });
 
-            return true;
-        } else {
+        return new ArrayList<>(films.values());
+    }
 
-            log.info("film {} was not liked by {}, skipping", film.getName(), user.getLogin());
-            return false;
+    @Override
+    public Map<Long, Integer> getLikesCounts(Collection<Long> filmIds) {
+        Map<Long, Integer> likes = new HashMap<>();
+        List<Long> ids = List.copyOf(filmIds);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            forEachRow(FIND_LIKES_COUNTS_QUERY, Map.of("filmIds", chunk), rs ->
+                    likes.put(rs.getLong("film_id"), rs.getInt("likes_count")));
         }
+        return likes;
+    }
 
+    private int getLikesCount(long filmId) {
+        return queryForObject(FIND_LIKES_COUNT_QUERY, Map.of("filmId", filmId), Integer.class);
     }
 
     @Override
-    public int deleteAll() {
-        return namedTemplate.update(DELETE_ALL_QUERY, Map.of());
+    public List<Long> getLikedFilmIds(long userId) {
+        return queryForList(FIND_LIKED_FILM_IDS_QUERY, Map.of("userId", userId), Long.class);
     }
 
-    private int count(Film film, User user) {
-        try {
-            Integer result = namedTemplate.queryForObject(COUNT_QUERY,
-                    Map.of("filmId", film.getId(), "userId", user.getId()),
-                    Integer.class);
+    @Override
+    public Map<Long, Set<Long>> getLikedFilmIds(Collection<Long> userIds) {
+        Map<Long, Set<Long>> likedFilmIds = new HashMap<>();
+        List<Long> ids = List.copyOf(userIds);
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            forEachRow(FIND_LIKED_FILM_IDS_BY_USERS_QUERY, Map.of("userIds", chunk), rs ->
+                    likedFilmIds.computeIfAbsent(rs.getLong("user_id"), id -> new HashSet<>())
+                            .add(rs.getLong("film_id")));
+        }
+        return likedFilmIds;
+    }
 
-            return result == null ? 0 : result;
+    @Override
+    public void forEachLike(BiConsumer<Long, Long> consumer) {
+        forEachRow(FIND_ALL_LIKES_QUERY, Map.of(),
+                rs -> consumer.accept(rs.getLong("user_id"), rs.getLong("film_id")));
+    }
 
-        } catch (EmptyResultDataAccessException ignored) {
-            return 0;
+    private void applyInBatches(String query, List<FilmLike> likes) {
+        for (int from = 0; from < likes.size(); from += BATCH_SIZE) {
+            batchUpdate(query, likes.subList(from, Math.min(from + BATCH_SIZE, likes.size())).stream()
+                    .map(like -> Map.<String, Object>of("filmId", like.filmId(), "userId", like.userId()))
+                    .toList());
         }
     }
 }
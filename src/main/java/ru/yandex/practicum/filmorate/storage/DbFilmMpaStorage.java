@@ -1,6 +1,7 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
+import com.github.benmanes.caffeine.cache.Cache;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.KeyHolder;
@@ -24,12 +25,6 @@ public class DbFilmMpaStorage extends NamedRepository<FilmMpa> implements FilmMp
         FROM film_mpa
         ORDER BY mpa_id""";
 
-    private static final String FIND_BY_ID_QUERY = """
-        SELECT mpa_id as "mpa_id",
-               mpa_name as "mpa_name"
-        FROM film_mpa
-        WHERE mpa_id = :id""";
-
     private static final String INSERT_QUERY = """
         INSERT INTO film_mpa(mpa_name)
         VALUES (:name)""";
@@ -46,18 +41,22 @@ public class DbFilmMpaStorage extends NamedRepository<FilmMpa> implements FilmMp
     private static final String DELETE_ALL_QUERY = """
         DELETE FROM film_mpa""";
 
+    private final ReferenceTableCache<FilmMpa> cache;
+
     public DbFilmMpaStorage(NamedParameterJdbcTemplate namedTemplate, FilmMpaRowMapper mapper) {
         super(namedTemplate, mapper);
+        this.cache = new ReferenceTableCache<>(() -> super.getAll(FIND_ALL_QUERY), FilmMpa::getId,
+                mpa -> new FilmMpa(mpa.getId(), mpa.getName()));
     }
 
     @Override
     public List<FilmMpa> getAll() {
-        return super.getAll(FIND_ALL_QUERY);
+        return cache.getAll();
     }
 
     @Override
     public Optional<FilmMpa> getById(Integer filmId) {
-        return findOne(FIND_BY_ID_QUERY, Map.of("id", filmId));
+        return cache.getById(filmId);
     }
 
     @Override
@@ -85,16 +84,24 @@ public class DbFilmMpaStorage extends NamedRepository<FilmMpa> implements FilmMp
             );
         }
 
+        cache.invalidate();
         return mpa;
     }
 
     @Override
     public void delete(FilmMpa mpa) {
         delete(DELETE_QUERY, Map.of("id", mpa.getId()));
+        cache.invalidate();
     }
 
     @Override
     public int deleteAll() {
-        return delete(DELETE_ALL_QUERY);
+        int deleted = delete(DELETE_ALL_QUERY);
+        cache.invalidate();
+        return deleted;
+    }
+
+    Cache<?, ?> getCache() {
+        return cache.getCache();
     }
 }
@@ -2,27 +2,43 @@ package ru.yandex.practicum.filmorate.storage;
 
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Qualifier;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.FailedToCreateEntity;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
 import ru.yandex.practicum.filmorate.storage.mapper.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.storage.mapper.FilmGenreRowMapper;
 import ru.yandex.practicum.filmorate.storage.mapper.FilmRowMapper;
 
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 @Slf4j
 @Repository
 @Qualifier("db")
 public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage {
 
+    private static final int EXPORT_CHUNK_SIZE = 500;
+    private static final int IN_LIST_SIZE = 1000;
+
     private static final String FIND_ALL_QUERY = """
             SELECT f.film_id as "film_id",
                    f.film_name as "film_name",
@@ -31,12 +47,25 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                    f.duration as "duration",
                    fr.mpa_id as "mpa_id",
                    fr.mpa_name as "mpa_name",
-                   COUNT(DISTINCT fl.user_id) as "rate"
+                   f.likes_count as "likes_count"
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC""";
+            ORDER BY f.likes_count DESC, f.film_id""";
+
+    private static final String FIND_PAGE_QUERY = """
+            SELECT f.film_id as "film_id",
+                   f.film_name as "film_name",
+                   f.description as "description",
+                   f.release_date as "release_date",
+                   f.duration as "duration",
+                   fr.mpa_id as "mpa_id",
+                   fr.mpa_name as "mpa_name",
+                   f.likes_count as "likes_count"
+            FROM films f
+            INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
+            WHERE f.film_id > :afterId
+            ORDER BY f.film_id
+            LIMIT :limit""";
 
     private static final String FIND_TOP_QUERY = """
             SELECT f.film_id as "film_id",
@@ -46,12 +75,10 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                    f.duration as "duration",
                    fr.mpa_id as "mpa_id",
                    fr.mpa_name as "mpa_name",
-                   COUNT(DISTINCT fl.user_id) as "rate"
+                   f.likes_count as "likes_count"
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC
+            ORDER BY f.likes_count DESC, f.film_id
             LIMIT :count""";
 
     private static final String FIND_RECOMMENDATIONS_QUERY = """
@@ -62,10 +89,9 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                    f.duration AS "duration",
                    fr.mpa_id AS "mpa_id",
                    fr.mpa_name AS "mpa_name",
-                   COUNT(DISTINCT fl.user_id) AS "rate"
+                   f.likes_count AS "likes_count"
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
             WHERE f.film_id IN (
                 SELECT film_id
                 FROM film_likes fl
@@ -85,8 +111,7 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                 FROM film_likes fl
                 WHERE user_id = :userId
             )
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC
+            ORDER BY f.likes_count DESC, f.film_id
             """;
 
     private static final String FIND_COMMON_FILMS = """
@@ -97,18 +122,16 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                    f.duration as "duration",
                    fr.mpa_id as "mpa_id",
                    fr.mpa_name as "mpa_name",
-                   COUNT(DISTINCT fl.user_id) as "rate"
+                   f.likes_count as "likes_count"
             FROM films f
             LEFT JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
             WHERE f.film_id IN (
                 SELECT fl1.film_id
                 FROM film_likes fl1
                 INNER JOIN film_likes fl2 ON fl1.film_id = fl2.film_id
                 WHERE fl1.user_id = :userId AND fl2.user_id = :friendId
             )
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC
+            ORDER BY f.likes_count DESC, f.film_id
             """;
 
     private static final String FIND_TOP_YEAR = """
@@ -119,13 +142,11 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                     f.duration as duration,
                     fr.mpa_id as mpa_id,
                     fr.mpa_name as mpa_name,
-                    COUNT(DISTINCT fl.user_id) as rate
+                    f.likes_count as likes_count
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
-            WHERE EXTRACT(YEAR FROM f.release_date) = :year
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC
+            WHERE f.release_date >= :yearStart AND f.release_date < :nextYearStart
+            ORDER BY f.likes_count DESC, f.film_id
             LIMIT :count""";
 
     private static final String FIND_TOP_GENRE = """
@@ -136,15 +157,13 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                     f.duration as duration,
                     fr.mpa_id as mpa_id,
                     fr.mpa_name as mpa_name,
-                    COUNT(DISTINCT fl.user_id) as rate
+                    f.likes_count as likes_count
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
             WHERE f.film_id IN (
                 SELECT FILM_ID FROM FILMS_GENRES_RELATION fgr WHERE GENRE_ID = :genre_id
                 )
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC
+            ORDER BY f.likes_count DESC, f.film_id
             LIMIT :count""";
 
 
@@ -156,18 +175,46 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                     f.duration as duration,
                     fr.mpa_id as mpa_id,
                     fr.mpa_name as mpa_name,
-                    COUNT(DISTINCT fl.user_id) as rate
+                    f.likes_count as likes_count
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
-            WHERE EXTRACT(YEAR FROM f.release_date) = :year
+            WHERE f.release_date >= :yearStart AND f.release_date < :nextYearStart
             AND f.film_id IN (
                 SELECT FILM_ID FROM FILMS_GENRES_RELATION fgr WHERE GENRE_ID = :genre_id
                 )
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC
+            ORDER BY f.likes_count DESC, f.film_id
             LIMIT :count""";
 
+    // страница топа после фильма с рейтингом (afterLikes, afterFilmId) - в том же порядке, что и рейтинг в памяти
+    private static final String FIND_TOP_AFTER_QUERY = """
+            SELECT f.film_id as "film_id",
+                   f.film_name as "film_name",
+                   f.description as "description",
+                   f.release_date as "release_date",
+                   f.duration as "duration",
+                   fr.mpa_id as "mpa_id",
+                   fr.mpa_name as "mpa_name",
+                   f.likes_count as "likes_count"
+            FROM films f
+            INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
+            WHERE (f.likes_count < :afterLikes OR (f.likes_count = :afterLikes AND f.film_id > :afterFilmId))%s
+            ORDER BY f.likes_count DESC, f.film_id
+            LIMIT :count""";
+
+    private static final String TOP_YEAR_CONDITION = """
+
+              AND f.release_date >= :yearStart AND f.release_date < :nextYearStart""";
+
+    private static final String TOP_GENRE_CONDITION = """
+
+              AND f.film_id IN (SELECT film_id FROM films_genres_relation WHERE genre_id = :genre_id)""";
+
+    private static final String EXISTS_QUERY = """
+        SELECT EXISTS (SELECT 1 FROM films WHERE film_id = :filmId)""";
+
+    private static final String FIND_EXISTING_IDS_QUERY = """
+        SELECT film_id FROM films WHERE film_id IN (:filmIds)""";
+
     private static final String FIND_BY_ID_QUERY = """
         SELECT f.film_id as "film_id",
                f.film_name as "film_name",
@@ -176,20 +223,40 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                f.duration as "duration",
                fr.mpa_id as "mpa_id",
                fr.mpa_name as "mpa_name",
-               COUNT(DISTINCT fl.user_id) as "rate"
+               f.likes_count as "likes_count"
+        FROM films f
+        INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
+        WHERE f.film_id = :filmId""";
+
+    private static final String FIND_BY_IDS_QUERY = """
+        SELECT f.film_id as "film_id",
+               f.film_name as "film_name",
+               f.description as "description",
+               f.release_date as "release_date",
+               f.duration as "duration",
+               fr.mpa_id as "mpa_id",
+               fr.mpa_name as "mpa_name",
+               f.likes_count as "likes_count"
         FROM films f
         INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-        LEFT JOIN film_likes fl ON fl.film_id = f.film_id
-        WHERE f.film_id = :filmId
-        GROUP BY f.film_id, fr.mpa_id""";
+        WHERE f.film_id IN (:filmIds)""";
 
-    private static final String FIND_FILM_GENRES_QUERY = """
-        SELECT g.genre_id as "id",
-               g.genre_name as "name"
+    private static final String FIND_FILMS_GENRES_QUERY = """
+        SELECT r.film_id as "film_id",
+               g.genre_id as "genre_id",
+               g.genre_name as "genre_name"
         FROM film_genres g
         INNER JOIN films_genres_relation r ON g.genre_id = r.genre_id
-        WHERE r.film_id = :filmId
-        ORDER BY g.genre_id""";
+        WHERE r.film_id IN (:filmIds)
+        ORDER BY r.film_id, g.genre_id""";
+
+    private static final String FIND_ALL_FILMS_GENRES_QUERY = """
+        SELECT r.film_id as "film_id",
+               g.genre_id as "genre_id",
+               g.genre_name as "genre_name"
+        FROM film_genres g
+        INNER JOIN films_genres_relation r ON g.genre_id = r.genre_id
+        ORDER BY r.film_id, g.genre_id""";
 
     private static final String FIND_FILMS_BY_TITLE_QUERY = """
         SELECT f.film_id as "film_id",
@@ -199,13 +266,12 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                 f.duration as "duration",
                 fr.mpa_id as "mpa_id",
                 fr.mpa_name as "mpa_name",
-                COUNT(DISTINCT fl.user_id) as "rate"
+                f.likes_count as "likes_count"
          FROM films AS f
-         LEFT OUTER JOIN film_likes AS fl ON fl.film_id = f.film_id
          LEFT OUTER JOIN film_mpa AS fr ON f.mpa_id = fr.mpa_id
          WHERE LOWER(f.film_name) LIKE :name
-         GROUP BY f.film_id, fr.mpa_id
-         ORDER BY COUNT(DISTINCT fl.user_id) DESC""";
+         ORDER BY f.likes_count DESC, f.film_id
+         LIMIT :limit""";
 
     private static final String FIND_FILMS_BY_DIRECTOR_QUERY = """
         SELECT f.film_id as "film_id",
@@ -215,15 +281,17 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                 f.duration as "duration",
                 fr.mpa_id as "mpa_id",
                 fr.mpa_name as "mpa_name",
-                COUNT(DISTINCT fl.user_id) as "rate"
+                f.likes_count as "likes_count"
          FROM films AS f
-         LEFT OUTER JOIN film_likes AS fl ON fl.film_id = f.film_id
          LEFT OUTER JOIN film_mpa AS fr ON f.mpa_id = fr.mpa_id
-         LEFT OUTER JOIN films_directors AS fd ON f.film_id = fd.film_id
-         LEFT OUTER JOIN directors AS d ON fd.director_id = d.director_id
-         WHERE LOWER(d.name) LIKE :name
-         GROUP BY f.film_id, fr.mpa_id
-         ORDER BY COUNT(DISTINCT fl.user_id) DESC""";
+         WHERE f.film_id IN (
+             SELECT fd.film_id
+             FROM films_directors AS fd
+             INNER JOIN directors AS d ON fd.director_id = d.director_id
+             WHERE LOWER(d.name) LIKE :name
+         )
+         ORDER BY f.likes_count DESC, f.film_id
+         LIMIT :limit""";
 
     private static final String FIND_FILMS_BY_FILM_AND_DIRECTOR_QUERY = """
          SELECT f.film_id as "film_id",
@@ -233,22 +301,35 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                 f.duration as "duration",
                 fr.mpa_id as "mpa_id",
                 fr.mpa_name as "mpa_name",
-                COUNT(DISTINCT fl.user_id) as "rate"
+                f.likes_count as "likes_count"
          FROM films AS f
-         LEFT OUTER JOIN film_likes AS fl ON fl.film_id = f.film_id
          LEFT OUTER JOIN film_mpa AS fr ON f.mpa_id = fr.mpa_id
-         LEFT OUTER JOIN films_directors AS fd ON f.film_id = fd.film_id
-         LEFT OUTER JOIN directors AS d ON fd.director_id = d.director_id
-         WHERE LOWER(d.name) LIKE :name OR LOWER(f.film_name) LIKE :name
-         GROUP BY f.film_id, fr.mpa_id
-         ORDER BY COUNT(DISTINCT fl.user_id) DESC""";
-
-    private static final String FIND_FILM_DIRECTORS_QUERY = """
-        SELECT d.director_id as "director_id",
+         WHERE LOWER(f.film_name) LIKE :name
+            OR f.film_id IN (
+                SELECT fd.film_id
+                FROM films_directors AS fd
+                INNER JOIN directors AS d ON fd.director_id = d.director_id
+                WHERE LOWER(d.name) LIKE :name
+            )
+         ORDER BY f.likes_count DESC, f.film_id
+         LIMIT :limit""";
+
+    private static final String FIND_FILMS_DIRECTORS_QUERY = """
+        SELECT fd.film_id as "film_id",
+               d.director_id as "director_id",
                d.name as "name"
         FROM directors d
         INNER JOIN films_directors fd ON fd.director_id = d.director_id
-        WHERE fd.film_id = :filmId""";
+        WHERE fd.film_id IN (:filmIds)
+        ORDER BY fd.film_id, d.director_id""";
+
+    private static final String FIND_ALL_FILMS_DIRECTORS_WITH_NAMES_QUERY = """
+        SELECT fd.film_id as "film_id",
+               d.director_id as "director_id",
+               d.name as "name"
+        FROM directors d
+        INNER JOIN films_directors fd ON fd.director_id = d.director_id
+        ORDER BY fd.film_id, d.director_id""";
 
     private static final String INSERT_QUERY = """
         INSERT INTO films(film_name, description, release_date, duration, mpa_id)
@@ -270,13 +351,26 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
     private static final String DELETE_ALL_QUERY = """
         DELETE FROM films""";
 
+    private static final String FIND_ALL_TITLES_QUERY = """
+        SELECT film_id, film_name
+        FROM films""";
+
+    private static final String FIND_ALL_DIRECTOR_NAMES_QUERY = """
+        SELECT director_id, name
+        FROM directors""";
+
+    private static final String FIND_ALL_FILMS_DIRECTORS_QUERY = """
+        SELECT film_id, director_id
+        FROM films_directors""";
+
     private static final String INSERT_FILM_GENRE_REL_QUERY = """
         INSERT INTO films_genres_relation (film_id, genre_id)
         VALUES (:filmId, :genreId)""";
 
     private static final String DELETE_FILM_GENRE_REL_QUERY = """
         DELETE FROM films_genres_relation
-        WHERE film_id = :filmId""";
+        WHERE film_id = :filmId
+          AND genre_id IN (:genreIds)""";
 
     private static final String INSERT_FILM_DIRECTORS_QUERY = """
         INSERT INTO films_directors (film_id, director_id)
@@ -284,7 +378,8 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
 
     private static final String DELETE_FILM_DIRECTORS_QUERY = """
         DELETE FROM films_directors
-        WHERE film_id = :filmId""";
+        WHERE film_id = :filmId
+          AND director_id IN (:directorIds)""";
 
     private static final String SELECT_SORTED_DIRECTOR_FILM_BY_RATE = """
              SELECT f.film_id as film_id,
@@ -294,16 +389,14 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
             		f.duration as duration,
             		fr.mpa_id as mpa_id,
             		fr.mpa_name as mpa_name,
-            		COUNT(DISTINCT fl.user_id) as "rate"
+            		f.likes_count as "likes_count"
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
             WHERE f.FILM_ID IN (
             	SELECT fd.FILM_ID FROM FILMS_DIRECTORS fd
             	WHERE fd.DIRECTOR_ID = :directorId
             )
-            GROUP BY f.film_id, fr.mpa_id
-            ORDER BY COUNT(DISTINCT fl.user_id) DESC""";
+            ORDER BY f.likes_count DESC, f.film_id""";
 
     private static final String SELECT_SORTED_DIRECTOR_FILM_BY_YEAR = """
              SELECT f.film_id as film_id,
@@ -313,27 +406,73 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
             		f.duration as duration,
             		fr.mpa_id as mpa_id,
             		fr.mpa_name as mpa_name,
-            		count(fl.film_id) as "rate"
+            		f.likes_count as "likes_count"
             FROM films f
             INNER JOIN film_mpa fr ON f.mpa_id = fr.mpa_id
-            LEFT JOIN film_likes fl ON fl.film_id = f.film_id
             WHERE f.FILM_ID IN (
             	SELECT fd.FILM_ID FROM FILMS_DIRECTORS fd
             	WHERE fd.DIRECTOR_ID = :directorId
             )
-            GROUP BY f.film_id, fr.mpa_id
             ORDER BY EXTRACT(YEAR FROM f.release_date) ASC;""";
 
     private final DirectorRowMapper directorRowMapper;
+    private final FilmGenreRowMapper genreRowMapper;
+    private final LikeIndex likeIndex;
+    private final FilmSearchIndex searchIndex;
 
-    public DbFilmStorage(NamedParameterJdbcTemplate namedTemplate, FilmRowMapper mapper, DirectorRowMapper directorRowMapper) {
+    public DbFilmStorage(NamedParameterJdbcTemplate namedTemplate, FilmRowMapper mapper,
+                         DirectorRowMapper directorRowMapper, FilmGenreRowMapper genreRowMapper,
+                         LikeIndex likeIndex, FilmSearchIndex searchIndex) {
         super(namedTemplate, mapper);
         this.directorRowMapper = directorRowMapper;
+        this.genreRowMapper = genreRowMapper;
+        this.likeIndex = likeIndex;
+        this.searchIndex = searchIndex;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void loadSearchIndex() {
+        log.info("loading search index");
+        searchIndex.load(index -> {
+            forEachRow(FIND_ALL_TITLES_QUERY, Map.of(), rs ->
+                    index.putFilm(rs.getLong("film_id"), rs.getString("film_name"), null));
+            forEachRow(FIND_ALL_DIRECTOR_NAMES_QUERY, Map.of(), rs ->
+                    index.putDirector(rs.getInt("director_id"), rs.getString("name")));
+            forEachRow(FIND_ALL_FILMS_DIRECTORS_QUERY, Map.of(), rs ->
+                    index.addFilmDirector(rs.getLong("film_id"), rs.getInt("director_id")));
+        });
+        log.info("loading search index done");
     }
 
     @Override
     public List<Film> getAll() {
         List<Film> films = getAll(FIND_ALL_QUERY);
+        // нужны связи всех фильмов, поэтому они читаются целиком, без списка id
+        return fillFilmsGenresAndDirectors(films, FIND_ALL_FILMS_GENRES_QUERY,
+                FIND_ALL_FILMS_DIRECTORS_WITH_NAMES_QUERY, Map.of());
+    }
+
+    /**
+     * Фильмы читаются постранично по id пачками по EXPORT_CHUNK_SIZE, и к каждой пачке отдельно подгружаются
+     * жанры и режиссеры. Соединение занято только на время запроса, а в памяти одновременно находится
+     * не больше одной пачки.
+     */
+    @Override
+    public void streamAll(Consumer<Film> consumer) {
+        long afterId = 0;
+        List<Film> chunk;
+        do {
+            chunk = getPage(afterId, EXPORT_CHUNK_SIZE);
+            chunk.forEach(consumer);
+            if (!chunk.isEmpty()) {
+                afterId = chunk.getLast().getId();
+            }
+        } while (chunk.size() == EXPORT_CHUNK_SIZE);
+    }
+
+    @Override
+    public List<Film> getPage(long afterId, int limit) {
+        List<Film> films = findMany(FIND_PAGE_QUERY, Map.of("afterId", afterId, "limit", limit));
         return fillFilmsGenresAndDirectors(films);
     }
 
@@ -365,13 +504,21 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
 
     @Override
     public List<Film> getCommonFilms(Long userId, Long friendId) {
-        List<Film> films = findMany(FIND_COMMON_FILMS, Map.of("userId", userId, "friendId", friendId));
-        return fillFilmsGenresAndDirectors(films);
+        if (!likeIndex.isReady()) {
+            List<Film> films = findMany(FIND_COMMON_FILMS, Map.of("userId", userId, "friendId", friendId));
+            return fillFilmsGenresAndDirectors(films);
+        }
+
+        List<Film> films = new ArrayList<>(getByIds(likeIndex.getCommonFilmIds(userId, friendId)));
+        films.sort(Comparator.comparingInt(Film::getRate).reversed().thenComparingLong(Film::getId));
+        return films;
     }
 
     @Override
     public List<Film> getPopularFilmsByYear(int count, int year) {
-        List<Film> films = findMany(FIND_TOP_YEAR, Map.of("count", count, "year", year));
+        List<Film> films = findMany(FIND_TOP_YEAR, Map.of("count", count,
+                "yearStart", LocalDate.of(year, 1, 1),
+                "nextYearStart", LocalDate.of(year + 1, 1, 1)));
         return fillFilmsGenresAndDirectors(films);
     }
 
@@ -384,11 +531,85 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
     @Override
     public List<Film> getPopularFilmsByYearGenre(int count, int year, int genre) {
         List<Film> films = findMany(FIND_TOP_YEAR_GENRE, Map.of("count", count,
-                "year", year,
+                "yearStart", LocalDate.of(year, 1, 1),
+                "nextYearStart", LocalDate.of(year + 1, 1, 1),
                 "genre_id", genre));
         return fillFilmsGenresAndDirectors(films);
     }
 
+    @Override
+    public List<Film> getPopularFilmsAfter(int count, Integer year, Integer genre, int afterLikes, long afterFilmId) {
+        Map<String, Object> params = new HashMap<>(Map.of("count", count,
+                "afterLikes", afterLikes, "afterFilmId", afterFilmId));
+        String conditions = "";
+        if (year != null) {
+            conditions += TOP_YEAR_CONDITION;
+            params.put("yearStart", LocalDate.of(year, 1, 1));
+            params.put("nextYearStart", LocalDate.of(year + 1, 1, 1));
+        }
+        if (genre != null) {
+            conditions += TOP_GENRE_CONDITION;
+            params.put("genre_id", genre);
+        }
+        List<Film> films = findMany(FIND_TOP_AFTER_QUERY.formatted(conditions), params);
+        return fillFilmsGenresAndDirectors(films);
+    }
+
+    @Override
+    @Transactional
+    public List<Film> saveAll(List<Film> films) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        KeyHolder keyHolder = batchInsert(INSERT_QUERY, films.stream().map(DbFilmStorage::toInsertParams).toList(),
+                new String[]{"film_id"});
+        List<Map<String, Object>> keys = keyHolder.getKeyList();
+        if (keys.size() != films.size()) {
+            throw new FailedToCreateEntity("не удалось получить id " + films.size() + " фильмов");
+        }
+        for (int i = 0; i < films.size(); i++) {
+            films.get(i).setId(((Number) keys.get(i).values().iterator().next()).longValue());
+        }
+
+        List<Map<String, Object>> genres = films.stream()
+                .filter(film -> film.getGenres() != null)
+                .flatMap(film -> film.getGenres().stream().map(genre -> createFilmGenreMap(film, genre)))
+                .toList();
+        if (!genres.isEmpty()) {
+            batchUpdate(INSERT_FILM_GENRE_REL_QUERY, genres);
+        }
+
+        List<Map<String, Object>> directors = films.stream()
+                .filter(film -> film.getDirectors() != null)
+                .flatMap(film -> film.getDirectors().stream().map(director -> createDirectorMap(film, director)))
+                .toList();
+        if (!directors.isEmpty()) {
+            batchUpdate(INSERT_FILM_DIRECTORS_QUERY, directors);
+        }
+
+        films.forEach(this::putToSearchIndex);
+
+        log.debug("Сохранено фильмов: {}", films.size());
+        return films;
+    }
+
+    @Override
+    public boolean existsById(long filmId) {
+        return Boolean.TRUE.equals(queryForObject(EXISTS_QUERY, Map.of("filmId", filmId), Boolean.class));
+    }
+
+    @Override
+    public Set<Long> getExistingIds(Collection<Long> filmIds) {
+        Set<Long> existing = new HashSet<>();
+        List<Long> ids = List.copyOf(filmIds);
+        for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()));
+            existing.addAll(queryForList(FIND_EXISTING_IDS_QUERY, Map.of("filmIds", chunk), Long.class));
+        }
+        return existing;
+    }
+
     @Override
     public Optional<Film> getById(Long filmId) {
         Optional<Film> film = findOne(FIND_BY_ID_QUERY, Map.of("filmId", filmId));
@@ -397,29 +618,78 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
     }
 
     @Override
-    public Film save(Film film) {
+    public List<Film> getByIds(List<Long> filmIds) {
+        if (filmIds.isEmpty()) {
+            return List.of();
+        }
 
-        if (film.getId() == null) {
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (int from = 0; from < filmIds.size(); from += IN_LIST_SIZE) {
+            List<Long> chunk = filmIds.subList(from, Math.min(from + IN_LIST_SIZE, filmIds.size()));
+            findMany(FIND_BY_IDS_QUERY, Map.of("filmIds", chunk))
+                    .forEach(film -> filmsById.put(film.getId(), film));
+        }
 
-            KeyHolder keyHolder = insert(
-                    INSERT_QUERY,
-                    Map.of(
-                        "name", film.getName(),
-                        "description", film.getDescription(),
-                        "releaseDate", film.getReleaseDate(),
-                        "duration", film.getDuration(),
-                        "mpaId", film.getMpa().getId()),
-                    new String[]{"film_id"}
-            );
-            Long id = keyHolder.getKeyAs(Long.class);
-            if (id == null) {
-                throw new FailedToCreateEntity("не удалось создать фильм " + film);
-            } else {
-                film.setId(id);
-                log.debug("Фильм {} сохранен с id = {}", film.getName(), film.getId());
-            }
+        // сохраняем порядок, в котором запрошены id
+        List<Film> films = filmIds.stream()
+                .map(filmsById::get)
+                .filter(Objects::nonNull)
+                .toList();
+
+        return fillFilmsGenresAndDirectors(films);
+    }
+
+    @Override
+    @Transactional
+    public Film save(Film film) {
+
+        if (film.getId() != null) {
+            Film current = getById(film.getId())
+                    .orElseThrow(() -> new NotFoundException("не найден фильм",
+                            "не найден фильм с id = " + film.getId()));
+            return update(current, film);
+        }
 
+        KeyHolder keyHolder = insert(
+                INSERT_QUERY,
+                Map.of(
+                    "name", film.getName(),
+                    "description", film.getDescription(),
+                    "releaseDate", film.getReleaseDate(),
+                    "duration", film.getDuration(),
+                    "mpaId", film.getMpa().getId()),
+                new String[]{"film_id"}
+        );
+        Long id = keyHolder.getKeyAs(Long.class);
+        if (id == null) {
+            throw new FailedToCreateEntity("не удалось создать фильм " + film);
         } else {
+            film.setId(id);
+            log.debug("Фильм {} сохранен с id = {}", film.getName(), film.getId());
+        }
+
+        if (film.getGenres() != null) {
+            insertGenres(film, film.getGenres().stream().map(FilmGenre::getId).collect(Collectors.toSet()));
+        }
+
+        if (film.getDirectors() != null) {
+            insertDirectors(film, film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet()));
+        }
+
+        putToSearchIndex(film);
+
+        return film;
+    }
+
+    @Override
+    @Transactional
+    public Film update(Film current, Film film) {
+
+        if (!Objects.equals(current.getName(), film.getName())
+                || !Objects.equals(current.getDescription(), film.getDescription())
+                || !Objects.equals(current.getReleaseDate(), film.getReleaseDate())
+                || current.getDuration() != film.getDuration()
+                || !Objects.equals(current.getMpa().getId(), film.getMpa().getId())) {
 
             update(
                     UPDATE_QUERY,
@@ -434,66 +704,140 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
         }
 
         if (film.getGenres() != null) {
-            saveGenres(film);
+            Set<Integer> currentIds = current.getGenres().stream().map(FilmGenre::getId).collect(Collectors.toSet());
+            Set<Integer> newIds = film.getGenres().stream().map(FilmGenre::getId).collect(Collectors.toSet());
+
+            Set<Integer> removed = new HashSet<>(currentIds);
+            removed.removeAll(newIds);
+            if (!removed.isEmpty()) {
+                delete(DELETE_FILM_GENRE_REL_QUERY, Map.of("filmId", film.getId(), "genreIds", removed));
+            }
+            newIds.removeAll(currentIds);
+            insertGenres(film, newIds);
         }
 
         if (film.getDirectors() != null) {
-            saveDirectors(film);
+            Set<Integer> currentIds = current.getDirectors().stream().map(Director::getId).collect(Collectors.toSet());
+            Set<Integer> newIds = film.getDirectors().stream().map(Director::getId).collect(Collectors.toSet());
+
+            Set<Integer> removed = new HashSet<>(currentIds);
+            removed.removeAll(newIds);
+            if (!removed.isEmpty()) {
+                delete(DELETE_FILM_DIRECTORS_QUERY, Map.of("filmId", film.getId(), "directorIds", removed));
+            }
+            newIds.removeAll(currentIds);
+            insertDirectors(film, newIds);
         }
 
+        putToSearchIndex(film);
+
         return film;
     }
 
     @Override
     public void delete(Film film) {
         delete(DELETE_QUERY, Map.of("filmId", film.getId()));
+        AfterCommit.run(() -> {
+            likeIndex.removeFilm(film.getId());
+            searchIndex.removeFilm(film.getId());
+        });
     }
 
     @Override
     public int deleteAll() {
-        return delete(DELETE_ALL_QUERY);
+        int deleted = delete(DELETE_ALL_QUERY);
+        AfterCommit.run(() -> {
+            likeIndex.clear();
+            searchIndex.clearFilms();
+        });
+        return deleted;
     }
 
+    // Жанры и режиссеры подгружаются парой запросов на каждые IN_LIST_SIZE фильмов выборки,
+    // а не парой запросов на каждый фильм
     private List<Film> fillFilmsGenresAndDirectors(List<Film> films) {
-        films.forEach(this::fillFilmGenresAndDirectors);
+        for (int from = 0; from < films.size(); from += IN_LIST_SIZE) {
+            List<Film> chunk = films.subList(from, Math.min(from + IN_LIST_SIZE, films.size()));
+            List<Long> ids = chunk.stream().map(Film::getId).toList();
+            fillFilmsGenresAndDirectors(chunk, FIND_FILMS_GENRES_QUERY, FIND_FILMS_DIRECTORS_QUERY,
+                    Map.of("filmIds", ids));
+        }
         return films;
     }
 
-    private void fillFilmGenresAndDirectors(Film film) {
-        List<FilmGenre> genres = findMany(FIND_FILM_GENRES_QUERY,
-                Map.of("filmId", film.getId()), new BeanPropertyRowMapper<>(FilmGenre.class));
-        film.setGenres(genres);
+    private List<Film> fillFilmsGenresAndDirectors(List<Film> films, String genresQuery, String directorsQuery,
+                                                   Map<String, Object> params) {
+        if (films.isEmpty()) {
+            return films;
+        }
+
+        Map<Long, Film> filmsById = new HashMap<>();
+        for (Film film : films) {
+            film.setGenres(new ArrayList<>());
+            film.setDirectors(new ArrayList<>());
+            filmsById.put(film.getId(), film);
+        }
+
+        // связи фильма, добавленного после чтения выборки, пропускаются
+        forEachRow(genresQuery, params, rs -> {
+            Film film = filmsById.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.getGenres().add(genreRowMapper.mapRow(rs, rs.getRow()));
+            }
+        });
+
+        forEachRow(directorsQuery, params, rs -> {
+            Film film = filmsById.get(rs.getLong("film_id"));
+            if (film != null) {
+                film.getDirectors().add(directorRowMapper.mapRow(rs, rs.getRow()));
+            }
+        });
 
-        List<Director> directors = findMany(FIND_FILM_DIRECTORS_QUERY,
-                Map.of("filmId", film.getId()), directorRowMapper);
-        film.setDirectors(directors);
+        return films;
     }
 
-    private void saveGenres(Film film) {
+    private void fillFilmGenresAndDirectors(Film film) {
+        fillFilmsGenresAndDirectors(List.of(film));
+    }
 
-        delete(DELETE_FILM_GENRE_REL_QUERY, Map.of("filmId", film.getId()));
+    // индекс поиска меняется только после фиксации, чтобы откаченный фильм в него не попал
+    private void putToSearchIndex(Film film) {
+        List<Integer> directorIds = film.getDirectors() == null ? null
+                : film.getDirectors().stream().map(Director::getId).toList();
+        AfterCommit.run(() -> searchIndex.putFilm(film.getId(), film.getName(), directorIds));
+    }
 
-        if (!film.getGenres().isEmpty()) {
-            List<Map<String, Object>> batchValues = film.getGenres().stream()
-                    .map(genre -> createFilmGenreMap(film, genre))
+    private void insertGenres(Film film, Set<Integer> genreIds) {
+        if (!genreIds.isEmpty()) {
+            List<Map<String, Object>> batchValues = genreIds.stream()
+                    .map(genreId -> Map.<String, Object>of("filmId", film.getId(), "genreId", genreId))
                     .toList();
 
             batchUpdate(INSERT_FILM_GENRE_REL_QUERY, batchValues);
         }
     }
 
-    private void saveDirectors(Film film) {
-        delete(DELETE_FILM_DIRECTORS_QUERY, Map.of("filmId", film.getId()));
-
-        if (!film.getDirectors().isEmpty()) {
-            List<Map<String, Object>> batchValues = film.getDirectors().stream()
-                    .map(director -> createDirectorMap(film, director))
+    private void insertDirectors(Film film, Set<Integer> directorIds) {
+        if (!directorIds.isEmpty()) {
+            List<Map<String, Object>> batchValues = directorIds.stream()
+                    .map(directorId -> Map.<String, Object>of("filmId", film.getId(), "directorId", directorId))
                     .toList();
 
             batchUpdate(INSERT_FILM_DIRECTORS_QUERY, batchValues);
         }
     }
 
+    // описание и дата выхода могут быть пустыми, а Map.of не принимает null
+    private static Map<String, Object> toInsertParams(Film film) {
+        Map<String, Object> params = new HashMap<>();
+        params.put("name", film.getName());
+        params.put("description", film.getDescription());
+        params.put("releaseDate", film.getReleaseDate());
+        params.put("duration", film.getDuration());
+        params.put("mpaId", film.getMpa().getId());
+        return params;
+    }
+
     private Map<String, Object> createFilmGenreMap(Film film, FilmGenre genre) {
         return Map.of("filmId", film.getId(), "genreId", genre.getId());
     }
@@ -502,8 +846,12 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
         return Map.of("filmId", film.getId(), "directorId", director.getId());
     }
 
+    /**
+     * Результаты упорядочены по качеству совпадения (точное, с начала названия, с начала слова, внутри слова),
+     * затем по убыванию лайков. Лучшие limit фильмов отбираются в индексе, и из БД читаются только они.
+     */
     @Override
-    public List<Film> searchBy(String queryString, String searchBy) {
+    public List<Film> searchBy(String queryString, String searchBy, int limit) {
         String sqlQuery = switch (searchBy) {
             case "title" -> FIND_FILMS_BY_TITLE_QUERY;
             case "director" -> FIND_FILMS_BY_DIRECTOR_QUERY;
@@ -512,9 +860,15 @@ public class DbFilmStorage extends NamedRepository<Film> implements FilmStorage
                     "корректные критерии: title, director и оба");
         };
 
-        List<Film> films = namedTemplate.query(sqlQuery, Map.of("name", "%" + queryString.toLowerCase() + "%"),
-                new FilmRowMapper());
+        // без лайков в памяти отобрать популярные совпадения в индексе нельзя
+        if (!searchIndex.isReady() || !likeIndex.isReady()) {
+            List<Film> films = findMany(sqlQuery,
+                    Map.of("name", "%" + queryString.toLowerCase() + "%", "limit", limit));
+            return fillFilmsGenresAndDirectors(films);
+        }
 
-        return fillFilmsGenresAndDirectors(films);
+        List<Long> filmIds = searchIndex.searchTop(queryString, searchBy.contains("title"),
+                searchBy.contains("director"), likeIndex::getLikesCount, limit);
+        return getByIds(filmIds);
     }
 }
@@ -2,6 +2,9 @@ package ru.yandex.practicum.filmorate.storage;
 
 import java.sql.Timestamp;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -37,6 +40,30 @@ public class DbFriendshipStorage extends NamedRepository<Friendship> implements
         FROM friendship
         WHERE friend_id = :userId AND status = 'accepted'""";
 
+    private static final String FIND_FOLLOWERS_ID = """
+        SELECT friend_id AS author_id, user_id AS follower_id
+        FROM friendship
+        WHERE friend_id IN (:userIds)
+
+        UNION
+
+        SELECT user_id, friend_id
+        FROM friendship
+        WHERE user_id IN (:userIds) AND status = 'accepted'""";
+
+    private static final String FIND_USERS_WITH_MANY_FOLLOWERS = """
+        SELECT followed_id
+        FROM (SELECT friend_id AS followed_id, user_id AS follower_id
+              FROM friendship
+
+              UNION
+
+              SELECT user_id, friend_id
+              FROM friendship
+              WHERE status = 'accepted') f
+        GROUP BY followed_id
+        HAVING COUNT(*) > :count""";
+
     private static final String ACCEPT_FRIENDSHIP_QUERY = """
         UPDATE friendship
         SET status = 'accepted', accepted_at = :acceptedAt
@@ -73,16 +100,31 @@ public class DbFriendshipStorage extends NamedRepository<Friendship> implements
         DELETE FROM friendship
         WHERE friend_id = :friendId AND user_id = :userId""";
 
-    protected final NamedParameterJdbcTemplate namedTemplate;
-
     public DbFriendshipStorage(NamedParameterJdbcTemplate namedTemplate, FriendshipRowMapper mapper) {
         super(namedTemplate, mapper);
-        this.namedTemplate = namedTemplate;
     }
 
     @Override
     public List<Long> getFriends(User user) {
-        return namedTemplate.queryForList(FIND_FRIENDS_ID, Map.of("userId", user.getId()), Long.class);
+        return queryForList(FIND_FRIENDS_ID, Map.of("userId", user.getId()), Long.class);
+    }
+
+    @Override
+    public Map<Long, List<Long>> getFollowers(Collection<Long> userIds) {
+        if (userIds.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<Long, List<Long>> followers = new HashMap<>();
+        forEachRow(FIND_FOLLOWERS_ID, Map.of("userIds", userIds), rs ->
+                followers.computeIfAbsent(rs.getLong("author_id"), id -> new ArrayList<>())
+                        .add(rs.getLong("follower_id")));
+        return followers;
+    }
+
+    @Override
+    public List<Long> getUsersWithMoreFollowersThan(int count) {
+        return queryForList(FIND_USERS_WITH_MANY_FOLLOWERS, Map.of("count", count), Long.class);
     }
 
     @Override
@@ -90,7 +132,7 @@ public class DbFriendshipStorage extends NamedRepository<Friendship> implements
 
         log.debug("get common friends: {} and {}", user1, user2);
 
-        return namedTemplate.queryForList(COMMON_FRIENDS_QUERY,
+        return queryForList(COMMON_FRIENDS_QUERY,
                 Map.of("id1", user1.getId(), "id2", user2.getId()), Long.class);
     }
 
@@ -0,0 +1,64 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+@Slf4j
+@Repository
+@Qualifier("db")
+public class DbTimelineStorage extends NamedRepository<Void> implements TimelineStorage {
+
+    private static final String FIND_EVENT_IDS_QUERY = """
+        SELECT event_id FROM (
+            SELECT event_id
+            FROM friend_timeline
+            WHERE user_id = :userId
+            ORDER BY event_id DESC
+            LIMIT :limit) t
+        ORDER BY event_id""";
+
+    private static final String INSERT_QUERY = """
+        INSERT INTO friend_timeline (user_id, event_id)
+        VALUES (:userId, :eventId)""";
+
+    private static final String TRIM_QUERY = """
+        DELETE FROM friend_timeline
+        WHERE user_id = :userId AND event_id < :eventId""";
+
+    public DbTimelineStorage(NamedParameterJdbcTemplate namedTemplate) {
+        super(namedTemplate);
+    }
+
+    @Override
+    public List<Long> getEventIds(long userId, int limit) {
+        return queryForList(FIND_EVENT_IDS_QUERY, Map.of("userId", userId, "limit", limit), Long.class);
+    }
+
+    @Override
+    public void add(Map<Long, List<Long>> userIdsByEventId) {
+        List<Map<String, Object>> rows = new ArrayList<>();
+        userIdsByEventId.forEach((eventId, userIds) -> userIds.forEach(userId ->
+                rows.add(Map.of("userId", userId, "eventId", eventId))));
+        if (rows.isEmpty()) {
+            return;
+        }
+        batchUpdate(INSERT_QUERY, rows);
+        log.debug("{} events added to {} timeline rows", userIdsByEventId.size(), rows.size());
+    }
+
+    @Override
+    public void trim(Map<Long, Long> oldestEventIdByUser) {
+        if (oldestEventIdByUser.isEmpty()) {
+            return;
+        }
+        batchUpdate(TRIM_QUERY, oldestEventIdByUser.entrySet().stream()
+                .map(e -> Map.<String, Object>of("userId", e.getKey(), "eventId", e.getValue()))
+                .toList());
+    }
+}
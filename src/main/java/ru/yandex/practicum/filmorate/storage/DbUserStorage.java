@@ -5,19 +5,27 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exceptions.FailedToCreateEntity;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.mapper.UserRowMapper;
 
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
 
 @Slf4j
 @Repository
 @Qualifier("db")
 public class DbUserStorage extends NamedRepository<User> implements UserStorage {
 
+    private static final int EXPORT_FETCH_SIZE = 500;
+    private static final int IN_LIST_SIZE = 1000;
+
     private static final String FIND_ALL_QUERY = """
         SELECT user_id as "user_id",
                user_name as "user_name",
@@ -26,6 +34,32 @@ public class DbUserStorage extends NamedRepository<User> implements UserStorage
                birthday as "birthday"
         FROM users""";
 
+    private static final String EXPORT_QUERY = """
+        SELECT user_id as "user_id",
+               user_name as "user_name",
+               email as "email",
+               login as "login",
+               birthday as "birthday"
+        FROM users
+        ORDER BY user_id""";
+
+    private static final String FIND_PAGE_QUERY = """
+        SELECT user_id as "user_id",
+               user_name as "user_name",
+               email as "email",
+               login as "login",
+               birthday as "birthday"
+        FROM users
+        WHERE user_id > :afterId
+        ORDER BY user_id
+        LIMIT :limit""";
+
+    private static final String EXISTS_QUERY = """
+        SELECT EXISTS (SELECT 1 FROM users WHERE user_id = :id)""";
+
+    private static final String FIND_EXISTING_IDS_QUERY = """
+        SELECT user_id FROM users WHERE user_id IN (:userIds)""";
+
     private static final String FIND_BY_ID_QUERY = """
         SELECT * FROM users
         WHERE user_id = :id""";
@@ -45,14 +79,50 @@ public class DbUserStorage extends NamedRepository<User> implements UserStorage
     private static final String DELETE_ALL_QUERY = """
         DELETE FROM users""";
 
-    public DbUserStorage(NamedParameterJdbcTemplate namedTemplate, UserRowMapper mapper) {
+    // лайки пользователя удаляются каскадно, поэтому счетчики лайков фильмов правим заранее
+    private static final String DECREMENT_USER_LIKES_COUNT_QUERY = """
+        UPDATE films
+        SET likes_count = likes_count - 1
+        WHERE film_id IN (SELECT film_id FROM film_likes WHERE user_id = :id)""";
+
+    private static final String RESET_LIKES_COUNT_QUERY = """
+        UPDATE films
+        SET likes_count = 0
+        WHERE likes_count <> 0""";
+
+    private final LikeIndex likeIndex;
+
+    public DbUserStorage(NamedParameterJdbcTemplate namedTemplate, UserRowMapper mapper, LikeIndex likeIndex) {
         super(namedTemplate, mapper);
+        this.likeIndex = likeIndex;
     }
 
     public List<User> getAll() {
         return super.getAll(FIND_ALL_QUERY);
     }
 
+    public List<User> getPage(long afterId, int limit) {
+        return findMany(FIND_PAGE_QUERY, Map.of("afterId", afterId, "limit", limit));
+    }
+
+    public void streamAll(Consumer<User> consumer) {
+        stream(EXPORT_QUERY, Map.of(), EXPORT_FETCH_SIZE, consumer);
+    }
+
+    public boolean existsById(long userId) {
+        return Boolean.TRUE.equals(queryForObject(EXISTS_QUERY, Map.of("id", userId), Boolean.class));
+    }
+
+    public Set<Long> getExistingIds(Collection<Long> userIds) {
+        Set<Long> existing = new HashSet<>();
+        List<Long> ids = List.copyOf(userIds);
+        for (int from = 0; from < ids.size(); from += IN_LIST_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + IN_LIST_SIZE, ids.size()));
+            existing.addAll(queryForList(FIND_EXISTING_IDS_QUERY, Map.of("userIds", chunk), Long.class));
+        }
+        return existing;
+    }
+
     public Optional<User> getById(Long userId) {
         return findOne(FIND_BY_ID_QUERY, Map.of("id", userId));
     }
@@ -91,11 +161,18 @@ public class DbUserStorage extends NamedRepository<User> implements UserStorage
         return user;
     }
 
+    @Transactional
     public void delete(User user) {
+        update(DECREMENT_USER_LIKES_COUNT_QUERY, Map.of("id", user.getId()));
         delete(DELETE_QUERY, Map.of("id", user.getId()));
+        AfterCommit.run(() -> likeIndex.removeUser(user.getId()));
     }
 
+    @Transactional
     public int deleteAll() {
-        return delete(DELETE_ALL_QUERY);
+        update(RESET_LIKES_COUNT_QUERY, Map.of());
+        int deleted = delete(DELETE_ALL_QUERY);
+        AfterCommit.run(likeIndex::clear);
+        return deleted;
     }
 }
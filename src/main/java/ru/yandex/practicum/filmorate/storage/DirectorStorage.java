@@ -16,5 +16,8 @@ public interface DirectorStorage {
 
     void deleteAllDirectors();
 
-    List<Director> getById(List<Integer> directorIds);
+    /**
+     * Выбирает режиссеров одним запросом. Порядок найденных совпадает с порядком id в запросе, повторы отбрасываются.
+     */
+    MultiGetResult<Integer, Director> getByIds(List<Integer> directorIds);
 }
@@ -2,10 +2,30 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.Event;
 
+import java.util.Collection;
 import java.util.List;
 
 public interface EventStorage {
     Event createEvent(Event event);
 
-    List<Event> findEventsByUserID(Long id);
+    /**
+     * Сохраняет события одним пакетом и присваивает им идентификаторы.
+     * Если хотя бы одно событие не сохранилось, не сохраняется ни одно.
+     */
+    void createEvents(List<Event> events);
+
+    /**
+     * Возвращает найденные события в порядке возрастания id.
+     */
+    List<Event> getByIds(Collection<Long> ids);
+
+    /**
+     * Возвращает последние limit событий указанных пользователей с id меньше beforeId, от новых к старым.
+     */
+    List<Event> findLastEventsByUserIds(Collection<Long> userIds, long beforeId, int limit);
+
+    /**
+     * Возвращает последние limit событий пользователя с id меньше beforeId в порядке записи.
+     */
+    List<Event> findEventsByUserID(Long id, long beforeId, int limit);
 }
\ No newline at end of file
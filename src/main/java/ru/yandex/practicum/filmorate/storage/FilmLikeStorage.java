@@ -1,13 +1,58 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.FilmLike;
+import ru.yandex.practicum.filmorate.model.FilmPopularity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.function.BiConsumer;
 
 public interface FilmLikeStorage {
 
-    boolean like(Film film, User user);
+    /**
+     * Ставит лайк и возвращает число лайков фильма сразу после этого в той же транзакции
+     * или пустой результат, если лайк уже был.
+     * Если фильма или пользователя нет, бросает DataIntegrityViolationException.
+     */
+    OptionalInt like(long filmId, long userId);
+
+    /**
+     * Снимает лайк и возвращает число лайков фильма сразу после этого в той же транзакции
+     * или пустой результат, если лайка не было.
+     */
+    OptionalInt dislike(long filmId, long userId);
 
-    boolean dislike(Film film, User user);
+    /**
+     * Снимает лайки toRemove и ставит лайки toAdd пакетами в одной транзакции, пересчитывает число лайков
+     * затронутых фильмов и возвращает его.
+     * Уже поставленные и уже снятые лайки пропускаются без ошибок.
+     * Если какого-то фильма или пользователя нет, бросает DataIntegrityViolationException и ничего не меняет.
+     */
+    Map<Long, Integer> applyLikes(List<FilmLike> toAdd, List<FilmLike> toRemove);
 
     int deleteAll();
+
+    int reconcileLikesCount();
+
+    List<FilmPopularity> getFilmsPopularity();
+
+    /**
+     * Текущее число лайков фильмов; отсутствующие фильмы в ответ не попадают.
+     */
+    Map<Long, Integer> getLikesCounts(Collection<Long> filmIds);
+
+    List<Long> getLikedFilmIds(long userId);
+
+    /**
+     * Возвращает фильмы, которые лайкнул каждый из пользователей; пользователи без лайков в ответ не попадают.
+     */
+    Map<Long, Set<Long>> getLikedFilmIds(Collection<Long> userIds);
+
+    /**
+     * Передает в consumer все лайки парами (userId, filmId), не собирая их в памяти.
+     */
+    void forEachLike(BiConsumer<Long, Long> consumer);
 }
@@ -0,0 +1,314 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.LongToIntFunction;
+
+/**
+ * Поисковый индекс по названиям фильмов и именам режиссеров.
+ * Для каждой n-граммы (подстроки длиной от 1 до 3 символов) хранится битовое множество id фильмов (режиссеров),
+ * в названии (имени) которых она встречается. Кандидаты на совпадение с подстрокой - пересечение множеств
+ * всех n-грамм запроса, затем кандидаты проверяются по тексту и получают оценку качества совпадения.
+ * Индекс обновляется хранилищами фильмов и режиссеров. Id фильмов и режиссеров должны помещаться в int.
+ */
+@Component
+public class FilmSearchIndex {
+
+    public static final int EXACT = 0;
+    public static final int PREFIX = 1;
+    public static final int WORD_PREFIX = 2;
+    public static final int SUBSTRING = 3;
+
+    private static final int GRAM_LENGTH = 3;
+
+    private final Map<Integer, String> titles = new HashMap<>();
+    private final Map<String, RoaringBitmap> filmsByGram = new HashMap<>();
+    private final Map<Integer, String> directorNames = new HashMap<>();
+    private final Map<String, RoaringBitmap> directorsByGram = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> filmsByDirector = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> directorsByFilm = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    /**
+     * Пока индекс не загружен из БД, поиск выполняется запросами к БД.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void load(Consumer<FilmSearchIndex> loader) {
+        lock.writeLock().lock();
+        try {
+            clearFilms();
+            clearDirectors();
+            loader.accept(this);
+            filmsByGram.values().forEach(RoaringBitmap::runOptimize);
+            directorsByGram.values().forEach(RoaringBitmap::runOptimize);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Добавляет или обновляет фильм. Если directorIds == null, режиссеры фильма не меняются.
+     */
+    public void putFilm(long filmId, String title, List<Integer> directorIds) {
+        int film = Math.toIntExact(filmId);
+
+        lock.writeLock().lock();
+        try {
+            put(titles, filmsByGram, film, title);
+            if (directorIds != null) {
+                removeRelations(directorsByFilm, filmsByDirector, film);
+                directorIds.forEach(directorId -> addRelation(film, directorId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        int film = Math.toIntExact(filmId);
+
+        lock.writeLock().lock();
+        try {
+            remove(titles, filmsByGram, film);
+            removeRelations(directorsByFilm, filmsByDirector, film);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void putDirector(int directorId, String name) {
+        lock.writeLock().lock();
+        try {
+            put(directorNames, directorsByGram, directorId, name);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeDirector(int directorId) {
+        lock.writeLock().lock();
+        try {
+            remove(directorNames, directorsByGram, directorId);
+            removeRelations(filmsByDirector, directorsByFilm, directorId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void addFilmDirector(long filmId, int directorId) {
+        lock.writeLock().lock();
+        try {
+            addRelation(Math.toIntExact(filmId), directorId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clearFilms() {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            filmsByGram.clear();
+            filmsByDirector.clear();
+            directorsByFilm.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clearDirectors() {
+        lock.writeLock().lock();
+        try {
+            directorNames.clear();
+            directorsByGram.clear();
+            filmsByDirector.clear();
+            directorsByFilm.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Фильмы, в названии которых (byTitle) или в имени режиссера которых (byDirector) встречается query,
+     * с лучшей оценкой совпадения: EXACT, PREFIX, WORD_PREFIX или SUBSTRING (чем меньше, тем лучше).
+     */
+    public Map<Long, Integer> search(String query, boolean byTitle, boolean byDirector) {
+        String normalized = normalize(query);
+        Map<Long, Integer> result = new HashMap<>();
+
+        lock.readLock().lock();
+        try {
+            if (byTitle) {
+                candidates(normalized, titles, filmsByGram).forEach((int film) -> {
+                    int quality = matchQuality(titles.get(film), normalized);
+                    if (quality >= 0) {
+                        result.merge((long) film, quality, Math::min);
+                    }
+                });
+            }
+
+            if (byDirector) {
+                candidates(normalized, directorNames, directorsByGram).forEach((int director) -> {
+                    int quality = matchQuality(directorNames.get(director), normalized);
+                    RoaringBitmap films = filmsByDirector.get(director);
+                    if (quality >= 0 && films != null) {
+                        films.forEach((int film) -> result.merge((long) film, quality, Math::min));
+                    }
+                });
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Не больше limit фильмов из {@link #search}, упорядоченных по оценке совпадения, затем по убыванию лайков
+     * и по id. Лучшие limit отбираются кучей без сортировки всех совпадений, поэтому короткий запрос
+     * не заставляет читать из БД все найденные фильмы.
+     */
+    public List<Long> searchTop(String query, boolean byTitle, boolean byDirector, LongToIntFunction likesCount,
+                                int limit) {
+        Comparator<Match> order = Comparator.comparingInt(Match::quality)
+                .thenComparing(Comparator.comparingInt(Match::likes).reversed())
+                .thenComparingLong(Match::filmId);
+        // в голове кучи худший из отобранных
+        PriorityQueue<Match> top = new PriorityQueue<>(order.reversed());
+        search(query, byTitle, byDirector).forEach((filmId, quality) -> {
+            // совпадение хуже худшего из полной кучи в нее не попадет, и лайки для него не нужны
+            if (top.size() == limit && quality > top.peek().quality()) {
+                return;
+            }
+            top.add(new Match(filmId, quality, likesCount.applyAsInt(filmId)));
+            if (top.size() > limit) {
+                top.poll();
+            }
+        });
+
+        List<Match> ranked = new ArrayList<>(top);
+        ranked.sort(order);
+        return ranked.stream().map(Match::filmId).toList();
+    }
+
+    static int matchQuality(String text, String query) {
+        int index = text.indexOf(query);
+        if (index < 0) {
+            return -1;
+        }
+        if (index == 0) {
+            return text.length() == query.length() ? EXACT : PREFIX;
+        }
+
+        while (index > 0) {
+            if (!Character.isLetterOrDigit(text.charAt(index - 1))) {
+                return WORD_PREFIX;
+            }
+            index = text.indexOf(query, index + 1);
+        }
+        return SUBSTRING;
+    }
+
+    static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    private RoaringBitmap candidates(String query, Map<Integer, String> texts, Map<String, RoaringBitmap> index) {
+        if (query.isEmpty()) {
+            RoaringBitmap all = new RoaringBitmap();
+            texts.keySet().forEach(all::add);
+            return all;
+        }
+
+        List<RoaringBitmap> bitmaps = new ArrayList<>();
+        for (String gram : grams(query, Math.min(GRAM_LENGTH, query.length()))) {
+            RoaringBitmap ids = index.get(gram);
+            if (ids == null) {
+                return new RoaringBitmap();
+            }
+            bitmaps.add(ids);
+        }
+        return FastAggregation.and(bitmaps.iterator());
+    }
+
+    private static void put(Map<Integer, String> texts, Map<String, RoaringBitmap> index, int id, String text) {
+        remove(texts, index, id);
+
+        String normalized = normalize(text);
+        texts.put(id, normalized);
+        for (String gram : allGrams(normalized)) {
+            index.computeIfAbsent(gram, g -> new RoaringBitmap()).add(id);
+        }
+    }
+
+    private static void remove(Map<Integer, String> texts, Map<String, RoaringBitmap> index, int id) {
+        String previous = texts.remove(id);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : allGrams(previous)) {
+            removeFrom(index, gram, id);
+        }
+    }
+
+    private void addRelation(int film, int director) {
+        filmsByDirector.computeIfAbsent(director, id -> new RoaringBitmap()).add(film);
+        directorsByFilm.computeIfAbsent(film, id -> new RoaringBitmap()).add(director);
+    }
+
+    private static void removeRelations(Map<Integer, RoaringBitmap> relations, Map<Integer, RoaringBitmap> reverse,
+                                        int id) {
+        RoaringBitmap related = relations.remove(id);
+        if (related != null) {
+            related.forEach((int other) -> removeFrom(reverse, other, id));
+        }
+    }
+
+    private static <K> void removeFrom(Map<K, RoaringBitmap> index, K key, int value) {
+        RoaringBitmap bitmap = index.get(key);
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    // n-граммы длиной от 1 до GRAM_LENGTH: по ним ищутся и короткие запросы
+    private static Set<String> allGrams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int length = 1; length <= GRAM_LENGTH; length++) {
+            grams.addAll(grams(text, length));
+        }
+        return grams;
+    }
+
+    private static Set<String> grams(String text, int length) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + length <= text.length(); i++) {
+            grams.add(text.substring(i, i + length));
+        }
+        return grams;
+    }
+
+    private record Match(long filmId, int quality, int likes) {
+    }
+}
@@ -3,9 +3,34 @@ package ru.yandex.practicum.filmorate.storage;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
 
 public interface FilmStorage extends AbstractStorage<Long, Film> {
+    List<Film> getByIds(List<Long> filmIds);
+
+    /**
+     * Сохраняет новые фильмы с жанрами и режиссерами в одной транзакции и присваивает им идентификаторы.
+     */
+    List<Film> saveAll(List<Film> films);
+
+    /**
+     * Сохраняет изменения фильма относительно current - его состояния, прочитанного из хранилища.
+     * Строка фильма обновляется, только если изменились его поля, а у жанров и режиссеров удаляются и
+     * добавляются только отличающиеся связи; null в genres или directors оставляет их как есть.
+     */
+    Film update(Film current, Film film);
+
+    boolean existsById(long filmId);
+
+    Set<Long> getExistingIds(Collection<Long> filmIds);
+
+    List<Film> getPage(long afterId, int limit);
+
+    void streamAll(Consumer<Film> consumer);
+
     List<Film> getPopularFilms(int count);
 
     List<Film> getRecommendations(long userId);
@@ -18,7 +43,9 @@ public interface FilmStorage extends AbstractStorage<Long, Film> {
 
     List<Film> getPopularFilmsByYearGenre(int count, int year, int genre);
 
+    List<Film> getPopularFilmsAfter(int count, Integer year, Integer genre, int afterLikes, long afterFilmId);
+
     List<Film> getSortedFilmsByDirector(Director director, String sortBy);
 
-    List<Film> searchBy(String queryString, String searchBy);
+    List<Film> searchBy(String queryString, String searchBy, int limit);
 }
@@ -2,12 +2,25 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 public interface FriendshipStorage {
 
     List<Long> getFriends(User user);
 
+    /**
+     * Возвращает для каждого из userIds пользователей, у которых он есть в списке друзей.
+     * Пользователи без подписчиков в результат не попадают.
+     */
+    Map<Long, List<Long>> getFollowers(Collection<Long> userIds);
+
+    /**
+     * Возвращает пользователей, которые есть в списке друзей у более чем count пользователей.
+     */
+    List<Long> getUsersWithMoreFollowersThan(int count);
+
     List<Long> getCommonFriends(User user1, User user2);
 
     boolean addFriend(User user, User friend);
@@ -0,0 +1,256 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Индекс лайков в памяти: для каждого пользователя сжатое битовое множество (Roaring) id понравившихся фильмов,
+ * для каждого фильма - множество id лайкнувших пользователей.
+ * Пересечения и размеры пересечений считаются операциями над множествами, без обращения к БД.
+ * Индекс обновляется хранилищами при изменении лайков, пользователей и фильмов.
+ * Id пользователей и фильмов должны помещаться в int.
+ */
+@Slf4j
+@Component
+public class LikeIndex {
+
+    private static final RoaringBitmap EMPTY = new RoaringBitmap();
+
+    private final Map<Integer, RoaringBitmap> filmsByUser = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> usersByFilm = new HashMap<>();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean ready;
+
+    /**
+     * Пока индекс не загружен из БД, хранилища должны отвечать запросами к БД.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    public void load(Consumer<LikeIndex> loader) {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            usersByFilm.clear();
+            loader.accept(this);
+            filmsByUser.values().forEach(RoaringBitmap::runOptimize);
+            usersByFilm.values().forEach(RoaringBitmap::runOptimize);
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void add(long userId, long filmId) {
+        int user = Math.toIntExact(userId);
+        int film = Math.toIntExact(filmId);
+
+        lock.writeLock().lock();
+        try {
+            filmsByUser.computeIfAbsent(user, id -> new RoaringBitmap()).add(film);
+            usersByFilm.computeIfAbsent(film, id -> new RoaringBitmap()).add(user);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(long userId, long filmId) {
+        int user = Math.toIntExact(userId);
+        int film = Math.toIntExact(filmId);
+
+        lock.writeLock().lock();
+        try {
+            removeFrom(filmsByUser, user, film);
+            removeFrom(usersByFilm, film, user);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeUser(long userId) {
+        lock.writeLock().lock();
+        try {
+            int user = Math.toIntExact(userId);
+            RoaringBitmap films = filmsByUser.remove(user);
+            if (films != null) {
+                films.forEach((int film) -> removeFrom(usersByFilm, film, user));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removeFilm(long filmId) {
+        lock.writeLock().lock();
+        try {
+            int film = Math.toIntExact(filmId);
+            RoaringBitmap users = usersByFilm.remove(film);
+            if (users != null) {
+                users.forEach((int user) -> removeFrom(filmsByUser, user, film));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            usersByFilm.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Long> getLikedFilmIds(long userId) {
+        lock.readLock().lock();
+        try {
+            return toIds(filmsOf(Math.toIntExact(userId)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<Long> getUserIds() {
+        lock.readLock().lock();
+        try {
+            List<Long> userIds = new ArrayList<>(filmsByUser.size());
+            filmsByUser.keySet().forEach(user -> userIds.add((long) user));
+            Collections.sort(userIds);
+            return userIds;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Фильмы, которые понравились обоим пользователям, по возрастанию id.
+     */
+    public List<Long> getCommonFilmIds(long userId, long otherUserId) {
+        lock.readLock().lock();
+        try {
+            return toIds(RoaringBitmap.and(filmsOf(Math.toIntExact(userId)), filmsOf(Math.toIntExact(otherUserId))));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Пользователи, у которых есть хотя бы один общий с userId лайк, с числом общих лайков и мерой Жаккара.
+     */
+    public List<Similarity> getSimilarUsers(long userId) {
+        lock.readLock().lock();
+        try {
+            int user = Math.toIntExact(userId);
+            RoaringBitmap films = filmsOf(user);
+            if (films.isEmpty()) {
+                return List.of();
+            }
+
+            List<RoaringBitmap> likers = new ArrayList<>(films.getCardinality());
+            films.forEach((int film) -> likers.add(usersByFilm.get(film)));
+            RoaringBitmap candidates = FastAggregation.or(likers.iterator());
+            candidates.remove(user);
+
+            int filmsCount = films.getCardinality();
+            List<Similarity> result = new ArrayList<>(candidates.getCardinality());
+            candidates.forEach((int other) -> {
+                RoaringBitmap otherFilms = filmsOf(other);
+                int common = RoaringBitmap.andCardinality(films, otherFilms);
+                double jaccard = (double) common / (filmsCount + otherFilms.getCardinality() - common);
+                result.add(new Similarity(other, common, jaccard));
+            });
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Фильмы, которые понравились otherUserId, но еще не понравились userId.
+     */
+    public List<Long> getFilmIdsLikedOnlyBy(long otherUserId, long userId) {
+        lock.readLock().lock();
+        try {
+            return toIds(RoaringBitmap.andNot(filmsOf(Math.toIntExact(otherUserId)), filmsOf(Math.toIntExact(userId))));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int getLikesCount(long filmId) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap users = usersByFilm.get(Math.toIntExact(filmId));
+            return users == null ? 0 : users.getCardinality();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public MemoryReport getMemoryReport() {
+        lock.readLock().lock();
+        try {
+            long likes = 0;
+            long userBitmapsBytes = 0;
+            for (RoaringBitmap films : filmsByUser.values()) {
+                likes += films.getLongCardinality();
+                userBitmapsBytes += films.getLongSizeInBytes();
+            }
+
+            long filmBitmapsBytes = 0;
+            for (RoaringBitmap users : usersByFilm.values()) {
+                filmBitmapsBytes += users.getLongSizeInBytes();
+            }
+
+            return new MemoryReport(ready, filmsByUser.size(), usersByFilm.size(), likes,
+                    userBitmapsBytes, filmBitmapsBytes,
+                    likes == 0 ? 0 : (double) (userBitmapsBytes + filmBitmapsBytes) / likes);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private RoaringBitmap filmsOf(int user) {
+        return filmsByUser.getOrDefault(user, EMPTY);
+    }
+
+    private static void removeFrom(Map<Integer, RoaringBitmap> index, int key, int value) {
+        RoaringBitmap bitmap = index.get(key);
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                index.remove(key);
+            }
+        }
+    }
+
+    private static List<Long> toIds(RoaringBitmap bitmap) {
+        List<Long> ids = new ArrayList<>(bitmap.getCardinality());
+        bitmap.forEach((int id) -> ids.add((long) id));
+        return ids;
+    }
+
+    public record Similarity(long userId, int commonLikes, double jaccard) {
+    }
+
+    /**
+     * Размер индекса: битовые множества без учета накладных расходов словарей.
+     */
+    public record MemoryReport(boolean ready, int users, int films, long likes,
+                               long userBitmapsBytes, long filmBitmapsBytes, double bytesPerLike) {
+    }
+}
@@ -0,0 +1,13 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.List;
+
+/**
+ * Результат выборки по списку id: найденные записи в порядке запроса и id, которых нет в БД.
+ */
+public record MultiGetResult<K, V>(List<V> found, List<K> missingIds) {
+
+    public boolean hasMissing() {
+        return !missingIds.isEmpty();
+    }
+}
@@ -1,7 +1,9 @@
 package ru.yandex.practicum.filmorate.storage;
 
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
@@ -9,40 +11,106 @@ import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
 
-@RequiredArgsConstructor
+/**
+ * Базовый класс хранилищ. Все запросы выполняются через его методы, и если в контексте есть {@link QueryMetrics},
+ * каждый запрос замеряется с тегом ИмяХранилища.ИМЯ_КОНСТАНТЫ. Имя константы находится по самой строке запроса
+ * среди static final полей класса хранилища; запрос не из константы получает имя {@value #OTHER_QUERY}.
+ */
 public class NamedRepository<T> {
 
+    private static final String OTHER_QUERY = "other";
+
     protected final NamedParameterJdbcTemplate namedTemplate;
     protected final RowMapper<T> mapper;
 
+    private final String storageName;
+    private final Map<String, String> queryNames;
+    private QueryMetrics queryMetrics;
+
+    public NamedRepository(NamedParameterJdbcTemplate namedTemplate, RowMapper<T> mapper) {
+        this.namedTemplate = namedTemplate;
+        this.mapper = mapper;
+        this.storageName = getClass().getSimpleName();
+        this.queryNames = queryNamesOf(getClass());
+    }
+
+    /**
+     * Для хранилищ, которые не читают сущности целиком, а только отдельные колонки.
+     */
+    public NamedRepository(NamedParameterJdbcTemplate namedTemplate) {
+        this(namedTemplate, null);
+    }
+
+    @Autowired(required = false)
+    public void setQueryMetrics(QueryMetrics queryMetrics) {
+        this.queryMetrics = queryMetrics;
+    }
+
     protected Optional<T> findOne(String query, Map<String, Object> params) {
-        try {
-            T result = namedTemplate.queryForObject(query, params, mapper);
-            return Optional.ofNullable(result);
-        } catch (EmptyResultDataAccessException ignored) {
-            return Optional.empty();
-        }
+        return timed(query, result -> result.isPresent() ? 1 : 0, () -> {
+            try {
+                T result = namedTemplate.queryForObject(query, params, mapper);
+                return Optional.ofNullable(result);
+            } catch (EmptyResultDataAccessException ignored) {
+                return Optional.empty();
+            }
+        });
     }
 
     protected <K> K queryForObject(String query, Map<String, Object> params, Class<K> clazz) {
-        return namedTemplate.queryForObject(query, params, clazz);
+        return timed(query, result -> 1, () -> namedTemplate.queryForObject(query, params, clazz));
+    }
+
+    protected <K> List<K> queryForList(String query, Map<String, Object> params, Class<K> clazz) {
+        return timed(query, List::size, () -> namedTemplate.queryForList(query, params, clazz));
     }
 
     protected List<T> findMany(String query, Map<String, Object> params) {
-        return namedTemplate.query(query, params, mapper);
+        return timed(query, List::size, () -> namedTemplate.query(query, params, mapper));
     }
 
     protected <K> List<K> findMany(String query, Map<String, Object> params, RowMapper<K> currentMapper) {
-        return namedTemplate.query(query, params, currentMapper);
+        return timed(query, List::size, () -> namedTemplate.query(query, params, currentMapper));
+    }
+
+    protected void forEachRow(String query, Map<String, Object> params, RowCallbackHandler handler) {
+        timedRows(query, rows -> namedTemplate.query(query, params, (RowCallbackHandler) rs -> {
+            long start = System.nanoTime();
+            handler.processRow(rs);
+            rows.handled(start);
+        }));
+    }
+
+    /**
+     * Читает результат запроса порциями по fetchSize строк и отдает каждую строку в consumer,
+     * не собирая весь результат в памяти.
+     */
+    protected void stream(String query, Map<String, Object> params, int fetchSize, Consumer<T> consumer) {
+        JdbcTemplate streamingTemplate = new JdbcTemplate(namedTemplate.getJdbcTemplate().getDataSource());
+        streamingTemplate.setFetchSize(fetchSize);
+
+        timedRows(query, rows -> new NamedParameterJdbcTemplate(streamingTemplate).query(query, params,
+                (RowCallbackHandler) rs -> {
+                    T row = mapper.mapRow(rs, rows.count);
+                    long start = System.nanoTime();
+                    consumer.accept(row);
+                    rows.handled(start);
+                }));
     }
 
     protected List<T> getAll(String query) {
-        return namedTemplate.query(query, mapper);
+        return timed(query, List::size, () -> namedTemplate.query(query, mapper));
     }
 
     protected int delete(String query) {
@@ -50,25 +118,96 @@ public class NamedRepository<T> {
     }
 
     protected int delete(String query, Map<String, Object> params) {
-        return namedTemplate.update(query, params);
+        return update(query, params);
     }
 
     protected int update(String query, Map<String, Object> params) {
-        return namedTemplate.update(query, params);
+        return timed(query, rows -> rows, () -> namedTemplate.update(query, params));
     }
 
     protected int batchUpdate(String query, List<Map<String, Object>> batchValues) {
+        return Arrays.stream(batchUpdateEach(query, batchValues)).sum();
+    }
+
+    /**
+     * Выполняет запрос пакетом и возвращает число измененных строк для каждого элемента batchValues.
+     */
+    protected int[] batchUpdateEach(String query, List<Map<String, Object>> batchValues) {
         Map<String, Object>[] array = new Map[batchValues.size()];
         batchValues.toArray(array);
 
-        int[] result = namedTemplate.batchUpdate(query, array);
-        return Arrays.stream(result).sum();
+        return timed(query, rows -> Arrays.stream(rows).sum(), () -> namedTemplate.batchUpdate(query, array));
+    }
+
+    /**
+     * Выполняет вставку пакетом и возвращает ключи вставленных строк в порядке batchValues.
+     */
+    protected KeyHolder batchInsert(String query, List<Map<String, Object>> batchValues, String[] keyColumnNames) {
+        GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
+        SqlParameterSource[] parameterSources = batchValues.stream()
+                .map(MapSqlParameterSource::new)
+                .toArray(SqlParameterSource[]::new);
+
+        timed(query, rows -> rows, () -> Arrays.stream(
+                namedTemplate.batchUpdate(query, parameterSources, keyHolder, keyColumnNames)).sum());
+        return keyHolder;
     }
 
     protected KeyHolder insert(String query, Map<String, Object> params, String[] keyColumnNames) {
         GeneratedKeyHolder keyHolder = new GeneratedKeyHolder();
         SqlParameterSource parameterSource = new MapSqlParameterSource(params);
-        namedTemplate.update(query, parameterSource, keyHolder, keyColumnNames);
+        timed(query, rows -> rows, () -> namedTemplate.update(query, parameterSource, keyHolder, keyColumnNames));
         return keyHolder;
     }
+
+    private <R> R timed(String query, ToIntFunction<R> rowCount, Supplier<R> call) {
+        if (queryMetrics == null) {
+            return call.get();
+        }
+        return queryMetrics.record(storageName, queryNames.getOrDefault(query, OTHER_QUERY), rowCount, call);
+    }
+
+    // в метрику запроса идет только чтение строк: время обработчика строк из него вычитается
+    private void timedRows(String query, Consumer<HandledRows> call) {
+        Supplier<HandledRows> read = () -> {
+            HandledRows rows = new HandledRows();
+            call.accept(rows);
+            return rows;
+        };
+        if (queryMetrics == null) {
+            read.get();
+            return;
+        }
+        queryMetrics.record(storageName, queryNames.getOrDefault(query, OTHER_QUERY), rows -> rows.count,
+                rows -> rows.handlerNanos, read);
+    }
+
+    private static final class HandledRows {
+        private int count;
+        private long handlerNanos;
+
+        private void handled(long start) {
+            handlerNanos += System.nanoTime() - start;
+            count++;
+        }
+    }
+
+    // строковые константы - один и тот же экземпляр строки, поэтому имя ищется по ссылке, а не по тексту запроса
+    private static Map<String, String> queryNamesOf(Class<?> storageClass) {
+        Map<String, String> names = new IdentityHashMap<>();
+        for (Field field : storageClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers) || field.getType() != String.class) {
+                continue;
+            }
+
+            try {
+                field.setAccessible(true);
+                names.put((String) field.get(null), field.getName());
+            } catch (IllegalAccessException ignored) {
+                // запрос из такой константы попадет в other
+            }
+        }
+        return names;
+    }
 }
@@ -0,0 +1,218 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.Ordered;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Метрики SQL-запросов хранилищ с тегами storage (класс хранилища) и query (имя константы с запросом):
+ * filmorate.query - время выполнения, filmorate.query.rows - число прочитанных или измененных строк,
+ * filmorate.query.errors - число ошибок. Запросы дольше slow-threshold пишутся в лог.
+ * Для операций, отмеченных {@link #trackOperation}, пишутся filmorate.operation.statements и
+ * filmorate.operation.commits - число запросов и фиксаций на один вызов с тегом operation.
+ */
+@Slf4j
+@Component
+public class QueryMetrics {
+
+    public static final String TIMER = "filmorate.query";
+    public static final String ROWS = "filmorate.query.rows";
+    public static final String ERRORS = "filmorate.query.errors";
+    public static final String OPERATION_STATEMENTS = "filmorate.operation.statements";
+    public static final String OPERATION_COMMITS = "filmorate.operation.commits";
+
+    // запросы и фиксации, выполненные потоком; операции считают разницу до и после вызова
+    private static final ThreadLocal<ThreadCounts> THREAD_COUNTS = ThreadLocal.withInitial(ThreadCounts::new);
+
+    private final MeterRegistry registry;
+    private final long slowThresholdNanos;
+    private final Map<String, QueryMeters> meters = new ConcurrentHashMap<>();
+    private final Map<String, OperationMeters> operationMeters = new ConcurrentHashMap<>();
+
+    public QueryMetrics(MeterRegistry registry,
+                        @Value("${filmorate.queries.slow-threshold:200ms}") Duration slowThreshold) {
+        this.registry = registry;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+    }
+
+    public <R> R record(String storage, String query, ToIntFunction<R> rowCount, Supplier<R> call) {
+        return record(storage, query, rowCount, result -> 0, call);
+    }
+
+    /**
+     * Для запросов, которые отдают строки в обработчик по мере чтения: из времени запроса вычитается время,
+     * проведенное в обработчике (callbackNanos), чтобы медленный получатель выгрузки не считался медленным запросом.
+     */
+    public <R> R record(String storage, String query, ToIntFunction<R> rowCount, ToLongFunction<R> callbackNanos,
+                        Supplier<R> call) {
+        QueryMeters queryMeters = meters.computeIfAbsent(storage + "." + query, key -> new QueryMeters(storage, query));
+
+        countStatement();
+        long start = System.nanoTime();
+        try {
+            R result = call.get();
+            long elapsed = System.nanoTime() - start - callbackNanos.applyAsLong(result);
+            int rows = rowCount.applyAsInt(result);
+
+            queryMeters.timer.record(elapsed, TimeUnit.NANOSECONDS);
+            queryMeters.rows.record(rows);
+            if (elapsed >= slowThresholdNanos) {
+                log.warn("slow query {}.{}: {} ms, {} rows", storage, query, elapsed / 1_000_000, rows);
+            }
+            return result;
+        } catch (RuntimeException e) {
+            queryMeters.timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            queryMeters.errors.increment();
+            throw e;
+        }
+    }
+
+    /**
+     * Считает запросы и фиксации текущей операции. Вызывается в начале метода, который выполняется в транзакции:
+     * метрики пишутся после ее завершения, так что в них попадает и сама фиксация. Запрос вне транзакции
+     * считается отдельной фиксацией (autocommit).
+     */
+    public void trackOperation(String operation) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            throw new IllegalStateException("operation " + operation + " is not transactional");
+        }
+
+        ThreadCounts counts = THREAD_COUNTS.get();
+        long statements = counts.statements;
+        long commits = counts.commits;
+        OperationMeters operationMeters = this.operationMeters.computeIfAbsent(operation, OperationMeters::new);
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                operationMeters.statements.record(counts.statements - statements);
+                operationMeters.commits.record(counts.commits - commits);
+            }
+        });
+    }
+
+    /**
+     * Сводка по всем выполненным запросам, самые нагружающие БД (по суммарному времени) первыми.
+     */
+    public List<QueryStats> getStats() {
+        return meters.values().stream()
+                .map(QueryMeters::stats)
+                .sorted(Comparator.comparingDouble(QueryStats::totalMs).reversed())
+                .toList();
+    }
+
+    public record QueryStats(String query, long count, double totalMs, double meanMs, double maxMs,
+                             double meanRows, double errors) {
+    }
+
+    private void countStatement() {
+        ThreadCounts counts = THREAD_COUNTS.get();
+        counts.statements++;
+
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            counts.commits++;
+        } else if (!counts.commitCounterRegistered && TransactionSynchronizationManager.isSynchronizationActive()) {
+            counts.commitCounterRegistered = true;
+            TransactionSynchronizationManager.registerSynchronization(new CommitCounter(counts));
+        }
+    }
+
+    private static final class ThreadCounts {
+        private long statements;
+        private long commits;
+        // CommitCounter уже зарегистрирован в текущей транзакции потока
+        private boolean commitCounterRegistered;
+    }
+
+    // считает фиксацию транзакции раньше остальных синхронизаций, чтобы ее увидел trackOperation;
+    // регистрируется один раз на транзакцию, а на время приостановки транзакции снимает отметку о себе
+    private record CommitCounter(ThreadCounts counts) implements TransactionSynchronization {
+
+        @Override
+        public int getOrder() {
+            return Ordered.HIGHEST_PRECEDENCE;
+        }
+
+        @Override
+        public void suspend() {
+            counts.commitCounterRegistered = false;
+        }
+
+        @Override
+        public void resume() {
+            counts.commitCounterRegistered = true;
+        }
+
+        @Override
+        public void afterCompletion(int status) {
+            counts.commitCounterRegistered = false;
+            if (status == STATUS_COMMITTED) {
+                counts.commits++;
+            }
+        }
+    }
+
+    private final class OperationMeters {
+        private final DistributionSummary statements;
+        private final DistributionSummary commits;
+
+        private OperationMeters(String operation) {
+            statements = DistributionSummary.builder(OPERATION_STATEMENTS)
+                    .description("SQL statements per operation")
+                    .tag("operation", operation)
+                    .register(registry);
+            commits = DistributionSummary.builder(OPERATION_COMMITS)
+                    .description("Database commits per operation")
+                    .tag("operation", operation)
+                    .register(registry);
+        }
+    }
+
+    private final class QueryMeters {
+        private final String name;
+        private final Timer timer;
+        private final DistributionSummary rows;
+        private final Counter errors;
+
+        private QueryMeters(String storage, String query) {
+            name = storage + "." + query;
+            timer = Timer.builder(TIMER)
+                    .description("SQL query execution time")
+                    .tag("storage", storage)
+                    .tag("query", query)
+                    .register(registry);
+            rows = DistributionSummary.builder(ROWS)
+                    .description("Rows read or changed by SQL query")
+                    .tag("storage", storage)
+                    .tag("query", query)
+                    .register(registry);
+            errors = Counter.builder(ERRORS)
+                    .description("Failed SQL queries")
+                    .tag("storage", storage)
+                    .tag("query", query)
+                    .register(registry);
+        }
+
+        private QueryStats stats() {
+            return new QueryStats(name, timer.count(), timer.totalTime(TimeUnit.MILLISECONDS),
+                    timer.mean(TimeUnit.MILLISECONDS), timer.max(TimeUnit.MILLISECONDS), rows.mean(), errors.count());
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.AbstractSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import org.springframework.stereotype.Repository;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Проверка планов запросов хранилищ. Для каждой строковой константы с SELECT/UPDATE/DELETE в классах @Repository
+ * выполняется EXPLAIN, и в плане ищутся полные просмотры таблиц и индексов. Чтение отсортированного индекса
+ * с FETCH FIRST просмотром не считается: оно останавливается после первых строк.
+ * Запросы, которым полный просмотр нужен по смыслу (выгрузка всех строк), перечислены в expected-scans
+ * в виде ИмяКласса.ИМЯ_КОНСТАНТЫ.
+ */
+@Slf4j
+@Component
+public class QueryPlanDiagnostics {
+
+    // H2: "/* PUBLIC.FILMS.tableScan */", PostgreSQL: "Seq Scan on films"
+    private static final List<Pattern> TABLE_SCAN_PATTERNS = List.of(
+            Pattern.compile("/\\*\\s*\\w+\\.(\\w+)\\.tableScan\\b"),
+            Pattern.compile("Seq Scan on (\\w+)"));
+    // H2: "/* PUBLIC.FILMS_LIKES_COUNT_IDX */" - индекс без условия читается целиком
+    private static final Pattern INDEX_SCAN_PATTERN = Pattern.compile("/\\*\\s*\\w+\\.(\\w+)\\s*\\*/");
+    private static final Pattern SORTED_READ_PATTERN = Pattern.compile("/\\*\\s*index sorted\\s*\\*/");
+    private static final Pattern BOUNDED_READ_PATTERN = Pattern.compile("\\b(FETCH FIRST|LIMIT)\\b");
+
+    private static final Set<String> CHECKED_STATEMENTS = Set.of("SELECT", "WITH", "(SELECT", "UPDATE", "DELETE");
+
+    private static final String INDEX_TABLES_QUERY = """
+            SELECT index_name, table_name
+            FROM information_schema.indexes""";
+
+    // строку H2 приводит к типу колонки; с NULL условия вроде LIKE сворачиваются в FALSE,
+    // и план перестает показывать, как читается таблица
+    private static final SqlParameterSource DUMMY_PARAMETERS = parameters("1");
+    private static final SqlParameterSource NULL_PARAMETERS = parameters(null);
+
+    private final ApplicationContext context;
+    private final NamedParameterJdbcTemplate namedTemplate;
+    private final boolean explainOnStartup;
+    private final Set<String> expectedScans;
+
+    public QueryPlanDiagnostics(ApplicationContext context,
+                                NamedParameterJdbcTemplate namedTemplate,
+                                @Value("${filmorate.diagnostics.explain-on-startup:false}") boolean explainOnStartup,
+                                @Value("${filmorate.diagnostics.expected-scans:}") Set<String> expectedScans) {
+        this.context = context;
+        this.namedTemplate = namedTemplate;
+        this.explainOnStartup = explainOnStartup;
+        this.expectedScans = expectedScans;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void explainOnStartup() {
+        if (!explainOnStartup) {
+            return;
+        }
+
+        List<QueryPlan> plans = explainAll();
+        long unexpected = plans.stream().filter(QueryPlan::unexpectedScan).count();
+        long failed = plans.stream().filter(plan -> plan.error() != null).count();
+
+        for (QueryPlan plan : plans) {
+            if (plan.unexpectedScan()) {
+                log.warn("query {}.{} scans {}", plan.storage(), plan.query(), plan.tableScans());
+            } else if (plan.error() != null) {
+                log.warn("query {}.{} cannot be explained: {}", plan.storage(), plan.query(), plan.error());
+            }
+        }
+        log.info("query plans checked: {} queries, {} with unexpected table scans, {} failed",
+                plans.size(), unexpected, failed);
+    }
+
+    public List<QueryPlan> explainAll() {
+        Map<String, String> indexTables = indexTables();
+        List<QueryPlan> plans = new ArrayList<>();
+        for (Object storage : context.getBeansWithAnnotation(Repository.class).values()) {
+            Class<?> storageClass = AopUtils.getTargetClass(storage);
+            queriesOf(storageClass).forEach((name, sql) ->
+                    plans.add(explain(storageClass.getSimpleName(), name, sql, indexTables)));
+        }
+        plans.sort(Comparator.comparing(QueryPlan::storage).thenComparing(QueryPlan::query));
+        return plans;
+    }
+
+    private QueryPlan explain(String storage, String name, String sql, Map<String, String> indexTables) {
+        boolean expected = expectedScans.contains(storage + "." + name);
+        try {
+            String plan = explain(sql);
+            List<String> tableScans = tableScansOf(plan, indexTables);
+            return new QueryPlan(storage, name, tableScans, !tableScans.isEmpty() && !expected, plan, null);
+        } catch (DataAccessException e) {
+            return new QueryPlan(storage, name, List.of(), false, null, e.getMostSpecificCause().getMessage());
+        }
+    }
+
+    private String explain(String sql) {
+        List<String> plan;
+        try {
+            plan = namedTemplate.queryForList("EXPLAIN " + sql, DUMMY_PARAMETERS, String.class);
+        } catch (DataAccessException e) {
+            // строка не приводится к типу параметра, например к дате
+            plan = namedTemplate.queryForList("EXPLAIN " + sql, NULL_PARAMETERS, String.class);
+        }
+        return String.join("\n", plan);
+    }
+
+    private Map<String, String> indexTables() {
+        Map<String, String> indexTables = new HashMap<>();
+        try {
+            namedTemplate.getJdbcTemplate().query(INDEX_TABLES_QUERY, (RowCallbackHandler) rs ->
+                    indexTables.put(rs.getString("index_name").toLowerCase(Locale.ROOT),
+                            rs.getString("table_name").toLowerCase(Locale.ROOT)));
+        } catch (DataAccessException e) {
+            log.warn("cannot read index names: {}", e.getMessage());
+        }
+        return indexTables;
+    }
+
+    private static Map<String, String> queriesOf(Class<?> storageClass) {
+        Map<String, String> queries = new HashMap<>();
+        for (Field field : storageClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (!Modifier.isStatic(modifiers) || !Modifier.isFinal(modifiers) || field.getType() != String.class) {
+                continue;
+            }
+
+            try {
+                field.setAccessible(true);
+                String sql = ((String) field.get(null)).strip();
+                String statement = sql.split("\\s+", 2)[0].toUpperCase(Locale.ROOT);
+                if (CHECKED_STATEMENTS.contains(statement)) {
+                    queries.put(field.getName(), sql.endsWith(";") ? sql.substring(0, sql.length() - 1) : sql);
+                }
+            } catch (IllegalAccessException e) {
+                log.warn("cannot read query {}.{}", storageClass.getSimpleName(), field.getName());
+            }
+        }
+        return queries;
+    }
+
+    private static List<String> tableScansOf(String plan, Map<String, String> indexTables) {
+        Set<String> tables = new LinkedHashSet<>();
+        for (Pattern pattern : TABLE_SCAN_PATTERNS) {
+            Matcher matcher = pattern.matcher(plan);
+            while (matcher.find()) {
+                tables.add(matcher.group(1).toLowerCase(Locale.ROOT));
+            }
+        }
+
+        if (!SORTED_READ_PATTERN.matcher(plan).find() || !BOUNDED_READ_PATTERN.matcher(plan).find()) {
+            Matcher matcher = INDEX_SCAN_PATTERN.matcher(plan);
+            while (matcher.find()) {
+                String index = matcher.group(1).toLowerCase(Locale.ROOT);
+                String table = indexTables.get(index);
+                tables.add(table == null ? index : table + " (" + index + ")");
+            }
+        }
+        return List.copyOf(tables);
+    }
+
+    private static SqlParameterSource parameters(Object value) {
+        return new AbstractSqlParameterSource() {
+            @Override
+            public boolean hasValue(String paramName) {
+                return true;
+            }
+
+            @Override
+            public Object getValue(String paramName) {
+                return value;
+            }
+        };
+    }
+
+    public record QueryPlan(String storage, String query, List<String> tableScans, boolean unexpectedScan,
+                            String plan, String error) {
+    }
+}
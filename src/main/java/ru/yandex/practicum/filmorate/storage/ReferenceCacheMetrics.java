@@ -0,0 +1,34 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Публикует попадания и промахи кэшей справочников в метриках cache.gets{cache=..., result=hit|miss}.
+ */
+@Component
+public class ReferenceCacheMetrics implements MeterBinder {
+
+    private final DbFilmGenreStorage genreStorage;
+    private final DbFilmMpaStorage mpaStorage;
+    private final DbDirectorStorage directorStorage;
+
+    public ReferenceCacheMetrics(@Qualifier("db") DbFilmGenreStorage genreStorage,
+                                 @Qualifier("db") DbFilmMpaStorage mpaStorage,
+                                 @Qualifier("db") DbDirectorStorage directorStorage) {
+        this.genreStorage = genreStorage;
+        this.mpaStorage = mpaStorage;
+        this.directorStorage = directorStorage;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        new CaffeineCacheMetrics<>(genreStorage.getCache(), "genres", Tags.empty()).bindTo(registry);
+        new CaffeineCacheMetrics<>(mpaStorage.getCache(), "mpa", Tags.empty()).bindTo(registry);
+        new CaffeineCacheMetrics<>(directorStorage.getCache(), "directors", Tags.empty()).bindTo(registry);
+    }
+}
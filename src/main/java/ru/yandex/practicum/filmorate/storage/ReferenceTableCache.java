@@ -0,0 +1,78 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Кэш небольшой справочной таблицы: таблица читается целиком одним запросом
+ * и хранится как индекс по id в порядке выборки. Любое изменение таблицы сбрасывает кэш.
+ * Записи модели изменяемые, поэтому наружу отдаются только копии: правка полученного объекта не меняет кэш.
+ */
+class ReferenceTableCache<V> {
+
+    private static final String SNAPSHOT_KEY = "all";
+
+    private final Cache<String, Map<Integer, V>> cache = Caffeine.newBuilder()
+            .recordStats()
+            .build();
+
+    private final Supplier<List<V>> loader;
+    private final Function<V, Integer> idGetter;
+    private final UnaryOperator<V> copier;
+
+    ReferenceTableCache(Supplier<List<V>> loader, Function<V, Integer> idGetter, UnaryOperator<V> copier) {
+        this.loader = loader;
+        this.idGetter = idGetter;
+        this.copier = copier;
+    }
+
+    List<V> getAll() {
+        return snapshot().values().stream().map(copier).toList();
+    }
+
+    Optional<V> getById(Integer id) {
+        return Optional.ofNullable(snapshot().get(id)).map(copier);
+    }
+
+    /**
+     * Возвращает найденные записи без повторов в порядке id; отсутствующие id пропускаются.
+     */
+    List<V> getByIds(Collection<Integer> ids) {
+        Map<Integer, V> snapshot = snapshot();
+        return ids.stream()
+                .filter(Objects::nonNull)
+                .distinct()
+                .sorted()
+                .map(snapshot::get)
+                .filter(Objects::nonNull)
+                .map(copier)
+                .toList();
+    }
+
+    void invalidate() {
+        cache.invalidateAll();
+    }
+
+    Cache<String, Map<Integer, V>> getCache() {
+        return cache;
+    }
+
+    private Map<Integer, V> snapshot() {
+        return cache.get(SNAPSHOT_KEY, key -> {
+            Map<Integer, V> byId = new LinkedHashMap<>();
+            loader.get().forEach(value -> byId.put(idGetter.apply(value), copier.apply(value)));
+            return Collections.unmodifiableMap(byId);
+        });
+    }
+}
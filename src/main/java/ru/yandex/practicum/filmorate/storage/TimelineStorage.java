@@ -0,0 +1,22 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import java.util.List;
+import java.util.Map;
+
+public interface TimelineStorage {
+
+    /**
+     * Возвращает id последних limit событий ленты пользователя, от старых к новым.
+     */
+    List<Long> getEventIds(long userId, int limit);
+
+    /**
+     * Добавляет каждое событие в ленты указанных для него пользователей одним пакетом.
+     */
+    void add(Map<Long, List<Long>> userIdsByEventId);
+
+    /**
+     * Удаляет из ленты каждого пользователя события старше указанного.
+     */
+    void trim(Map<Long, Long> oldestEventIdByUser);
+}
@@ -2,6 +2,18 @@ package ru.yandex.practicum.filmorate.storage;
 
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Consumer;
+
 public interface UserStorage extends AbstractStorage<Long, User> {
 
+    List<User> getPage(long afterId, int limit);
+
+    boolean existsById(long userId);
+
+    Set<Long> getExistingIds(Collection<Long> userIds);
+
+    void streamAll(Consumer<User> consumer);
 }
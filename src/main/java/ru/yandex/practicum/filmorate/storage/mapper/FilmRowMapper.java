@@ -25,7 +25,7 @@ public class FilmRowMapper implements RowMapper<Film> {
                 .releaseDate(rs.getDate("release_date").toLocalDate())
                 .duration(rs.getInt("duration"))
                 .mpa(mpa)
-                .rate(rs.getInt("rate"))
+                .rate(rs.getInt("likes_count"))
                 .genres(new ArrayList<>())
                 .build();
     }
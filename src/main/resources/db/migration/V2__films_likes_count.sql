@@ -0,0 +1,7 @@
+-- счетчик лайков фильма, денормализованный из film_likes; для существующих фильмов заполняется по film_likes
+ALTER TABLE films ADD COLUMN IF NOT EXISTS likes_count INTEGER NOT NULL DEFAULT 0;
+ALTER TABLE films ADD CONSTRAINT films_likes_count_non_negative CHECK (likes_count >= 0);
+UPDATE films f
+SET likes_count = (SELECT COUNT(*) FROM film_likes fl WHERE fl.film_id = f.film_id);
+CREATE INDEX IF NOT EXISTS films_likes_count_idx ON films (likes_count DESC, film_id);
+COMMENT ON COLUMN films.likes_count IS 'Количество лайков фильма (денормализовано из film_likes)';
@@ -0,0 +1,3 @@
+-- индексы для выборок, которые без них читали таблицу целиком
+CREATE INDEX IF NOT EXISTS films_release_date_idx ON films (release_date);
+CREATE INDEX IF NOT EXISTS friendship_friend_id_status_idx ON friendship (friend_id, status);
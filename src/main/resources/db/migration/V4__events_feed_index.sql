@@ -0,0 +1,2 @@
+-- лента пользователя и события знаменитостей в ленте друзей читаются с конца по (user_id, event_id)
+CREATE INDEX IF NOT EXISTS events_user_id_event_id_idx ON events (user_id, event_id);
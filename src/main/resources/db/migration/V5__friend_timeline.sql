@@ -0,0 +1,10 @@
+CREATE TABLE IF NOT EXISTS friend_timeline (
+    user_id bigint NOT NULL,
+    event_id bigint NOT NULL,
+    CONSTRAINT friend_timeline_pk PRIMARY KEY (user_id, event_id),
+    CONSTRAINT fk_friend_timeline_user_id FOREIGN KEY(user_id) REFERENCES users (user_id) ON DELETE CASCADE,
+    CONSTRAINT fk_friend_timeline_event_id FOREIGN KEY(event_id) REFERENCES events (event_id) ON DELETE CASCADE
+);
+COMMENT ON TABLE friend_timeline IS 'Лента активности друзей: события, разосланные пользователю при записи';
+COMMENT ON COLUMN friend_timeline.user_id IS 'ID пользователя, которому показывается событие';
+COMMENT ON COLUMN friend_timeline.event_id IS 'ID события друга';
@@ -4,19 +4,26 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.junit.jupiter.api.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.observability.AutoConfigureObservability;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.annotation.Import;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
+import ru.yandex.practicum.filmorate.controller.PageCursor;
 import ru.yandex.practicum.filmorate.dto.*;
 import ru.yandex.practicum.filmorate.mapper.*;
 import ru.yandex.practicum.filmorate.model.*;
+import ru.yandex.practicum.filmorate.util.QueryCounter;
 import ru.yandex.practicum.filmorate.util.TestUtil;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -25,11 +32,19 @@ import static ru.yandex.practicum.filmorate.util.TestUtil.*;
 
 @Slf4j
 @AutoConfigureTestDatabase
+@AutoConfigureObservability(tracing = false)
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@Import(QueryCounter.class)
 class FilmorateApplicationTests {
 
+	private static final String OPERATION_COMMITS_URI =
+			"/actuator/metrics/filmorate.operation.commits?tag=operation:film.update";
+	private static final String OPERATION_STATEMENTS_URI =
+			"/actuator/metrics/filmorate.operation.statements?tag=operation:film.update";
+
 	private final ServletWebServerApplicationContext webServerAppCtxt;
+	private final QueryCounter queryCounter;
 
 	private RestClient client;
 
@@ -58,6 +73,86 @@ class FilmorateApplicationTests {
 		deleteAllUsers();
 	}
 
+	@Test
+	void givenSchemaIndexes_whenCheckQueryPlans_gotOnlyKnownUnexpectedScans() {
+		Map<?, ?>[] plans = get("/actuator/queryplans", Map[].class).getBody();
+
+		assertNotNull(plans);
+		assertTrue(plans.length > 0);
+		List<String> unexpected = new ArrayList<>();
+		for (Map<?, ?> plan : plans) {
+			String query = plan.get("storage") + "." + plan.get("query");
+			assertNull(plan.get("error"), query);
+			if (Boolean.TRUE.equals(plan.get("unexpectedScan"))) {
+				unexpected.add(query);
+			}
+		}
+		// поиск по подстроке без готового FilmSearchIndex и общий топ отзывов читают таблицы целиком,
+		// но в expected-scans не входят: это выборки, а не выгрузки
+		assertEquals(List.of(
+				"DbFilmReviewStorage.FIND_WITH_LIMIT_QUERY",
+				"DbFilmStorage.FIND_FILMS_BY_DIRECTOR_QUERY",
+				"DbFilmStorage.FIND_FILMS_BY_FILM_AND_DIRECTOR_QUERY",
+				"DbFilmStorage.FIND_FILMS_BY_TITLE_QUERY"), unexpected.stream().sorted().toList());
+	}
+
+	@Test
+	void givenFilmRead_whenGetQueryStats_gotQueryTaggedWithConstantName() {
+		Film film = createFilm();
+		getFilmById(film.getId());
+
+		Map<?, ?>[] stats = get("/actuator/queries", Map[].class).getBody();
+
+		assertNotNull(stats);
+		Map<?, ?> findById = Arrays.stream(stats)
+				.filter(s -> "DbFilmStorage.FIND_BY_ID_QUERY".equals(s.get("query")))
+				.findAny()
+				.orElseThrow();
+		assertTrue(((Number) findById.get("count")).longValue() > 0);
+		assertTrue(Arrays.stream(stats).noneMatch(s -> s.get("query").toString().endsWith(".other")),
+				"every query should come from a named constant");
+	}
+
+	@Test
+	void givenFilmUpdate_whenGetOperationMetrics_gotOneCommitAndExactStatements() {
+		Film film = createFilm("name;desc;2024-01-01;120;G;Комедия,Драма");
+		UpdateFilmRequest updateFilmRequest = FilmMapper.mapToUpdateFilmRequest(film);
+		updateFilmRequest.setName("renamed");
+		put("/films", updateFilmRequest, Film.class);
+		Map<?, ?> commitsBefore = get(OPERATION_COMMITS_URI, Map.class).getBody();
+		Map<?, ?> statementsBefore = get(OPERATION_STATEMENTS_URI, Map.class).getBody();
+
+		updateFilmRequest.setName("renamed again");
+		updateFilmRequest.setGenres(genreDto("Драма,Триллер"));
+		queryCounter.reset();
+		put("/films", updateFilmRequest, Film.class);
+		int statements = queryCounter.count();
+
+		Map<?, ?> commitsAfter = get(OPERATION_COMMITS_URI, Map.class).getBody();
+		Map<?, ?> statementsAfter = get(OPERATION_STATEMENTS_URI, Map.class).getBody();
+		assertEquals(1.0, getMeasurement(commitsAfter, "COUNT") - getMeasurement(commitsBefore, "COUNT"));
+		assertEquals(1.0, getMeasurement(commitsAfter, "TOTAL") - getMeasurement(commitsBefore, "TOTAL"));
+		assertEquals(statements,
+				getMeasurement(statementsAfter, "TOTAL") - getMeasurement(statementsBefore, "TOTAL"));
+		assertTrue(statements <= 8, "statements: " + statements);
+	}
+
+	@Test
+	void givenPopularFilmsRequest_whenScrapePrometheus_gotRouteTimerWithSloBuckets() {
+		getPopularFilms();
+
+		String scrape = get("/actuator/prometheus", String.class).getBody();
+
+		assertNotNull(scrape);
+		List<String> popularBuckets = scrape.lines()
+				.filter(line -> line.startsWith("http_server_requests_seconds_bucket{"))
+				.filter(line -> line.contains("controller=\"LikeController\""))
+				.filter(line -> line.contains("uri=\"/films/popular\""))
+				.toList();
+		assertTrue(popularBuckets.stream().anyMatch(line -> line.contains("le=\"0.025\"")),
+				"route SLO of 25ms should be exported as a bucket");
+	}
+
 	@Nested
 	class UserTests {
 
@@ -184,6 +279,21 @@ class FilmorateApplicationTests {
 				assertUserEquals(updatedUser, actualUser);
 			}
 
+			@Test
+			void givenRequestWithoutGenres_whenUpdate_getGenresKept() {
+				Film film = createFilm("name1;desc1;2024-01-01;120;G;Комедия,Драма");
+
+				UpdateFilmRequest updateFilmRequest = FilmMapper.mapToUpdateFilmRequest(film);
+				updateFilmRequest.setName("renamed");
+				updateFilmRequest.setGenres(null);
+				updateFilm(updateFilmRequest);
+
+				Film updatedFilm = getFilmById(film.getId());
+
+				assertEquals("renamed", updatedFilm.getName());
+				assertEquals(Set.of("Комедия","Драма"), getGenreNames(updatedFilm));
+			}
+
 			@Test
 			void givenNonExistingUser_whenUpdate_getNotFound() {
 				UpdateUserRequest updateUserRequest = UpdateUserRequest.builder()
@@ -457,6 +567,148 @@ class FilmorateApplicationTests {
 				assertEquals(expectedNames, actualNames);
 			}
 
+			@Test
+			void givenFilms_whenGetByPages_getAllWithCursor() {
+				Film film1 = createFilm("name1;desc1;2024-01-01;120;G;Комедия");
+				Film film2 = createFilm("name2;desc2;2024-02-01;180;G;Драма");
+				Film film3 = createFilm("name3;desc3;2024-03-01;90;G;Комедия");
+
+				ResponseEntity<Film[]> firstPage = get("/films?limit=2", Film[].class);
+				String cursor = firstPage.getHeaders().getFirst("X-Next-Cursor");
+				ResponseEntity<Film[]> secondPage = get("/films?limit=2&cursor=" + cursor, Film[].class);
+
+				assertEquals(List.of(film1.getId(), film2.getId()),
+						Arrays.stream(firstPage.getBody()).map(Film::getId).toList());
+				assertEquals(List.of(film3.getId()),
+						Arrays.stream(secondPage.getBody()).map(Film::getId).toList());
+				assertNull(secondPage.getHeaders().getFirst("X-Next-Cursor"));
+			}
+
+			@Test
+			void givenMoreFilmsThanPage_whenGetWithoutCursorAndLimit_getDefaultPageWithCursor() {
+				for (int i = 0; i <= PageCursor.DEFAULT_LIMIT; i++) {
+					createFilm("name" + i + ";desc;2024-01-01;120;G;Комедия");
+				}
+
+				ResponseEntity<Film[]> response = get("/films", Film[].class);
+				String cursor = response.getHeaders().getFirst("X-Next-Cursor");
+				ResponseEntity<Film[]> lastPage = get("/films?cursor=" + cursor, Film[].class);
+
+				assertEquals(PageCursor.DEFAULT_LIMIT, response.getBody().length);
+				assertNotNull(cursor);
+				assertEquals(1, lastPage.getBody().length);
+				assertNull(lastPage.getHeaders().getFirst("X-Next-Cursor"));
+			}
+
+			@Test
+			void givenFilms_whenExport_getOneJsonLinePerFilm() {
+				Film film1 = createFilm("name1;desc1;2024-01-01;120;G;Комедия,Драма");
+				Film film2 = createFilm("name2;desc2;2024-02-01;180;G;Драма");
+
+				ResponseEntity<byte[]> response = get("/films/export", byte[].class);
+				String[] lines = new String(response.getBody(), StandardCharsets.UTF_8).split("\n");
+
+				assertEquals("application/x-ndjson", response.getHeaders().getContentType().toString());
+				assertEquals(2, lines.length);
+				assertTrue(lines[0].contains("\"id\":" + film1.getId()));
+				assertTrue(lines[0].contains("Комедия"));
+				assertTrue(lines[1].contains("\"id\":" + film2.getId()));
+			}
+
+			@Test
+			void givenNdjsonWithInvalidRows_whenImport_getValidRowsImported() {
+				Film film = createFilm("name;desc;2024-01-01;120;G;Комедия");
+				String row = "{\"name\":\"%s\",\"description\":\"desc\",\"releaseDate\":\"2024-01-01\","
+						+ "\"duration\":90,\"mpa\":{\"id\":%d},\"genres\":[{\"id\":%d}]}";
+				long mpaId = film.getMpa().getId();
+				long genreId = film.getGenres().get(0).getId();
+				String body = row.formatted("imported1", mpaId, genreId) + "\n"
+						+ "{\"name\":\"\"}\n"
+						+ "not json\n"
+						+ row.formatted("imported2", mpaId, genreId) + "\n";
+
+				Map<?, ?> report = client.post().uri("/films/bulk")
+						.contentType(MediaType.parseMediaType("application/x-ndjson"))
+						.body(body)
+						.retrieve()
+						.toEntity(Map.class)
+						.getBody();
+
+				assertNotNull(report);
+				assertEquals(4, report.get("total"));
+				assertEquals(2, report.get("imported"));
+				assertEquals(2, report.get("failed"));
+				assertEquals(List.of(2, 3), ((List<?>) report.get("errors")).stream()
+						.map(error -> ((Map<?, ?>) error).get("row"))
+						.toList());
+
+				List<Film> imported = Arrays.stream(get("/films", Film[].class).getBody())
+						.filter(f -> f.getName().startsWith("imported"))
+						.toList();
+				assertEquals(2, imported.size());
+				assertEquals(Set.of("Комедия"), getGenreNames(imported.get(0)));
+			}
+
+			@Test
+			void givenNullElementsAndLines_whenImport_getRowErrors() {
+				Film film = createFilm("name;desc;2024-01-01;120;G;Комедия");
+				String row = "{\"name\":\"imported\",\"description\":\"desc\",\"releaseDate\":\"2024-01-01\","
+						+ "\"duration\":90,\"mpa\":{\"id\":" + film.getMpa().getId() + "}}";
+
+				Map<?, ?> arrayReport = client.post().uri("/films/bulk")
+						.contentType(MediaType.APPLICATION_JSON)
+						.body("[" + row + ", null]")
+						.retrieve()
+						.toEntity(Map.class)
+						.getBody();
+				Map<?, ?> ndjsonReport = client.post().uri("/films/bulk")
+						.contentType(MediaType.parseMediaType("application/x-ndjson"))
+						.body("null\n" + row + "\n")
+						.retrieve()
+						.toEntity(Map.class)
+						.getBody();
+
+				assertNotNull(arrayReport);
+				assertEquals(1, arrayReport.get("imported"));
+				assertEquals(List.of(2), ((List<?>) arrayReport.get("errors")).stream()
+						.map(error -> ((Map<?, ?>) error).get("row"))
+						.toList());
+				assertNotNull(ndjsonReport);
+				assertEquals(1, ndjsonReport.get("imported"));
+				assertEquals(List.of(1), ((List<?>) ndjsonReport.get("errors")).stream()
+						.map(error -> ((Map<?, ?>) error).get("row"))
+						.toList());
+			}
+
+			@Test
+			void givenNdjsonAccepted_whenImport_getProgressLinesAndFinalReport() {
+				Film film = createFilm("name;desc;2024-01-01;120;G;Комедия");
+				String row = "{\"name\":\"imported\",\"description\":\"desc\",\"releaseDate\":\"2024-01-01\","
+						+ "\"duration\":90,\"mpa\":{\"id\":" + film.getMpa().getId() + "}}\n";
+
+				String response = client.post().uri("/films/bulk")
+						.contentType(MediaType.parseMediaType("application/x-ndjson"))
+						.accept(MediaType.parseMediaType("application/x-ndjson"))
+						.body(row + "{\"name\":\"\"}\n" + row)
+						.retrieve()
+						.body(String.class);
+
+				assertNotNull(response);
+				String[] lines = response.split("\n");
+				assertEquals(2, lines.length);
+				assertTrue(lines[0].contains("\"imported\":2"));
+				assertTrue(lines[0].contains("\"done\":false"));
+				assertTrue(lines[1].contains("\"failed\":1"));
+				assertTrue(lines[1].contains("\"done\":true"));
+				assertTrue(lines[1].contains("\"row\":2"));
+			}
+
+			@Test
+			void givenInvalidCursor_whenGetAll_getBadRequest() {
+				assertThrows(HttpClientErrorException.BadRequest.class,
+						() -> get("/films?cursor=???", Film[].class));
+			}
+
 			@Test
 			void givenExistingFilmId_whenGetById_getIt() {
 				Film film1 = createFilm("name;desc;2024-01-01;120;G;Комедия,Драма");
@@ -788,6 +1040,256 @@ class FilmorateApplicationTests {
 			assertEquals(filmsByYear.size(), filmsByYearAndGenres.size(), "Выборка по году отличается от " +
 					"выборки по году И жанру");
 		}
+
+		@Test
+		void givenLikedFilms_whenGetPopularByPages_gotEveryFilmOnceInRatingOrder() {
+			like(films.get(3), users.get(0));
+			like(films.get(3), users.get(1));
+			like(films.get(5), users.get(2));
+
+			List<Long> expectedIds = getPopularFilms(films.size()).stream().map(Film::getId).toList();
+
+			List<Long> actualIds = new ArrayList<>();
+			String url = "/films/popular?count=4";
+			String cursor = null;
+			int pages = 0;
+			do {
+				ResponseEntity<FilmDto[]> page = get(cursor == null ? url : url + "&cursor=" + cursor, FilmDto[].class);
+				Arrays.stream(page.getBody()).map(FilmDto::getId).forEach(actualIds::add);
+				cursor = page.getHeaders().getFirst("X-Next-Cursor");
+				pages++;
+			} while (cursor != null);
+
+			assertEquals(3, pages);
+			assertEquals(expectedIds, actualIds);
+			assertEquals(films.get(3).getId(), actualIds.get(0));
+			assertEquals(films.get(5).getId(), actualIds.get(1));
+		}
+
+		@Test
+		void givenPageEndingOnLastFilm_whenGetPopular_gotNoCursor() {
+			ResponseEntity<FilmDto[]> page = get("/films/popular?count=" + films.size(), FilmDto[].class);
+
+			assertEquals(films.size(), page.getBody().length);
+			assertNull(page.getHeaders().getFirst("X-Next-Cursor"));
+		}
+
+		@Test
+		void givenLikedFilms_whenUserDeleted_gotPopularWithoutHisLikes() {
+			like(films.get(3), users.get(0));
+			like(films.get(3), users.get(1));
+			like(films.get(5), users.get(2));
+			like(films.get(5), users.get(3));
+			like(films.get(5), users.get(4));
+
+			delete("/users/" + users.get(2).getId());
+			delete("/users/" + users.get(3).getId());
+
+			List<Film> films = getPopularFilms(2);
+			assertEquals(this.films.get(3).getId(), films.get(0).getId());
+			assertEquals(2, films.get(0).getRate());
+			assertEquals(this.films.get(5).getId(), films.get(1).getId());
+			assertEquals(1, films.get(1).getRate());
+		}
+
+		@Test
+		void givenBulkLikes_whenApply_gotResultPerOperationAndPopularUpdated() {
+			like(films.get(1), users.get(0));
+			List<Map<String, Object>> operations = List.of(
+					Map.of("filmId", films.get(2).getId(), "userId", users.get(0).getId(), "operation", "ADD"),
+					Map.of("filmId", films.get(2).getId(), "userId", users.get(1).getId(), "operation", "ADD"),
+					Map.of("filmId", films.get(2).getId(), "userId", users.get(1).getId(), "operation", "ADD"),
+					Map.of("filmId", films.get(1).getId(), "userId", users.get(0).getId(), "operation", "REMOVE"),
+					Map.of("filmId", -1, "userId", users.get(0).getId(), "operation", "ADD"));
+
+			Map<?, ?>[] results = post("/films/likes/bulk", operations, Map[].class).getBody();
+
+			assertNotNull(results);
+			assertEquals(List.of("LIKED", "LIKED", "UNCHANGED", "DISLIKED", "FILM_NOT_FOUND"),
+					Arrays.stream(results).map(r -> r.get("result")).toList());
+			List<Film> popular = getPopularFilms(1);
+			assertEquals(films.get(2).getId(), popular.get(0).getId());
+			assertEquals(2, popular.get(0).getRate());
+			assertEquals(0, get("/actuator/leaderboard", Map.class).getBody().get("mismatchedCount"));
+		}
+
+		@Test
+		void givenParallelBulkAndSingleLikesOfSamePairs_whenApply_gotNoErrorsAndExactLikesCount() throws Exception {
+			List<User> likers = users.subList(0, 5);
+			List<Map<String, Object>> operations = new ArrayList<>();
+			films.forEach(film -> likers.forEach(user -> operations.add(
+					Map.of("filmId", film.getId(), "userId", user.getId(), "operation", "ADD"))));
+
+			ExecutorService executor = Executors.newFixedThreadPool(8);
+			try {
+				List<Future<?>> requests = new ArrayList<>();
+				for (int i = 0; i < 4; i++) {
+					requests.add(executor.submit(() -> post("/films/likes/bulk", operations, Map[].class)));
+				}
+				films.forEach(film -> likers.forEach(user -> requests.add(executor.submit(() -> like(film, user)))));
+				for (Future<?> request : requests) {
+					request.get(30, TimeUnit.SECONDS);
+				}
+			} finally {
+				executor.shutdownNow();
+			}
+
+			for (Film film : films) {
+				assertEquals(likers.size(), getFilmById(film.getId()).getRate());
+			}
+			assertEquals(0, get("/actuator/leaderboard", Map.class).getBody().get("mismatchedCount"));
+		}
+
+		@Test
+		void givenLikesAndDislikes_whenCheckLeaderboard_gotNoMismatches() {
+			like(films.get(1), users.get(0));
+			like(films.get(2), users.get(0));
+			dislike(films.get(1), users.get(0));
+
+			Map<?, ?> report = get("/actuator/leaderboard", Map.class).getBody();
+
+			assertNotNull(report);
+			assertEquals(0, report.get("mismatchedCount"));
+		}
+
+		@Test
+		void givenLikeAndDislike_whenGetFeedRightAway_gotBothEventsInOrder() {
+			like(films.get(1), users.get(0));
+			dislike(films.get(1), users.get(0));
+
+			Map<?, ?>[] feed = get("/users/" + users.get(0).getId() + "/feed", Map[].class).getBody();
+
+			assertNotNull(feed);
+			assertEquals(2, feed.length);
+			assertEquals(List.of("ADD", "REMOVE"), Arrays.stream(feed).map(e -> e.get("operation")).toList());
+			assertEquals(films.get(1).getId(), ((Number) feed[0].get("entityId")).longValue());
+		}
+
+		@Test
+		void givenThreeEvents_whenGetFeedByPages_gotLatestFirstPageAndEarlierWithCursor() {
+			like(films.get(0), users.get(0));
+			like(films.get(1), users.get(0));
+			like(films.get(2), users.get(0));
+			String feedUrl = "/users/" + users.get(0).getId() + "/feed?limit=2";
+
+			ResponseEntity<Map[]> lastPage = get(feedUrl, Map[].class);
+			String cursor = lastPage.getHeaders().getFirst("X-Next-Cursor");
+			ResponseEntity<Map[]> firstPage = get(feedUrl + "&before=" + cursor, Map[].class);
+
+			assertEquals(List.of(films.get(1).getId(), films.get(2).getId()), Arrays.stream(lastPage.getBody())
+					.map(e -> ((Number) e.get("entityId")).longValue()).toList());
+			assertEquals(List.of(films.get(0).getId()), Arrays.stream(firstPage.getBody())
+					.map(e -> ((Number) e.get("entityId")).longValue()).toList());
+			assertNull(firstPage.getHeaders().getFirst("X-Next-Cursor"));
+		}
+
+		@Test
+		void givenFriendLikes_whenGetFriendsFeed_gotFriendEventsOnly() {
+			put("/users/" + users.get(0).getId() + "/friends/" + users.get(1).getId(), ResponseDto.class);
+			like(films.get(0), users.get(1));
+			like(films.get(1), users.get(2));
+
+			Map<?, ?>[] feed = get("/users/" + users.get(0).getId() + "/feed/friends", Map[].class).getBody();
+			Map<?, ?>[] friendFeed = get("/users/" + users.get(1).getId() + "/feed/friends", Map[].class).getBody();
+
+			assertNotNull(feed);
+			assertEquals(1, feed.length);
+			assertEquals(users.get(1).getId(), ((Number) feed[0].get("userId")).longValue());
+			assertEquals(films.get(0).getId(), ((Number) feed[0].get("entityId")).longValue());
+			assertNotNull(friendFeed);
+			assertEquals(0, friendFeed.length);
+		}
+
+		@Test
+		void givenSimilarUsers_whenGetRecommendations_gotFilmsOfMostSimilar() {
+			like(films.get(0), users.get(0));
+			like(films.get(1), users.get(0));
+
+			like(films.get(0), users.get(1));
+			like(films.get(1), users.get(1));
+			like(films.get(2), users.get(1));
+
+			like(films.get(0), users.get(2));
+			like(films.get(3), users.get(2));
+			like(films.get(4), users.get(2));
+			like(films.get(5), users.get(2));
+
+			List<Long> recommendations = getRecommendations(users.get(0)).stream().map(Film::getId).toList();
+
+			assertEquals(films.get(2).getId(), recommendations.get(0));
+			assertFalse(recommendations.contains(films.get(0).getId()));
+			assertFalse(recommendations.contains(films.get(1).getId()));
+		}
+
+		@Test
+		void givenDislike_whenGetRecommendations_gotFilmRemoved() {
+			like(films.get(0), users.get(0));
+			like(films.get(0), users.get(1));
+			like(films.get(1), users.get(1));
+
+			dislike(films.get(1), users.get(1));
+
+			assertEmpty(getRecommendations(users.get(0)));
+		}
+
+		@Test
+		void givenNeighbourDislikedCommonFilm_whenGetRecommendations_gotHisFilmsRemoved() {
+			like(films.get(0), users.get(0));
+			like(films.get(0), users.get(1));
+			like(films.get(1), users.get(1));
+			assertEquals(List.of(films.get(1).getId()),
+					getRecommendations(users.get(0)).stream().map(Film::getId).toList());
+
+			// у users[1] больше нет соседей, но пересчитаться должен и users[0], у которого он был соседом
+			dislike(films.get(0), users.get(1));
+
+			assertEmpty(getRecommendations(users.get(0)));
+		}
+
+		@Test
+		void givenNeighbourDeleted_whenGetRecommendations_gotHisFilmsRemoved() {
+			like(films.get(0), users.get(0));
+			like(films.get(0), users.get(1));
+			like(films.get(1), users.get(1));
+
+			delete("/users/" + users.get(1).getId());
+
+			assertEmpty(getRecommendations(users.get(0)));
+		}
+
+		@Test
+		void givenLikedFilms_whenSuggest_gotMatchingByWordPrefixOrderedByLikes() {
+			// "name 1" - префикс фильмов 1, 10 и 11
+			like(films.get(9), users.get(0));
+			like(films.get(9), users.get(1));
+			like(films.get(10), users.get(0));
+
+			List<Long> suggestions = Arrays.stream(getSuggestions("Name 1", 10)).map(FilmSuggestionDto::getId).toList();
+			assertEquals(List.of(films.get(9).getId(), films.get(10).getId(), films.get(0).getId()), suggestions);
+
+			dislike(films.get(9), users.get(0));
+			dislike(films.get(9), users.get(1));
+
+			suggestions = Arrays.stream(getSuggestions("name 1", 2)).map(FilmSuggestionDto::getId).toList();
+			assertEquals(List.of(films.get(10).getId(), films.get(0).getId()), suggestions);
+		}
+
+		@Test
+		void givenRenamedFilm_whenSuggest_gotNewName() {
+			put("/films", UpdateFilmRequest.builder()
+					.id(films.get(0).getId())
+					.name("Другое название")
+					.description("film desc 1")
+					.releaseDate(LocalDate.of(2010, 1, 1))
+					.duration(20)
+					.mpa(mpaDto("G"))
+					.build(), FilmDto.class);
+
+			FilmSuggestionDto[] suggestions = getSuggestions("назв", 10);
+			assertEquals(1, suggestions.length);
+			assertEquals("Другое название", suggestions[0].getName());
+			assertEquals(2, getSuggestions("name 1", 10).length);
+		}
 	}
 
 	@Nested
@@ -1438,6 +1940,15 @@ class FilmorateApplicationTests {
 		return delete("/films/" + film.getId() + "/like/" + user.getId(), ResponseDto.class).getBody();
 	}
 
+	private FilmSuggestionDto[] getSuggestions(String prefix, int limit) {
+		return get("/films/suggest?prefix=" + prefix + "&limit=" + limit, FilmSuggestionDto[].class).getBody();
+	}
+
+	private List<Film> getRecommendations(User user) {
+		FilmDto[] dtos = get("/users/" + user.getId() + "/recommendations", FilmDto[].class).getBody();
+		return Arrays.stream(dtos).map(FilmMapper::mapToFilm).toList();
+	}
+
 	private List<Film> getPopularFilms() {
 		FilmDto[] dtos = get("/films/popular", FilmDto[].class).getBody();
 		return Arrays.stream(dtos).map(FilmMapper::mapToFilm).toList();
@@ -1593,6 +2104,16 @@ class FilmorateApplicationTests {
 		delete("/reviews/" + review.getReviewId() + "/dislike/" + user.getId());
 	}
 
+	private double getMeasurement(Map<?, ?> metric, String statistic) {
+		assertNotNull(metric);
+		return ((List<?>) metric.get("measurements")).stream()
+				.map(m -> (Map<?, ?>) m)
+				.filter(m -> statistic.equals(m.get("statistic")))
+				.map(m -> ((Number) m.get("value")).doubleValue())
+				.findAny()
+				.orElseThrow();
+	}
+
 	private <T> ResponseEntity<T> get(String uri, Class<T> clazz) {
 		log.info("get {}", uri);
 		return client.get().uri(uri).retrieve().toEntity(clazz);
@@ -0,0 +1,195 @@
+package ru.yandex.practicum.filmorate.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.EventType;
+import ru.yandex.practicum.filmorate.model.Operation;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
+
+public class EventWriterTest {
+
+    private static final Duration NEVER = Duration.ofHours(1);
+
+    private final RecordingEventStorage storage = new RecordingEventStorage();
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+
+    @Test
+    void givenFullQueue_whenWrite_gotEventWrittenInlineAfterQueuedOnes() {
+        EventWriter writer = writer(1);
+
+        writer.write(event(1L, 10L));
+        writer.write(event(1L, 11L));
+
+        assertEquals(List.of(10L, 11L), storage.savedEntityIds());
+        assertEquals(1, registry.get("filmorate.events.inline").functionCounter().count());
+        assertEquals(2, registry.get("filmorate.events.written").functionCounter().count());
+        assertEquals(0, registry.get("filmorate.events.queue.size").gauge().value());
+    }
+
+    @Test
+    void givenQueuedEvents_whenShutdown_gotAllWritten() {
+        EventWriter writer = writer(100);
+        writer.start();
+
+        writer.write(event(1L, 10L));
+        writer.write(event(2L, 11L));
+        writer.write(event(1L, 12L));
+        writer.shutdown();
+
+        assertEquals(List.of(10L, 11L, 12L), storage.savedEntityIds());
+        assertEquals(0, registry.get("filmorate.events.queue.size").gauge().value());
+    }
+
+    @Test
+    void givenFailingBatch_whenFlush_gotOtherEventsWrittenOneByOne() {
+        EventWriter writer = writer(100);
+        storage.failingUserId = 2L;
+
+        writer.write(event(1L, 10L));
+        writer.write(event(2L, 11L));
+        writer.write(event(1L, 12L));
+        assertEquals(3, registry.get("filmorate.events.queue.size").gauge().value());
+        writer.flush();
+
+        assertEquals(List.of(10L, 12L), storage.savedEntityIds());
+        assertEquals(2, registry.get("filmorate.events.written").functionCounter().count());
+        assertEquals(1, registry.get("filmorate.events.failed").functionCounter().count());
+    }
+
+    @Test
+    void givenOtherUserPending_whenFlushUser_gotNothingWritten() {
+        EventWriter writer = writer(100);
+
+        writer.write(event(1L, 10L));
+        writer.flush(List.of(2L));
+
+        assertEquals(List.of(), storage.savedEntityIds());
+
+        writer.flush(List.of(1L));
+
+        assertEquals(List.of(10L), storage.savedEntityIds());
+    }
+
+    @Test
+    void givenRunningWriter_whenFlushUser_gotUserEventsWrittenByWriter() {
+        EventWriter writer = writer(100);
+        writer.start();
+
+        try {
+            writer.write(event(1L, 10L));
+            writer.flush(List.of(1L));
+
+            assertEquals(List.of(10L), storage.savedEntityIds());
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void givenQueuedEvent_whenWriteAllInSeveralBatches_gotQueuedEventWrittenFirst() {
+        EventWriter writer = writer(100, 2);
+
+        writer.write(event(1L, 10L));
+        writer.writeAll(List.of(event(2L, 11L), event(2L, 12L), event(1L, 13L)));
+
+        assertEquals(List.of(10L, 11L, 12L, 13L), storage.savedEntityIds());
+        assertEquals(List.of(1, 2, 1), storage.batchSizes);
+    }
+
+    // писатель сам просыпается раз в час, так что события пишутся только по flush и при переполнении очереди
+    private EventWriter writer(int queueCapacity) {
+        return writer(queueCapacity, 100);
+    }
+
+    private EventWriter writer(int queueCapacity, int batchSize) {
+        FriendTimeline friendTimeline = new FriendTimeline(stub(TimelineStorage.class), stub(FriendshipStorage.class),
+                storage, 1000, 1000, 1000, NEVER);
+        EventWriter writer = new EventWriter(storage, friendTimeline, queueCapacity, batchSize, NEVER,
+                Duration.ofMillis(1));
+        writer.bindTo(registry);
+        return writer;
+    }
+
+    private static Event event(long userId, long entityId) {
+        return Event.builder()
+                .timestamp(Instant.now())
+                .userId(userId)
+                .eventType(EventType.LIKE)
+                .operation(Operation.ADD)
+                .entityId(entityId)
+                .build();
+    }
+
+    // у пользователей нет друзей: рассылать события некому
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> storageClass) {
+        return (T) Proxy.newProxyInstance(storageClass.getClassLoader(), new Class<?>[]{storageClass},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getFollowers" -> Map.of();
+                    case "getEventIds" -> List.of();
+                    case "add", "trim" -> null;
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    private static final class RecordingEventStorage implements EventStorage {
+        private final List<Event> saved = new CopyOnWriteArrayList<>();
+        private final List<Integer> batchSizes = new CopyOnWriteArrayList<>();
+        private final AtomicLong ids = new AtomicLong();
+        private volatile Long failingUserId;
+
+        @Override
+        public Event createEvent(Event event) {
+            if (event.getUserId().equals(failingUserId)) {
+                throw new DataIntegrityViolationException("user " + failingUserId + " not found");
+            }
+            event.setId(ids.incrementAndGet());
+            saved.add(event);
+            return event;
+        }
+
+        @Override
+        public void createEvents(List<Event> events) {
+            if (events.stream().anyMatch(event -> event.getUserId().equals(failingUserId))) {
+                throw new DataIntegrityViolationException("user " + failingUserId + " not found");
+            }
+            batchSizes.add(events.size());
+            events.forEach(this::createEvent);
+        }
+
+        @Override
+        public List<Event> getByIds(Collection<Long> ids) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Event> findLastEventsByUserIds(Collection<Long> userIds, long beforeId, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Event> findEventsByUserID(Long id, long beforeId, int limit) {
+            throw new UnsupportedOperationException();
+        }
+
+        private List<Long> savedEntityIds() {
+            return saved.stream().map(Event::getEntityId).toList();
+        }
+    }
+}
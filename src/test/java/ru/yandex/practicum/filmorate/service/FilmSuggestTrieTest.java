@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.FilmStorage;
+
+public class FilmSuggestTrieTest {
+
+    @Test
+    void givenLongTitle_whenPut_gotNodesOnlyForWordPrefixes() {
+        FilmSuggestTrie trie = new FilmSuggestTrie(null);
+        int words = 10;
+        String title = IntStream.range(0, words).mapToObj(i -> "слово" + i + "длинное")
+                .collect(Collectors.joining(" "));
+
+        trie.putFilm(film(1L, title, 0, List.of()));
+
+        assertTrue(trie.getNodeCount() <= 1 + words * FilmSuggestTrie.MAX_KEY_LENGTH,
+                "nodes: " + trie.getNodeCount());
+    }
+
+    @Test
+    void givenPrefixLongerThanKey_whenSuggest_gotCheckedByFullTitle() {
+        FilmSuggestTrie trie = new FilmSuggestTrie(null);
+        trie.putFilm(film(1L, "Очень длинное название первого фильма", 0, List.of()));
+        trie.putFilm(film(2L, "Очень длинное название второго фильма", 0, List.of()));
+
+        assertEquals(List.of(2L), filmIds(trie.suggest("очень длинное название второго", 10)));
+        assertEquals(List.of(1L, 2L), filmIds(trie.suggest("длинное назв", 10)));
+        assertEquals(List.of(), filmIds(trie.suggest("очень длинное название третьего", 10)));
+    }
+
+    @Test
+    void givenClearedTrie_whenPutFilmWithRenamedDirector_gotNewNameOnly() {
+        FilmSuggestTrie trie = new FilmSuggestTrie(null);
+        trie.putFilm(film(1L, "Фильм", 0, List.of(new Director(1, "Старое Имя"))));
+
+        trie.clear();
+        trie.putFilm(film(2L, "Фильм", 0, List.of(new Director(1, "Новое Имя"))));
+
+        assertEquals(List.of(2L), filmIds(trie.suggest("новое", 10)));
+        assertEquals(List.of(), filmIds(trie.suggest("старое", 10)));
+    }
+
+    @Test
+    void givenLikeDuringWarmUp_whenWarmUpDone_gotLikeCountedOnce() {
+        FilmSuggestTrie[] trie = new FilmSuggestTrie[1];
+        // лайки фильму 1 поставлены во время загрузки, и загрузка уже прочитала фильм с ними: 3 лайка
+        Map<Long, Film> database = Map.of(
+                1L, film(1L, "Ночь в городе", 3, List.of()),
+                2L, film(2L, "Тёмная ночь", 4, List.of()));
+        trie[0] = new FilmSuggestTrie(filmStorage(consumer -> {
+            consumer.accept(database.get(1L));
+            trie[0].setLikes(1L, 3);
+            consumer.accept(database.get(2L));
+        }, database));
+
+        trie[0].warmUp();
+
+        assertEquals(List.of(2L, 1L), filmIds(trie[0].suggest("ночь", 10)));
+    }
+
+    @Test
+    void givenLikeReadByWarmUp_whenLikeAppliedAfterWarmUp_gotLikeCountedOnce() {
+        // лайк фильму 1 зафиксирован до загрузки, а в подсказки пришел уже после нее
+        Map<Long, Film> database = Map.of(
+                1L, film(1L, "Ночь в городе", 3, List.of()),
+                2L, film(2L, "Тёмная ночь", 4, List.of()));
+        FilmSuggestTrie trie = new FilmSuggestTrie(filmStorage(consumer -> database.values().forEach(consumer),
+                database));
+        trie.warmUp();
+
+        trie.setLikes(1L, 3);
+
+        assertEquals(List.of(2L, 1L), filmIds(trie.suggest("ночь", 10)));
+    }
+
+    @Test
+    void givenFilmPutDuringWarmUp_whenWarmUpDone_gotFilmSuggested() {
+        FilmSuggestTrie[] trie = new FilmSuggestTrie[1];
+        trie[0] = new FilmSuggestTrie(filmStorage(consumer -> {
+            consumer.accept(film(1L, "Ночь в городе", 0, List.of()));
+            trie[0].putFilm(film(2L, "Тёмная ночь", 0, List.of()));
+        }, Map.of()));
+
+        trie[0].warmUp();
+
+        assertEquals(List.of(1L, 2L), filmIds(trie[0].suggest("ночь", 10)));
+    }
+
+    private static List<Long> filmIds(List<FilmSuggestTrie.Suggestion> suggestions) {
+        return suggestions.stream().map(FilmSuggestTrie.Suggestion::filmId).toList();
+    }
+
+    private static Film film(long id, String name, int rate, List<Director> directors) {
+        return Film.builder().id(id).name(name).rate(rate).directors(directors).build();
+    }
+
+    // хранилище, которому нужны только выгрузка и чтение по id
+    @SuppressWarnings("unchecked")
+    private static FilmStorage filmStorage(Consumer<Consumer<Film>> streamAll, Map<Long, Film> films) {
+        return (FilmStorage) Proxy.newProxyInstance(FilmStorage.class.getClassLoader(),
+                new Class<?>[]{FilmStorage.class}, (proxy, method, args) -> switch (method.getName()) {
+                    case "streamAll" -> {
+                        streamAll.accept((Consumer<Film>) args[0]);
+                        yield null;
+                    }
+                    case "getByIds" -> ((List<Long>) args[0]).stream()
+                            .filter(films::containsKey)
+                            .map(films::get)
+                            .toList();
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+}
@@ -0,0 +1,145 @@
+package ru.yandex.practicum.filmorate.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import org.junit.jupiter.api.Test;
+
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.storage.EventStorage;
+import ru.yandex.practicum.filmorate.storage.FriendshipStorage;
+import ru.yandex.practicum.filmorate.storage.TimelineStorage;
+
+public class FriendTimelineTest {
+
+    private static final long AUTHOR = 1L;
+    private static final long OTHER_AUTHOR = 2L;
+    private static final long FOLLOWER = 10L;
+
+    private final Map<Long, Event> events = new HashMap<>();
+    private final InMemoryTimelineStorage timelineStorage = new InMemoryTimelineStorage();
+    private final AtomicInteger followerQueries = new AtomicInteger();
+
+    @Test
+    void givenTimelineLoadedDuringFanOut_whenGetEvents_gotNoDuplicateEvictingOlderEvent() {
+        FriendTimeline timeline = timeline(2);
+        timeline.fanOut(List.of(event(1L, AUTHOR)));
+        // лента еще не загружена и загружается в тот момент, когда строка события 2 уже записана в БД
+        timelineStorage.afterAdd = () -> feed(timeline);
+
+        timeline.fanOut(List.of(event(2L, AUTHOR)));
+
+        assertEquals(List.of(1L, 2L), feed(timeline));
+        assertEquals(Set.of(1L, 2L), timelineStorage.rows.get(FOLLOWER));
+    }
+
+    @Test
+    void givenColdTimeline_whenFanOut_gotEventsLoadedFromStorage() {
+        FriendTimeline timeline = timeline(2);
+
+        timeline.fanOut(List.of(event(1L, AUTHOR), event(2L, AUTHOR), event(3L, AUTHOR)));
+
+        assertEquals(List.of(2L, 3L), feed(timeline));
+        assertEquals(Set.of(2L, 3L), timelineStorage.rows.get(FOLLOWER));
+    }
+
+    @Test
+    void givenLoadedTimeline_whenFanOutOverCapacity_gotOldestTrimmed() {
+        FriendTimeline timeline = timeline(2);
+        feed(timeline);
+
+        timeline.fanOut(List.of(event(1L, AUTHOR), event(2L, OTHER_AUTHOR), event(3L, AUTHOR)));
+
+        assertEquals(List.of(2L, 3L), feed(timeline));
+        assertEquals(Set.of(2L, 3L), timelineStorage.rows.get(FOLLOWER));
+    }
+
+    @Test
+    void givenBatchOfSeveralAuthors_whenFanOut_gotFollowersReadOnce() {
+        FriendTimeline timeline = timeline(10);
+
+        timeline.fanOut(List.of(event(1L, AUTHOR), event(2L, OTHER_AUTHOR), event(3L, AUTHOR)));
+
+        assertEquals(1, followerQueries.get());
+        assertEquals(List.of(1L, 2L, 3L), feed(timeline));
+    }
+
+    private FriendTimeline timeline(int capacity) {
+        return new FriendTimeline(timelineStorage, friendshipStorage(), eventStorage(), capacity, 1000, 1000,
+                Duration.ofHours(1));
+    }
+
+    private List<Long> feed(FriendTimeline timeline) {
+        return timeline.getEvents(FOLLOWER, Set.of(AUTHOR, OTHER_AUTHOR), Long.MAX_VALUE, 10).stream()
+                .map(Event::getId)
+                .toList();
+    }
+
+    private Event event(long id, long userId) {
+        Event event = Event.builder().id(id).userId(userId).build();
+        events.put(id, event);
+        return event;
+    }
+
+    // у каждого автора один подписчик - FOLLOWER
+    private FriendshipStorage friendshipStorage() {
+        return stub(FriendshipStorage.class, (method, args) -> {
+            if (!method.equals("getFollowers")) {
+                throw new UnsupportedOperationException(method);
+            }
+            followerQueries.incrementAndGet();
+            Map<Long, List<Long>> followers = new HashMap<>();
+            ((Collection<?>) args[0]).forEach(authorId -> followers.put((Long) authorId, List.of(FOLLOWER)));
+            return followers;
+        });
+    }
+
+    private EventStorage eventStorage() {
+        return stub(EventStorage.class, (method, args) -> switch (method) {
+            case "getByIds" -> ((Collection<?>) args[0]).stream().map(events::get).toList();
+            case "findLastEventsByUserIds" -> List.of();
+            default -> throw new UnsupportedOperationException(method);
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T stub(Class<T> storageClass, BiFunction<String, Object[], Object> calls) {
+        return (T) Proxy.newProxyInstance(storageClass.getClassLoader(), new Class<?>[]{storageClass},
+                (proxy, method, args) -> calls.apply(method.getName(), args));
+    }
+
+    private static final class InMemoryTimelineStorage implements TimelineStorage {
+        private final Map<Long, TreeSet<Long>> rows = new HashMap<>();
+        private Runnable afterAdd = () -> { };
+
+        @Override
+        public List<Long> getEventIds(long userId, int limit) {
+            return rows.getOrDefault(userId, new TreeSet<>()).descendingSet().stream()
+                    .limit(limit)
+                    .sorted()
+                    .toList();
+        }
+
+        @Override
+        public void add(Map<Long, List<Long>> userIdsByEventId) {
+            userIdsByEventId.forEach((eventId, userIds) -> userIds.forEach(userId ->
+                    rows.computeIfAbsent(userId, id -> new TreeSet<>()).add(eventId)));
+            afterAdd.run();
+        }
+
+        @Override
+        public void trim(Map<Long, Long> oldestEventIdByUser) {
+            oldestEventIdByUser.forEach((userId, eventId) -> rows.get(userId).headSet(eventId).clear());
+        }
+    }
+}
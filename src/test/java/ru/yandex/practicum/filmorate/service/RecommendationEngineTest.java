@@ -0,0 +1,67 @@
+package ru.yandex.practicum.filmorate.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.Duration;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import ru.yandex.practicum.filmorate.storage.LikeIndex;
+
+public class RecommendationEngineTest {
+
+    private final LikeIndex likeIndex = new LikeIndex();
+    // фоновый пересчет раз в час: изменения применяются только при чтении рекомендаций
+    private final RecommendationEngine engine = new RecommendationEngine(likeIndex, 10, 100, 1,
+            Duration.ofHours(1));
+
+    @AfterEach
+    void shutdown() {
+        engine.shutdown();
+    }
+
+    @Test
+    void givenNoRebuild_whenIsReady_gotFalse() {
+        assertFalse(engine.isReady());
+
+        engine.rebuild();
+
+        assertTrue(engine.isReady());
+    }
+
+    @Test
+    void givenLikesChanged_whenGetRecommendations_gotPendingUsersRefreshed() {
+        likeIndex.load(index -> {
+            index.add(1L, 10L);
+            index.add(2L, 10L);
+        });
+        engine.rebuild();
+        assertEquals(List.of(), engine.getRecommendations(1L));
+
+        likeIndex.add(2L, 20L);
+        engine.onLikesChanged(2L);
+
+        // пересчитан не только автор лайка, но и пользователь, у которого он в соседях
+        assertEquals(List.of(20L), engine.getRecommendations(1L));
+    }
+
+    @Test
+    void givenUserRemoved_whenGetRecommendations_gotHisFilmsGone() {
+        likeIndex.load(index -> {
+            index.add(1L, 10L);
+            index.add(2L, 10L);
+            index.add(2L, 20L);
+        });
+        engine.rebuild();
+        assertEquals(List.of(20L), engine.getRecommendations(1L));
+
+        likeIndex.removeUser(2L);
+        engine.removeUser(2L);
+
+        assertEquals(List.of(), engine.getRecommendations(1L));
+    }
+}
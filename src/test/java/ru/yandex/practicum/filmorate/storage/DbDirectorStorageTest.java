@@ -9,6 +9,7 @@ import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.storage.mapper.DirectorRowMapper;
+import ru.yandex.practicum.filmorate.util.QueryCounter;
 import ru.yandex.practicum.filmorate.util.TestUtil;
 
 import java.util.ArrayList;
@@ -21,10 +22,11 @@ import static org.junit.jupiter.api.Assertions.assertTrue;
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({DbDirectorStorage.class, DirectorRowMapper.class})
+@Import({DbDirectorStorage.class, DirectorRowMapper.class, FilmSearchIndex.class, QueryCounter.class})
 public class DbDirectorStorageTest {
 
     private final DbDirectorStorage directorStorage;
+    private final QueryCounter queryCounter;
 
     @AfterEach()
     void tearDown() {
@@ -85,4 +87,63 @@ public class DbDirectorStorageTest {
 
         assertEquals(directors.size() - 1, loadedDirectors.size());
     }
+
+    @Test
+    void successfulSelectByIdsInRequestOrder() {
+        Director first = directorStorage.saveDirector(Director.builder().name(TestUtil.randomString(5)).build());
+        Director second = directorStorage.saveDirector(Director.builder().name(TestUtil.randomString(15)).build());
+        int missingId = second.getId() + 1;
+
+        MultiGetResult<Integer, Director> result =
+                directorStorage.getByIds(List.of(second.getId(), missingId, first.getId(), second.getId()));
+
+        assertEquals(List.of(second.getId(), first.getId()), result.found().stream().map(Director::getId).toList());
+        assertEquals(List.of(missingId), result.missingIds());
+    }
+
+    @Test
+    void givenCachedDirector_whenReadAgain_gotNoQueries() {
+        Director director = directorStorage.saveDirector(Director.builder().name(TestUtil.randomString(5)).build());
+        directorStorage.getDirectorById(director.getId());
+
+        queryCounter.reset();
+        directorStorage.getDirectorById(director.getId());
+        directorStorage.getByIds(List.of(director.getId()));
+
+        assertEquals(0, queryCounter.count());
+    }
+
+    @Test
+    void givenCachedDirector_whenChangeReturnedObject_gotCacheUnchanged() {
+        String name = TestUtil.randomString(5);
+        Director director = directorStorage.saveDirector(Director.builder().name(name).build());
+
+        directorStorage.getDirectorById(director.getId()).orElseThrow().setName("changed");
+        directorStorage.getByIds(List.of(director.getId())).found().getFirst().setName("changed");
+
+        assertEquals(name, directorStorage.getDirectorById(director.getId()).orElseThrow().getName());
+        assertEquals(name, directorStorage.getByIds(List.of(director.getId())).found().getFirst().getName());
+    }
+
+    @Test
+    void givenCachedDirector_whenUpdate_gotNewName() {
+        Director director = directorStorage.saveDirector(Director.builder().name(TestUtil.randomString(5)).build());
+        directorStorage.getDirectorById(director.getId());
+
+        String newName = TestUtil.randomString(7);
+        directorStorage.saveDirector(new Director(director.getId(), newName));
+
+        assertEquals(newName, directorStorage.getDirectorById(director.getId()).orElseThrow().getName());
+    }
+
+    @Test
+    void givenCachedDirector_whenDelete_gotNothing() {
+        Director director = directorStorage.saveDirector(Director.builder().name(TestUtil.randomString(5)).build());
+        directorStorage.getDirectorById(director.getId());
+
+        directorStorage.deleteDirector(director);
+
+        assertTrue(directorStorage.getDirectorById(director.getId()).isEmpty());
+        assertEquals(List.of(director.getId()), directorStorage.getByIds(List.of(director.getId())).missingIds());
+    }
 }
@@ -23,14 +23,16 @@ import lombok.RequiredArgsConstructor;
 import ru.yandex.practicum.filmorate.exceptions.NotFoundException;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
 import ru.yandex.practicum.filmorate.storage.mapper.FilmGenreRowMapper;
+import ru.yandex.practicum.filmorate.util.QueryCounter;
 
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({ FilmGenreRowMapper.class, DbFilmGenreStorage.class })
+@Import({ FilmGenreRowMapper.class, DbFilmGenreStorage.class, QueryCounter.class })
 public class DbFilmGenreStorageTest {
 
     private final DbFilmGenreStorage filmGenreStorage;
+    private final QueryCounter queryCounter;
 
     @BeforeEach
     void setup() {
@@ -112,4 +114,38 @@ public class DbFilmGenreStorageTest {
             assertEquals(expGenre.getName(), actGenre.getName());
         });
     }
+
+    @Test
+    void givenCachedGenres_whenRead_gotNoQueries() {
+        List<Integer> ids = filmGenreStorage.getAll().stream().map(FilmGenre::getId).toList();
+
+        queryCounter.reset();
+        filmGenreStorage.getAll();
+        filmGenreStorage.getById(ids.get(0));
+        filmGenreStorage.getById(ids);
+
+        assertEquals(0, queryCounter.count());
+    }
+
+    @Test
+    void givenCachedGenres_whenSave_gotCacheRefreshed() {
+        filmGenreStorage.getAll();
+
+        filmGenreStorage.save(new FilmGenre(null, "Триллер"));
+
+        assertEquals(4, filmGenreStorage.getAll().size());
+    }
+
+    @Test
+    void givenCachedGenres_whenChangeReturnedObject_gotCacheUnchanged() {
+        FilmGenre genre = filmGenreStorage.getAll().get(0);
+        String name = genre.getName();
+
+        genre.setName("changed");
+        filmGenreStorage.getById(genre.getId()).orElseThrow().setName("changed");
+        filmGenreStorage.getById(List.of(genre.getId())).get(0).setName("changed");
+
+        assertEquals(name, filmGenreStorage.getById(genre.getId()).orElseThrow().getName());
+        assertEquals(name, filmGenreStorage.getAll().get(0).getName());
+    }
 }
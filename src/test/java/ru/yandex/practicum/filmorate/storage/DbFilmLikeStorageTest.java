@@ -1,11 +1,13 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.OptionalInt;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -14,6 +16,12 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -26,6 +34,8 @@ import ru.yandex.practicum.filmorate.util.TestUtil;
 
 @Slf4j
 @JdbcTest
+// индексы в памяти меняются только после фиксации, поэтому тесты не оборачиваются в откатываемую транзакцию
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Import({ DbFilmLikeStorage.class,
@@ -33,7 +43,7 @@ import ru.yandex.practicum.filmorate.util.TestUtil;
           DbFilmStorage.class, FilmRowMapper.class,
           DbUserStorage.class, UserRowMapper.class,
           DbFilmMpaStorage.class, FilmMpaRowMapper.class,
-          DirectorRowMapper.class})
+          DirectorRowMapper.class, LikeIndex.class, FilmSearchIndex.class})
 public class DbFilmLikeStorageTest {
 
     private final DbFilmGenreStorage filmGenreStorage;
@@ -41,6 +51,9 @@ public class DbFilmLikeStorageTest {
     private final DbFilmStorage filmStorage;
     private final DbUserStorage userStorage;
     private final DbFilmMpaStorage filmMpaStorage;
+    private final NamedParameterJdbcTemplate namedTemplate;
+    private final LikeIndex likeIndex;
+    private final PlatformTransactionManager transactionManager;
 
     private List<FilmGenre> allGenres;
     private List<FilmMpa> allMpa;
@@ -73,10 +86,10 @@ public class DbFilmLikeStorageTest {
 
     @Test
     void givenUnlikedFilm_whenLike_gotLiked() {
-        filmLikeStorage.like(film1, user1);
-        boolean result = filmLikeStorage.like(film1, user2);
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        OptionalInt result = filmLikeStorage.like(film1.getId(), user2.getId());
 
-        assertTrue(result);
+        assertEquals(OptionalInt.of(2), result);
 
         Film film = filmStorage.getById(film1.getId()).get();
         assertEquals(2, film.getRate());
@@ -84,10 +97,10 @@ public class DbFilmLikeStorageTest {
 
     @Test
     void givenUnlikedFilm_whenDislike_gotNothing() {
-        filmLikeStorage.like(film1, user1);
-        boolean result = filmLikeStorage.dislike(film1, user2);
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        OptionalInt result = filmLikeStorage.dislike(film1.getId(), user2.getId());
 
-        assertFalse(result);
+        assertEquals(OptionalInt.empty(), result);
 
         Film film = filmStorage.getById(film1.getId()).get();
         assertEquals(1, film.getRate());
@@ -95,10 +108,10 @@ public class DbFilmLikeStorageTest {
 
     @Test
     void givenLikedFilm_whenLike_gotNothing() {
-        filmLikeStorage.like(film1, user1);
-        boolean result = filmLikeStorage.like(film1, user1);
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        OptionalInt result = filmLikeStorage.like(film1.getId(), user1.getId());
 
-        assertFalse(result);
+        assertEquals(OptionalInt.empty(), result);
 
         Film film = filmStorage.getById(film1.getId()).get();
         assertEquals(1, film.getRate());
@@ -106,15 +119,74 @@ public class DbFilmLikeStorageTest {
 
     @Test
     void givenLikedFilm_whenDislike_gotDisliked() {
-        filmLikeStorage.like(film1, user1);
-        boolean result = filmLikeStorage.dislike(film1, user1);
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        OptionalInt result = filmLikeStorage.dislike(film1.getId(), user1.getId());
 
-        assertTrue(result);
+        assertEquals(OptionalInt.of(0), result);
 
         Film film = filmStorage.getById(film1.getId()).get();
         assertEquals(0, film.getRate());
     }
 
+    @Test
+    void givenUnknownFilm_whenLike_gotIntegrityViolation() {
+        assertThrows(DataIntegrityViolationException.class,
+                () -> filmLikeStorage.like(film1.getId() + 1000, user1.getId()));
+
+        Film film = filmStorage.getById(film1.getId()).get();
+        assertEquals(0, film.getRate());
+    }
+
+    @Test
+    void givenRolledBackLike_whenReadIndex_gotNoLike() {
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            filmLikeStorage.like(film1.getId(), user1.getId());
+            status.setRollbackOnly();
+        });
+
+        assertEquals(0, likeIndex.getLikesCount(film1.getId()));
+        assertTrue(likeIndex.getLikedFilmIds(user1.getId()).isEmpty());
+
+        filmLikeStorage.like(film1.getId(), user1.getId());
+
+        assertEquals(1, likeIndex.getLikesCount(film1.getId()));
+    }
+
+    @Test
+    void givenLikedFilm_whenUserDeleted_gotLikesCountDecreased() {
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film1.getId(), user2.getId());
+
+        userStorage.delete(user1);
+
+        Film film = filmStorage.getById(film1.getId()).get();
+        assertEquals(1, film.getRate());
+    }
+
+    @Test
+    void givenDriftedLikesCount_whenReconcile_gotRepaired() {
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        namedTemplate.update("INSERT INTO film_likes (film_id, user_id) VALUES (:filmId, :userId)",
+                Map.of("filmId", film1.getId(), "userId", user2.getId()));
+
+        int repaired = filmLikeStorage.reconcileLikesCount();
+
+        assertEquals(1, repaired);
+        assertEquals(2, filmStorage.getById(film1.getId()).get().getRate());
+        assertEquals(0, filmLikeStorage.reconcileLikesCount());
+    }
+
+    @Test
+    void givenLikedFilms_whenGetLikesCounts_gotCountsOfExistingFilms() {
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film1.getId(), user2.getId());
+        long missingId = film1.getId() + 1000;
+
+        Map<Long, Integer> likes = filmLikeStorage.getLikesCounts(List.of(film1.getId(), missingId));
+
+        assertEquals(Map.of(film1.getId(), 2), likes);
+    }
+
     private FilmGenre genreByName(String name) {
         return allGenres.stream().filter(g -> g.getName().equals(name)).findAny().get();
     }
@@ -147,4 +219,24 @@ public class DbFilmLikeStorageTest {
     private User createUser() {
         return userStorage.save(TestUtil.getRandomUser());
     }
+
+    @Test
+    void givenLikesAndDislikes_whenReadIndex_gotSameAsDatabase() {
+        Film film2 = createFilm("G", List.of("Драма"));
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user1.getId());
+        filmLikeStorage.like(film1.getId(), user2.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+        filmLikeStorage.dislike(film2.getId(), user2.getId());
+
+        assertEquals(List.of(film1.getId()), likeIndex.getCommonFilmIds(user1.getId(), user2.getId()));
+        assertEquals(filmLikeStorage.getLikedFilmIds(user1.getId()).stream().sorted().toList(),
+                likeIndex.getLikedFilmIds(user1.getId()));
+        assertEquals(1, likeIndex.getSimilarUsers(user1.getId()).size());
+
+        userStorage.delete(user2);
+
+        assertEquals(1, likeIndex.getLikesCount(film1.getId()));
+        assertTrue(likeIndex.getSimilarUsers(user1.getId()).isEmpty());
+    }
 }
@@ -31,7 +31,7 @@ import static ru.yandex.practicum.filmorate.util.TestUtil.*;
         DbUserStorage.class, UserRowMapper.class,
         DbFilmReviewStorage.class, FilmReviewRowMapper.class,
         DbFilmMpaStorage.class, FilmMpaRowMapper.class,
-        DirectorRowMapper.class})
+        DirectorRowMapper.class, LikeIndex.class, FilmSearchIndex.class})
 public class DbFilmReviewStorageTest {
 
     private final DbFilmReviewStorage reviewStorage;
@@ -15,18 +15,24 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.FilmGenre;
 import ru.yandex.practicum.filmorate.model.FilmMpa;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.mapper.*;
+import ru.yandex.practicum.filmorate.util.QueryCounter;
 import ru.yandex.practicum.filmorate.util.TestUtil;
 
 @Slf4j
 @JdbcTest
+// индексы в памяти меняются только после фиксации, поэтому тесты не оборачиваются в откатываемую транзакцию
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
 @Import({ DbFilmLikeStorage.class,
@@ -34,7 +40,8 @@ import ru.yandex.practicum.filmorate.util.TestUtil;
         DbFilmStorage.class, FilmRowMapper.class,
         DbUserStorage.class, UserRowMapper.class,
         DbFilmMpaStorage.class, FilmMpaRowMapper.class,
-        DirectorRowMapper.class})
+        DbDirectorStorage.class, DirectorRowMapper.class,
+        QueryCounter.class, LikeIndex.class, FilmSearchIndex.class})
 public class DbFilmStorageTest {
 
     private final DbFilmGenreStorage filmGenreStorage;
@@ -42,6 +49,8 @@ public class DbFilmStorageTest {
     private final DbFilmStorage filmStorage;
     private final DbUserStorage userStorage;
     private final DbFilmMpaStorage filmMpaStorage;
+    private final DbDirectorStorage directorStorage;
+    private final QueryCounter queryCounter;
 
     private List<FilmGenre> allGenres;
     private List<FilmMpa> allMpa;
@@ -73,6 +82,7 @@ public class DbFilmStorageTest {
         filmGenreStorage.deleteAll();
         filmMpaStorage.deleteAll();
         filmStorage.deleteAll();
+        directorStorage.deleteAllDirectors();
         userStorage.deleteAll();
     }
 
@@ -100,11 +110,21 @@ public class DbFilmStorageTest {
         assertEquals(actFilm.getName(), film1.getName());
     }
 
+    @Test
+    void givenFilmIds_whenGetByIds_gotFilmsInSameOrder() {
+        List<Film> films = filmStorage.getByIds(List.of(film3.getId(), film1.getId(), -1L));
+
+        assertEquals(2, films.size());
+        assertEquals(film3.getId(), films.get(0).getId());
+        assertEquals(film1.getId(), films.get(1).getId());
+        assertEquals(Set.of("Мультфильм", "Комедия"), getGenresNames(films.get(0)));
+    }
+
     @Test
     void givenTwoLikedFilms_whenGotPopular1_gotMostPopular() {
-        filmLikeStorage.like(film2, user1);
-        filmLikeStorage.like(film2, user2);
-        filmLikeStorage.like(film1, user1);
+        filmLikeStorage.like(film2.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+        filmLikeStorage.like(film1.getId(), user1.getId());
 
         List<Film> films = filmStorage.getPopularFilms(1);
         assertEquals(1, films.size());
@@ -113,9 +133,9 @@ public class DbFilmStorageTest {
 
     @Test
     void givenTwoLikedFilms_whenGotPopular10_gotAllFilms() {
-        filmLikeStorage.like(film2, user1);
-        filmLikeStorage.like(film2, user2);
-        filmLikeStorage.like(film1, user1);
+        filmLikeStorage.like(film2.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+        filmLikeStorage.like(film1.getId(), user1.getId());
 
         List<Film> films = filmStorage.getPopularFilms(10);
         assertEquals(3, films.size());
@@ -145,12 +165,98 @@ public class DbFilmStorageTest {
         assertEquals(Set.of("Мультфильм", "Триллер"), getGenresNames(actFilm));
     }
 
+    @Test
+    void givenChangedGenres_whenUpdate_gotOnlyDifferenceWritten() {
+        Film current = filmStorage.getById(film1.getId()).get();
+        Film changed = filmStorage.getById(film1.getId()).get();
+        changed.setGenres(genresByNames("Драма", "Триллер"));
+
+        queryCounter.reset();
+        filmStorage.update(current, changed);
+
+        // строка фильма не менялась: только DELETE снятого жанра и пакетная вставка добавленного
+        assertEquals(2, queryCounter.count());
+        Film actFilm = filmStorage.getById(film1.getId()).get();
+        assertEquals(Set.of("Драма", "Триллер"), getGenresNames(actFilm));
+        assertEquals(film1.getName(), actFilm.getName());
+        assertEquals(Set.of("Документальный", "Драма"), getGenresNames(filmStorage.getById(film2.getId()).get()));
+    }
+
+    @Test
+    void givenUnchangedFilm_whenUpdate_gotNoStatements() {
+        Film current = filmStorage.getById(film1.getId()).get();
+        Film same = filmStorage.getById(film1.getId()).get();
+
+        queryCounter.reset();
+        filmStorage.update(current, same);
+
+        assertEquals(0, queryCounter.count());
+    }
+
+    @Test
+    void givenChangedName_whenUpdate_gotOnlyFilmRowUpdated() {
+        Film current = filmStorage.getById(film1.getId()).get();
+        Film renamed = filmStorage.getById(film1.getId()).get();
+        renamed.setName("renamed");
+
+        queryCounter.reset();
+        filmStorage.update(current, renamed);
+
+        assertEquals(1, queryCounter.count());
+        assertEquals("renamed", filmStorage.getById(film1.getId()).get().getName());
+    }
+
+    @Test
+    void givenSearchIndex_whenSearchByTitle_gotRankedByMatchThenLikes() {
+        renameFilm(film1, "Ночь в городе");
+        renameFilm(film2, "Ночь");
+        renameFilm(film3, "Полночь");
+        filmLikeStorage.like(film3.getId(), user1.getId());
+        filmLikeStorage.like(film3.getId(), user2.getId());
+        filmLikeStorage.like(film1.getId(), user1.getId());
+
+        Set<Long> sqlFound = getFilmIds(filmStorage.searchBy("ночь", "title", 100));
+        filmStorage.loadSearchIndex();
+        filmLikeStorage.loadLikeIndex();
+        List<Film> films = filmStorage.searchBy("ночь", "title", 100);
+
+        assertEquals(sqlFound, getFilmIds(films));
+        assertEquals(List.of(film2.getId(), film1.getId(), film3.getId()), films.stream().map(Film::getId).toList());
+    }
+
+    @Test
+    void givenSearchIndex_whenSearchByWithLimit_gotBestMatchesOnly() {
+        renameFilm(film1, "Ночь в городе");
+        renameFilm(film2, "Полночь");
+        renameFilm(film3, "Тёмная ночь");
+        filmLikeStorage.like(film2.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+        filmStorage.loadSearchIndex();
+        filmLikeStorage.loadLikeIndex();
+
+        List<Film> films = filmStorage.searchBy("ночь", "title", 2);
+
+        // популярный фильм с совпадением внутри слова уступает совпадениям с начала слова
+        assertEquals(List.of(film1.getId(), film3.getId()), films.stream().map(Film::getId).toList());
+    }
+
+    @Test
+    void givenSearchIndex_whenSaveAndDeleteFilm_gotIndexUpdated() {
+        filmStorage.loadSearchIndex();
+
+        renameFilm(film1, "Город грехов");
+        assertEquals(List.of(film1.getId()), filmStorage.searchBy("грех", "title", 100).stream().map(Film::getId).toList());
+
+        filmStorage.delete(film1);
+        TestUtil.assertEmpty(filmStorage.searchBy("грех", "title", 100));
+    }
+
     @Test
     void givenUserWithRecommendations_whenGetRecommendations_gotCorrectFilm() {
-        filmLikeStorage.like(film1, user1);
-        filmLikeStorage.like(film2, user1);
-        filmLikeStorage.like(film2, user2);
-        filmLikeStorage.like(film3, user2);
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+        filmLikeStorage.like(film3.getId(), user2.getId());
 
         List<Film> recommendedFilms = filmStorage.getRecommendations(user1.getId());
 
@@ -160,8 +266,8 @@ public class DbFilmStorageTest {
 
     @Test
     void givenUserWithoutRecommendations_whenGetRecommendations_gotEmptyList() {
-        filmLikeStorage.like(film1, user1);
-        filmLikeStorage.like(film2, user2);
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
 
         List<Film> recommendedFilms = filmStorage.getRecommendations(user1.getId());
 
@@ -175,10 +281,147 @@ public class DbFilmStorageTest {
         assertEquals(0, recommendedFilms.size());
     }
 
+    @Test
+    void givenMoreFilms_whenGetAll_gotSameQueryCount() {
+        queryCounter.reset();
+        filmStorage.getAll();
+        int queriesForThreeFilms = queryCounter.count();
+
+        createFilm("G", List.of("Комедия"));
+        createFilm("PG", List.of("Драма", "Триллер"));
+        createFilm("R", List.of());
+
+        queryCounter.reset();
+        List<Film> films = filmStorage.getAll();
+
+        assertEquals(6, films.size());
+        assertEquals(3, queriesForThreeFilms);
+        assertEquals(queriesForThreeFilms, queryCounter.count());
+    }
+
+    @Test
+    void givenLikedFilms_whenGetPopular_gotSameQueryCount() {
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+
+        queryCounter.reset();
+        filmStorage.getPopularFilms(1);
+        int queriesForOneFilm = queryCounter.count();
+
+        queryCounter.reset();
+        filmStorage.getPopularFilms(3);
+
+        assertEquals(queriesForOneFilm, queryCounter.count());
+    }
+
+    @Test
+    void givenMoreFound_whenSearchBy_gotSameQueryCount() {
+        filmStorage.loadSearchIndex();
+        filmLikeStorage.loadLikeIndex();
+        renameFilm(film1, "Ночь в городе");
+
+        queryCounter.reset();
+        filmStorage.searchBy("ночь", "title", 100);
+        int queriesForOneFilm = queryCounter.count();
+
+        renameFilm(film2, "Тёмная ночь");
+        renameFilm(film3, "Полночь");
+
+        queryCounter.reset();
+        List<Film> films = filmStorage.searchBy("ночь", "title", 100);
+
+        assertEquals(3, films.size());
+        assertEquals(queriesForOneFilm, queryCounter.count());
+    }
+
+    @Test
+    void givenMoreCommonFilms_whenGetCommonFilms_gotSameQueryCount() {
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film1.getId(), user2.getId());
+
+        queryCounter.reset();
+        filmStorage.getCommonFilms(user1.getId(), user2.getId());
+        int queriesForOneFilm = queryCounter.count();
+
+        filmLikeStorage.like(film2.getId(), user1.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+        filmLikeStorage.like(film3.getId(), user1.getId());
+        filmLikeStorage.like(film3.getId(), user2.getId());
+
+        queryCounter.reset();
+        List<Film> films = filmStorage.getCommonFilms(user1.getId(), user2.getId());
+
+        assertEquals(3, films.size());
+        assertEquals(queriesForOneFilm, queryCounter.count());
+    }
+
+    @Test
+    void givenMoreDirectorFilms_whenGetSortedFilmsByDirector_gotSameQueryCount() {
+        Director director = directorStorage.saveDirector(new Director(null, "Режиссер"));
+        setDirector(film1, director);
+
+        queryCounter.reset();
+        filmStorage.getSortedFilmsByDirector(director, "year");
+        int queriesForOneFilm = queryCounter.count();
+
+        setDirector(film2, director);
+        setDirector(film3, director);
+
+        queryCounter.reset();
+        List<Film> films = filmStorage.getSortedFilmsByDirector(director, "year");
+
+        assertEquals(3, films.size());
+        assertEquals(queriesForOneFilm, queryCounter.count());
+    }
+
+    @Test
+    void givenMoreRecommendedFilms_whenGetRecommendations_gotSameQueryCount() {
+        filmLikeStorage.like(film1.getId(), user1.getId());
+        filmLikeStorage.like(film1.getId(), user2.getId());
+        filmLikeStorage.like(film2.getId(), user2.getId());
+
+        queryCounter.reset();
+        filmStorage.getRecommendations(user1.getId());
+        int queriesForOneFilm = queryCounter.count();
+
+        filmLikeStorage.like(film3.getId(), user2.getId());
+
+        queryCounter.reset();
+        List<Film> films = filmStorage.getRecommendations(user1.getId());
+
+        assertEquals(2, films.size());
+        assertEquals(queriesForOneFilm, queryCounter.count());
+    }
+
+    @Test
+    void givenFilmsWithGenres_whenGetAll_gotGenresOfEachFilm() {
+        List<Film> films = filmStorage.getAll();
+
+        Film actFilm2 = films.stream().filter(f -> f.getId().equals(film2.getId())).findAny().get();
+        Film actFilm3 = films.stream().filter(f -> f.getId().equals(film3.getId())).findAny().get();
+
+        assertEquals(Set.of("Документальный", "Драма"), getGenresNames(actFilm2));
+        assertEquals(Set.of("Мультфильм", "Комедия"), getGenresNames(actFilm3));
+    }
+
     private Set<String> getFilmNames(List<Film> films) {
         return films.stream().map(f -> f.getName()).collect(Collectors.toSet());
     }
 
+    private Set<Long> getFilmIds(List<Film> films) {
+        return films.stream().map(Film::getId).collect(Collectors.toSet());
+    }
+
+    private void renameFilm(Film film, String name) {
+        film.setName(name);
+        filmStorage.save(film);
+    }
+
+    private void setDirector(Film film, Director director) {
+        film.setDirectors(List.of(director));
+        filmStorage.save(film);
+    }
+
     private FilmGenre genreByName(String name) {
         return allGenres.stream().filter(g -> g.getName().equals(name)).findAny().get();
     }
@@ -26,7 +26,7 @@ import ru.yandex.practicum.filmorate.util.TestUtil;
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({ DbUserStorage.class, UserRowMapper.class, DbFriendshipStorage.class, FriendshipRowMapper.class })
+@Import({ DbUserStorage.class, UserRowMapper.class, DbFriendshipStorage.class, FriendshipRowMapper.class, LikeIndex.class })
 public class DbFriendshipStorageTest {
 
     private final DbUserStorage userStorage;
@@ -1,9 +1,12 @@
 package ru.yandex.practicum.filmorate.storage;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.time.Duration;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
@@ -13,6 +16,7 @@ import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabas
 import org.springframework.boot.test.autoconfigure.jdbc.JdbcTest;
 import org.springframework.context.annotation.Import;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import ru.yandex.practicum.filmorate.model.User;
@@ -23,7 +27,7 @@ import ru.yandex.practicum.filmorate.util.TestUtil;
 @JdbcTest
 @AutoConfigureTestDatabase
 @RequiredArgsConstructor(onConstructor_ = @Autowired)
-@Import({ DbUserStorage.class, UserRowMapper.class })
+@Import({ DbUserStorage.class, UserRowMapper.class, LikeIndex.class })
 public class DbUserStorageTest {
 
     private final DbUserStorage userStorage;
@@ -59,6 +63,17 @@ public class DbUserStorageTest {
         assertEquals(2, actUsers.size());
     }
 
+    @Test
+    void givenUsers_whenFetchPages_gotEachUserOnce() {
+        User user3 = createUser();
+
+        List<User> firstPage = userStorage.getPage(0, 2);
+        List<User> secondPage = userStorage.getPage(firstPage.get(1).getId(), 2);
+
+        assertEquals(List.of(user1.getId(), user2.getId()), firstPage.stream().map(User::getId).toList());
+        assertEquals(List.of(user3.getId()), secondPage.stream().map(User::getId).toList());
+    }
+
     @Test
     void givenUser_whenFetch_gotIt() {
         User actUser = userStorage.getById(user1.getId()).get();
@@ -85,6 +100,30 @@ public class DbUserStorageTest {
         assertEquals("1999-01-01", actUser.getBirthday().toString());
     }
 
+    @Test
+    void givenSlowConsumer_whenStreamAll_gotOnlyQueryTimed() {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        userStorage.setQueryMetrics(new QueryMetrics(registry, Duration.ofSeconds(1)));
+        long sleepMs = 200;
+
+        try {
+            userStorage.streamAll(user -> {
+                try {
+                    Thread.sleep(sleepMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        } finally {
+            userStorage.setQueryMetrics(null);
+        }
+
+        double queryMs = registry.get(QueryMetrics.TIMER).tag("query", "EXPORT_QUERY").timer()
+                .totalTime(TimeUnit.MILLISECONDS);
+        assertEquals(2, registry.get(QueryMetrics.ROWS).tag("query", "EXPORT_QUERY").summary().totalAmount());
+        assertTrue(queryMs < sleepMs, "export query timed at " + queryMs + " ms");
+    }
+
     private User createUser() {
         return userStorage.save(TestUtil.getRandomUser());
     }
@@ -0,0 +1,93 @@
+package ru.yandex.practicum.filmorate.storage;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.sql.Date;
+import java.util.List;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+
+/**
+ * Базы, созданные до перехода на миграции старым schema.sql, должны доходить до той же схемы, что и новые.
+ */
+public class SchemaMigrationTest {
+
+    private static final String COLUMNS_QUERY = """
+        SELECT LOWER(table_name) || '.' || LOWER(column_name)
+        FROM information_schema.columns
+        WHERE table_schema = 'PUBLIC'
+          AND LOWER(table_name) <> 'flyway_schema_history'
+        ORDER BY 1""";
+
+    private static final String INDEXES_QUERY = """
+        SELECT LOWER(table_name) || '.' || LOWER(index_name)
+        FROM information_schema.indexes
+        WHERE table_schema = 'PUBLIC'
+          AND LOWER(index_name) LIKE '%\\_idx' ESCAPE '\\'
+        ORDER BY 1""";
+
+    @Test
+    void givenDatabaseFromOldSchema_whenMigrate_gotSameSchemaAsNewDatabase() {
+        DriverManagerDataSource oldDatabase = createOldDatabase("old-schema");
+        DriverManagerDataSource newDatabase = dataSource("new-schema");
+
+        migrate(oldDatabase);
+        migrate(newDatabase);
+
+        JdbcTemplate oldJdbc = new JdbcTemplate(oldDatabase);
+        JdbcTemplate newJdbc = new JdbcTemplate(newDatabase);
+        assertEquals(newJdbc.queryForList(COLUMNS_QUERY, String.class),
+                oldJdbc.queryForList(COLUMNS_QUERY, String.class));
+        assertEquals(newJdbc.queryForList(INDEXES_QUERY, String.class),
+                oldJdbc.queryForList(INDEXES_QUERY, String.class));
+    }
+
+    @Test
+    void givenLikesInOldSchema_whenMigrate_gotLikesCountFilled() {
+        DriverManagerDataSource dataSource = createOldDatabase("old-likes");
+        JdbcTemplate jdbc = new JdbcTemplate(dataSource);
+
+        jdbc.update("INSERT INTO film_mpa (mpa_name) VALUES ('G')");
+        jdbc.update("INSERT INTO films (film_name, description, release_date, duration, mpa_id) "
+                + "VALUES ('name', 'desc', ?, 120, 1)", Date.valueOf("2000-01-01"));
+        for (String email : List.of("first@mail.ru", "second@mail.ru")) {
+            jdbc.update("INSERT INTO users (email, login, birthday) VALUES (?, 'login', ?)",
+                    email, Date.valueOf("1990-01-01"));
+        }
+        jdbc.update("INSERT INTO film_likes (film_id, user_id) SELECT 1, user_id FROM users");
+
+        migrate(dataSource);
+
+        assertEquals(2, jdbc.queryForObject("SELECT likes_count FROM films WHERE film_id = 1", Integer.class));
+    }
+
+    private DriverManagerDataSource createOldDatabase(String name) {
+        DriverManagerDataSource dataSource = dataSource(name);
+        ResourceDatabasePopulator populator = new ResourceDatabasePopulator(
+                new ClassPathResource("db/baseline/schema.sql"));
+        populator.setSqlScriptEncoding("UTF-8");
+        populator.execute(dataSource);
+        return dataSource;
+    }
+
+    private DriverManagerDataSource dataSource(String name) {
+        return new DriverManagerDataSource("jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1;MODE=PostgreSQL");
+    }
+
+    // те же настройки, что у приложения в application.yml
+    private void migrate(DriverManagerDataSource dataSource) {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .encoding("UTF-8")
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .load()
+                .migrate();
+    }
+}
@@ -0,0 +1,59 @@
+package ru.yandex.practicum.filmorate.util;
+
+import org.springframework.beans.factory.config.BeanPostProcessor;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Оборачивает DataSource и считает, сколько SQL-запросов было подготовлено через его соединения.
+ */
+public class QueryCounter implements BeanPostProcessor {
+
+    private static final Set<String> STATEMENT_METHODS = Set.of("prepareStatement", "createStatement", "prepareCall");
+
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Object postProcessAfterInitialization(Object bean, String beanName) {
+        if (bean instanceof DataSource dataSource) {
+            return proxy(DataSource.class, dataSource);
+        }
+        return bean;
+    }
+
+    public int count() {
+        return count.get();
+    }
+
+    public void reset() {
+        count.set(0);
+    }
+
+    private <T> T proxy(Class<T> type, T target) {
+        Object proxy = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{type},
+                (p, method, args) -> {
+                    if (STATEMENT_METHODS.contains(method.getName())) {
+                        count.incrementAndGet();
+                    }
+
+                    Object result;
+                    try {
+                        result = method.invoke(target, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getCause();
+                    }
+
+                    if (result instanceof Connection connection) {
+                        return proxy(Connection.class, connection);
+                    }
+                    return result;
+                });
+
+        return type.cast(proxy);
+    }
+}